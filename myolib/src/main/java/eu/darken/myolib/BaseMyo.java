@@ -8,61 +8,135 @@ package eu.darken.myolib;
 import android.annotation.TargetApi;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.os.Build;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import eu.darken.myolib.metrics.GattMetrics;
 import eu.darken.myolib.msgs.MyoMsg;
 import eu.darken.myolib.msgs.ReadMsg;
 import eu.darken.myolib.msgs.WriteMsg;
 import eu.darken.myolib.processor.BaseDataPacket;
 import eu.darken.myolib.processor.BaseProcessor;
+import eu.darken.myolib.processor.PacketRegistry;
+import eu.darken.myolib.processor.PayloadSlab;
 import eu.darken.myolib.processor.Processor;
+import eu.darken.myolib.processor.RoutingTable;
 import eu.darken.myolib.services.Battery;
 import eu.darken.myolib.services.Classifier;
 import eu.darken.myolib.services.Control;
 import eu.darken.myolib.services.Emg;
 import eu.darken.myolib.services.Imu;
+import eu.darken.myolib.services.MyoCharacteristic;
 import eu.darken.myolib.services.MyoDescriptor;
 import eu.darken.myolib.tools.ApiHelper;
 import eu.darken.myolib.tools.Logy;
+import eu.darken.myolib.tools.WorkerPool;
+import eu.darken.myolib.transport.GattTransport;
+import eu.darken.myolib.transport.MyoTransport;
 
 /**
  * This is the base class for all Myo communication.
- * It wraps a {@link BluetoothGatt} object and supplies methods to easy communication.
+ * It wraps a {@link MyoTransport}, usually a {@link GattTransport}, and supplies methods to easy communication.
  * Communication is encapsulated via {@link MyoMsg} and {@link #submit(MyoMsg)}.
  */
-public class BaseMyo extends BluetoothGattCallback {
+public class BaseMyo implements MyoTransport.Callback {
     protected static String TAG;
 
-    private final BlockingQueue<MyoMsg> mDispatchQueue = new LinkedBlockingQueue<>();
+    private final DispatchQueue mDispatchQueue = new DispatchQueue();
+    /**
+     * Guards {@link #mDispatchQueue} and the dispatcher state below.
+     */
+    private final Object mDispatchLock = new Object();
     private final Object mThreadControl = new Object();
     private volatile boolean mRunning = false;
-    private final Context mContext;
-    private final BluetoothDevice mDevice;
-    private BluetoothGatt mBluetoothGatt;
+    private final MyoTransport mTransport;
+    private final int mDeviceId;
+    private boolean mTransportConnected = false;
     private volatile ConnectionState mConnectionState = ConnectionState.DISCONNECTED;
-    private final Semaphore mWaitToken = new Semaphore(0);
-    private final Map<String, MyoMsg> mMsgCallbackMap = new HashMap<>();
-    private final Map<UUID, List<Processor>> mSubscriptionMap = new HashMap<>();
+    private boolean mServicesDiscovered = false;
+    private boolean mInFlight = false;
+    private MyoMsg mInFlightMsg;
+    private long mInFlightSince;
+    private long mDispatcherIdleTime;
+    private long mDispatcherIdleSince;
+    /**
+     * A dispatch run is queued or running, at most one at a time even on a pool with several threads.
+     */
+    private boolean mDispatchScheduled = false;
+    /**
+     * Another run was asked for while one was queued or running, it goes on instead.
+     */
+    private boolean mDispatchRequested = false;
+    private int mConnectionPriority = ConnectionSpeed.BALANCED.getPriority();
+    private WorkerPool mWorkerPool = WorkerPool.getShared();
+    private WorkerPool mOwnWorkerPool;
+    private WorkerPool mActiveWorkerPool;
+    private WorkerPool.Timer mDispatchTimer;
+    private long mDispatcherWakeUps;
+    /**
+     * Resolved handles and the sent messages waiting for their GATT callback, guarded by {@link #mDispatchLock}.
+     */
+    private final HandleTable mHandleTable;
+    /**
+     * Messages of unfinished transactions, guarded by {@link #mDispatchLock}.
+     */
+    private final Map<MyoMsg, Transaction> mTransactions = new IdentityHashMap<>();
+    /**
+     * The transaction that was started and hasn't ended, only its lane is served meanwhile.
+     */
+    private Transaction mActiveTransaction;
+    /**
+     * Messages that aren't sent but complete with a pending one, by the pending one, oldest first.
+     * Superseded commands and reads attached to one of the same characteristic. Guarded by {@link #mDispatchLock}.
+     */
+    private final Map<MyoMsg, List<MyoMsg>> mAttached = new IdentityHashMap<>();
+    /**
+     * Only used by the dispatch task.
+     */
+    private final List<MyoMsg> mExpiredMsgs = new ArrayList<>();
+    /**
+     * Sent messages without callback within the send timeout, retried or failed by the dispatch task.
+     */
+    private final List<MyoMsg> mLostMsgs = new ArrayList<>();
+    private final RetryScheduler mRetryScheduler = new RetryScheduler();
+    /**
+     * Failed messages waiting for their retry, with the {@link System#nanoTime()} they are queued again. Guarded by {@link #mDispatchLock}.
+     */
+    private final Map<MyoMsg, Long> mRetryingMsgs = new IdentityHashMap<>();
+    private final GattMetrics mGattMetrics = new GattMetrics();
+    private final Object mRoutingLock = new Object();
+    private volatile RoutingTable mRoutingTable = RoutingTable.EMPTY;
+    private volatile PayloadSlab mPayloadSlab;
     private final List<ConnectionListener> mConnectionListeners = new ArrayList<>();
-    private ConnectionSpeed mConnectionSpeed = ConnectionSpeed.BALANCED;
-    private volatile long mTimeoutSendQueue = 250;
+    private volatile ConnectionSpeed mConnectionSpeed = ConnectionSpeed.BALANCED;
+    private volatile long mTimeoutSendQueue = TIMEOUT_ADAPTIVE;
+    /**
+     * By the speed the round-trip times were observed with, guarded by {@link #mDispatchLock}.
+     */
+    private final Map<ConnectionSpeed, RttEstimator> mRttEstimators = new EnumMap<>(ConnectionSpeed.class);
+    /**
+     * Messages resent after they got lost, their round-trip time is ambiguous. Guarded by {@link #mDispatchLock}.
+     */
+    private final Set<MyoMsg> mResentMsgs = Collections.newSetFromMap(new IdentityHashMap<MyoMsg, Boolean>());
+    private volatile ReadCache mReadCache = new ReadCache(null);
 
     /**
      * The state of this device, relates to {@link BluetoothProfile#STATE_CONNECTED} etc.
@@ -77,22 +151,28 @@ public class BaseMyo extends BluetoothGattCallback {
          * Saves battery power but reducs the data rate.<br>
          * About ~50 packets/s.
          */
-        BATTERY_CONSERVING(BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER),
+        BATTERY_CONSERVING(BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER, 600, 250),
         /**
          * Balance between battery saving and data rate.<br>
          * About 84 packets/s.
          */
-        BALANCED(BluetoothGatt.CONNECTION_PRIORITY_BALANCED),
+        BALANCED(BluetoothGatt.CONNECTION_PRIORITY_BALANCED, 250, 100),
         /**
          * Maximum performance, causes high battery drain.<br>
          * Data rates of 450+ packets/s
          */
-        HIGH(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+        HIGH(BluetoothGatt.CONNECTION_PRIORITY_HIGH, 150, 50);
 
         private final int mPriority;
+        /**
+         * Milliseconds, see {@link RttEstimator}. The margin covers a few connection intervals.
+         */
+        private final long mInitialTimeout, mTimeoutMargin;
 
-        ConnectionSpeed(int priority) {
+        ConnectionSpeed(int priority, long initialTimeout, long timeoutMargin) {
             mPriority = priority;
+            mInitialTimeout = initialTimeout;
+            mTimeoutMargin = timeoutMargin;
         }
 
         public int getPriority() {
@@ -100,16 +180,52 @@ public class BaseMyo extends BluetoothGattCallback {
         }
     }
 
+    /**
+     * See {@link #submitTransaction(List)}, guarded by {@link #mDispatchLock}.
+     */
+    private static class Transaction {
+        final List<MyoMsg> mMsgs;
+        final MyoFuture<List<MyoMsg>> mFuture;
+        final MyoMsg.Priority mPriority;
+        /**
+         * One of its messages was sent and its result is not handled yet, the next one has to wait.
+         */
+        boolean mBusy;
+        boolean mStarted;
+        /**
+         * One of its messages expired or got lost, the remaining ones must not be sent.
+         */
+        boolean mFailed;
+
+        Transaction(List<MyoMsg> msgs, MyoFuture<List<MyoMsg>> future) {
+            mMsgs = msgs;
+            mFuture = future;
+            mPriority = msgs.get(0).getPriority();
+        }
+    }
+
+    /**
+     * Values of static characteristics are cached across process restarts, see {@link #getReadCache()}.
+     */
     public BaseMyo(Context context, BluetoothDevice device) {
-        mContext = context;
-        mDevice = device;
-        TAG = "MyoLib:BaseMyo:" + device.getAddress();
+        this(new GattTransport(context, device));
+        mReadCache = new ReadCache(new ReadCache.PreferencesStore(context, device.getAddress()));
+    }
+
+    /**
+     * @param transport e.g. a {@link eu.darken.myolib.transport.SimulatedMyo} to run without bluetooth.
+     */
+    public BaseMyo(MyoTransport transport) {
+        mTransport = transport;
+        mHandleTable = new HandleTable(transport, mGattMetrics);
+        mDeviceId = PacketRegistry.internDevice(transport.getDeviceAddress());
+        TAG = "MyoLib:BaseMyo:" + transport.getDeviceAddress();
     }
 
     /**
-     * Time until a packet without confirmation is treated as failure.
+     * Time until a packet without confirmation is treated as lost.
      *
-     * @return time in miliseconds, default of 250ms.
+     * @return time in miliseconds, default {@link #TIMEOUT_ADAPTIVE}.
      */
     public long getTimeoutSendQueue() {
         return mTimeoutSendQueue;
@@ -118,15 +234,79 @@ public class BaseMyo extends BluetoothGattCallback {
     /**
      * Sets the time interval for how long the dispatcher waits until it sends the next packet,
      * if there was still no confirmation for the current one.
+     * The lost message is sent again while it has retries left, see {@link MyoMsg#setRetryCounter(int)}, otherwise it fails.
      *
-     * @param timeoutSendQueue time in milliseconds, default 250ms, -1 for infinite time, 0 for no waiting.
+     * @param timeoutSendQueue time in milliseconds, {@link #TIMEOUT_ADAPTIVE} (default), -1 for infinite time, 0 for no waiting.
      */
     public void setTimeoutSendQueue(long timeoutSendQueue) {
         mTimeoutSendQueue = timeoutSendQueue;
     }
 
+    /**
+     * The send timeout follows the observed round-trip times of the current {@link ConnectionSpeed}, like TCP's retransmission timeout.
+     * Until there are samples, it is 150ms for {@link ConnectionSpeed#HIGH}, 250ms for {@link ConnectionSpeed#BALANCED}
+     * and 600ms for {@link ConnectionSpeed#BATTERY_CONSERVING}.
+     */
+    public static final long TIMEOUT_ADAPTIVE = -2;
+
+    /**
+     * @return the send timeout currently in effect in milliseconds, see {@link #setTimeoutSendQueue(long)}.
+     */
+    public long getSendTimeout() {
+        synchronized (mDispatchLock) {
+            return getSendTimeoutNanos() < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(getSendTimeoutNanos());
+        }
+    }
+
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     *
+     * @return -1 for infinite time.
+     */
+    private long getSendTimeoutNanos() {
+        final long timeout = mTimeoutSendQueue;
+        if (timeout == TIMEOUT_ADAPTIVE)
+            return getRttEstimator().getTimeout();
+        return timeout < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     */
+    private RttEstimator getRttEstimator() {
+        final ConnectionSpeed speed = mConnectionSpeed;
+        RttEstimator estimator = mRttEstimators.get(speed);
+        if (estimator == null) {
+            estimator = new RttEstimator(TimeUnit.MILLISECONDS.toNanos(speed.mInitialTimeout), TimeUnit.MILLISECONDS.toNanos(speed.mTimeoutMargin));
+            mRttEstimators.put(speed, estimator);
+        }
+        return estimator;
+    }
+
     public String getDeviceAddress() {
-        return getBluetoothDevice().getAddress();
+        return mTransport.getDeviceAddress();
+    }
+
+    /**
+     * The id that {@link BaseDataPacket#getDeviceId()} has for data from this Myo.
+     */
+    public int getDeviceId() {
+        return mDeviceId;
+    }
+
+    /**
+     * Store the payload of received data in shared chunks, see {@link PayloadSlab}.
+     * Reduces memory usage if you keep packets around, but {@link BaseDataPacket#getData()} then returns copies.
+     *
+     * @param payloadSlab NULL to give each packet its own array, which is the default.
+     */
+    public void setPayloadSlab(@Nullable PayloadSlab payloadSlab) {
+        mPayloadSlab = payloadSlab;
+    }
+
+    @Nullable
+    public PayloadSlab getPayloadSlab() {
+        return mPayloadSlab;
     }
 
     /**
@@ -146,8 +326,45 @@ public class BaseMyo extends BluetoothGattCallback {
         return mConnectionSpeed;
     }
 
+    /**
+     * @return NULL if this Myo doesn't use a {@link GattTransport}.
+     */
+    @Nullable
     public BluetoothDevice getBluetoothDevice() {
-        return mDevice;
+        return mTransport instanceof GattTransport ? ((GattTransport) mTransport).getBluetoothDevice() : null;
+    }
+
+    public MyoTransport getTransport() {
+        return mTransport;
+    }
+
+    /**
+     * Answers reads of static characteristics without a GATT round-trip while fresh.
+     * Only kept in memory, unless this Myo was created with a {@link Context}.
+     */
+    public ReadCache getReadCache() {
+        return mReadCache;
+    }
+
+    /**
+     * @param readCache e.g. with a custom {@link ReadCache.Store}.
+     */
+    public void setReadCache(@NonNull ReadCache readCache) {
+        mReadCache = readCache;
+    }
+
+    /**
+     * Round-trip times, errors, retries and timeouts per characteristic, since this Myo was created.
+     */
+    public GattMetrics getGattMetrics() {
+        return mGattMetrics;
+    }
+
+    /**
+     * Backoff, budget and counters of the retries of failed messages.
+     */
+    public RetryScheduler getRetryScheduler() {
+        return mRetryScheduler;
     }
 
     public ConnectionState getConnectionState() {
@@ -168,93 +385,143 @@ public class BaseMyo extends BluetoothGattCallback {
     }
 
     @Override
-    public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+    public void onConnectionStateChange(int status, int newState) {
         if (newState == BluetoothProfile.STATE_CONNECTING) {
             mConnectionState = ConnectionState.CONNECTING;
         } else if (newState == BluetoothProfile.STATE_CONNECTED) {
             mConnectionState = ConnectionState.CONNECTED;
             Logy.d(TAG, "Device connected, discovering services...");
-            gatt.discoverServices();
+            mTransport.discoverServices();
         } else if (newState == BluetoothProfile.STATE_DISCONNECTING) {
             mConnectionState = ConnectionState.DISCONNECTING;
-            mWaitToken.drainPermits();
         } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
             mConnectionState = ConnectionState.DISCONNECTED;
         } else {
             throw new RuntimeException("Unknown connection state");
         }
+        if (mConnectionState != ConnectionState.CONNECTED) {
+            MyoMsg interrupted = null;
+            boolean transaction = false;
+            synchronized (mDispatchLock) {
+                // The callback of a message in flight is lost with the connection.
+                if (mInFlightMsg != null)
+                    interrupted = mHandleTable.takeSent(mInFlightMsg.getHandle());
+                if (interrupted != null) {
+                    mResentMsgs.add(interrupted);
+                    transaction = mTransactions.containsKey(interrupted);
+                    if (transaction)
+                        mTransactions.get(interrupted).mFailed = true;
+                }
+                mServicesDiscovered = false;
+                mInFlight = false;
+                mInFlightMsg = null;
+                scheduleDispatch();
+            }
+            if (interrupted != null) {
+                interrupted.setState(MyoMsg.State.ERROR);
+                // Others are sent again once reconnected, unless this Myo was disconnected on purpose.
+                if (transaction || !mRunning)
+                    complete(interrupted);
+                else
+                    retryOrComplete(interrupted, RetryScheduler.STATUS_LOST);
+            }
+        }
         Logy.d(TAG, "status:" + status + ", newState:" + mConnectionState.name());
         for (ConnectionListener listener : mConnectionListeners)
             listener.onConnectionStateChanged(this, mConnectionState);
-        super.onConnectionStateChange(gatt, status, newState);
     }
 
     /**
      * Checks available Myo services and enables EMG and IMU characteristic notifications.
      */
     @Override
-    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+    public void onServicesDiscovered(int status) {
         if (status != BluetoothGatt.GATT_SUCCESS) {
             Logy.w(TAG, "Service discovered failed!");
             return;
         }
+        synchronized (mDispatchLock) {
+            // Handles of an earlier discovery are invalid, nothing is in flight after a reconnect.
+            mHandleTable.reset();
+        }
 
-        BluetoothGattService controlService = mBluetoothGatt.getService(Control.getServiceUUID());
-        if (controlService != null) {
+        if (isAvailable(Control.COMMAND)) {
             Logy.d(TAG, "Service Control: available");
-            BluetoothGattCharacteristic myoInfo = controlService.getCharacteristic(Control.MYOINFO.getCharacteristicUUID());
-            Logy.d(TAG, "Characteristic MyoInfo: " + (myoInfo != null ? "available" : "unavailable"));
-            BluetoothGattCharacteristic fimwareInfo = controlService.getCharacteristic(Control.FIRMWARE_VERSION.getCharacteristicUUID());
-            Logy.d(TAG, "Characteristic FirmwareInfo: " + (fimwareInfo != null ? "available" : "unavailable"));
-            BluetoothGattCharacteristic commandCharacteristic = controlService.getCharacteristic(Control.COMMAND.getCharacteristicUUID());
-            Logy.d(TAG, "Characteristic Command: " + (commandCharacteristic != null ? "available" : "unavailable"));
+            Logy.d(TAG, "Characteristic MyoInfo: " + (isAvailable(Control.MYOINFO) ? "available" : "unavailable"));
+            Logy.d(TAG, "Characteristic FirmwareInfo: " + (isAvailable(Control.FIRMWARE_VERSION) ? "available" : "unavailable"));
         } else {
             Logy.w(TAG, "Service Control: unavailable");
         }
 
-        BluetoothGattService emgService = mBluetoothGatt.getService(Emg.SERVICE.getServiceUUID());
-        if (emgService != null) {
+        // One transaction, so the descriptor writes go out back-to-back instead of each waiting its turn in the queue.
+        final List<MyoMsg> setupMsgs = new ArrayList<>();
+        if (isAvailable(Emg.EMGDATA0)) {
             Logy.d(TAG, "Service EMG: available");
-            enableNotifications(emgService, Emg.EMGDATA0_DESCRIPTOR);
-            enableNotifications(emgService, Emg.EMGDATA1_DESCRIPTOR);
-            enableNotifications(emgService, Emg.EMGDATA2_DESCRIPTOR);
-            enableNotifications(emgService, Emg.EMGDATA3_DESCRIPTOR);
+            enableNotifications(Emg.EMGDATA0_DESCRIPTOR, setupMsgs);
+            enableNotifications(Emg.EMGDATA1_DESCRIPTOR, setupMsgs);
+            enableNotifications(Emg.EMGDATA2_DESCRIPTOR, setupMsgs);
+            enableNotifications(Emg.EMGDATA3_DESCRIPTOR, setupMsgs);
         } else {
             Logy.w(TAG, "Service EMG: unavailable");
         }
 
-        BluetoothGattService imuService = mBluetoothGatt.getService(Imu.getServiceUUID());
-        if (imuService != null) {
+        if (isAvailable(Imu.IMUDATA)) {
             Logy.d(TAG, "Service IMU: available");
-            enableNotifications(imuService, Imu.IMUDATA_DESCRIPTOR);
-            enableIndication(imuService, Imu.MOTIONEVENT_DESCRIPTOR);
+            enableNotifications(Imu.IMUDATA_DESCRIPTOR, setupMsgs);
+            enableIndication(Imu.MOTIONEVENT_DESCRIPTOR, setupMsgs);
         } else {
             Logy.w(TAG, "Service IMU: unavailable");
         }
 
-        BluetoothGattService classifierService = mBluetoothGatt.getService(Classifier.getServiceUUID());
-        if (classifierService != null) {
+        if (isAvailable(Classifier.CLASSIFIEREVENT)) {
             Logy.d(TAG, "Service Classifier: available");
-            enableIndication(classifierService, Classifier.CLASSIFIEREVENT_DESCRIPTOR);
+            enableIndication(Classifier.CLASSIFIEREVENT_DESCRIPTOR, setupMsgs);
         } else {
             Logy.w(TAG, "Service Classifier: unavailable");
         }
 
-        BluetoothGattService batteryService = mBluetoothGatt.getService(Battery.getServiceUUID());
-        if (batteryService != null) {
+        if (isAvailable(Battery.BATTERYLEVEL)) {
             Logy.d(TAG, "Service Battery: available");
         } else {
             Logy.w(TAG, "Service Battery: unavailable");
         }
-        super.onServicesDiscovered(gatt, status);
+
+        if (isAvailable(Control.FIRMWARE_VERSION) && !mReadCache.isEmpty()) {
+            // Cached values are used right away, this read drops them if the firmware changed since.
+            ReadMsg firmwareMsg = new ReadMsg(Control.FIRMWARE_VERSION, null);
+            firmwareMsg.setUseCache(false);
+            firmwareMsg.setPriority(MyoMsg.Priority.BACKGROUND);
+            submit(firmwareMsg);
+        }
+
+        if (!setupMsgs.isEmpty()) {
+            submitTransaction(setupMsgs).addListener(new MyoFuture.Listener<List<MyoMsg>>() {
+                @Override
+                public void onDone(MyoFuture<List<MyoMsg>> future) {
+                    if (!future.isSuccessful())
+                        Logy.w(TAG, "Enabling notifications failed at: " + future.getMsg());
+                }
+            });
+        }
 
         Logy.d(TAG, "Services discovered.");
-        mWaitToken.release();
+        synchronized (mDispatchLock) {
+            mServicesDiscovered = true;
+            scheduleDispatch();
+        }
+    }
+
+    /**
+     * Also resolves the characteristic's handle, see {@link HandleTable}.
+     */
+    private boolean isAvailable(MyoCharacteristic characteristic) {
+        synchronized (mDispatchLock) {
+            return mHandleTable.resolve(characteristic.getServiceUUID(), characteristic.getCharacteristicUUID(), null) != MyoTransport.NO_HANDLE;
+        }
     }
 
-    private void enableNotifications(BluetoothGattService service, final MyoDescriptor descriptor) {
-        BluetoothGattCharacteristic classifier = service.getCharacteristic(descriptor.getCharacteristicUUID());
-        if (classifier != null && mBluetoothGatt.setCharacteristicNotification(classifier, true)) {
+    private void enableNotifications(final MyoDescriptor descriptor, List<MyoMsg> setupMsgs) {
+        if (mTransport.setCharacteristicNotification(descriptor.getServiceUUID(), descriptor.getCharacteristicUUID(), true)) {
             WriteMsg msg = new WriteMsg(descriptor,
                     BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE,
                     new MyoMsg.Callback() {
@@ -263,13 +530,12 @@ public class BaseMyo extends BluetoothGattCallback {
                             Logy.d(TAG, "Notification '" + descriptor.getName() + "' enabled");
                         }
                     });
-            submit(msg);
+            setupMsgs.add(msg);
         }
     }
 
-    private void enableIndication(BluetoothGattService service, final MyoDescriptor descriptor) {
-        BluetoothGattCharacteristic classifier = service.getCharacteristic(descriptor.getCharacteristicUUID());
-        if (classifier != null && mBluetoothGatt.setCharacteristicNotification(classifier, true)) {
+    private void enableIndication(final MyoDescriptor descriptor, List<MyoMsg> setupMsgs) {
+        if (mTransport.setCharacteristicNotification(descriptor.getServiceUUID(), descriptor.getCharacteristicUUID(), true)) {
             WriteMsg msg = new WriteMsg(descriptor,
                     BluetoothGattDescriptor.ENABLE_INDICATION_VALUE,
                     new MyoMsg.Callback() {
@@ -278,32 +544,271 @@ public class BaseMyo extends BluetoothGattCallback {
                             Logy.d(TAG, "Indication '" + descriptor.getName() + "' enabled");
                         }
                     });
-            submit(msg);
+            setupMsgs.add(msg);
         }
     }
 
     /**
      * Submits a new message to the dispatcher of this device.
-     * It will be put at the end of the queue and once it reaches the front.
+     * It will be put at the end of the queue lane of its {@link MyoMsg#getPriority()} and sent once it reaches the front.
      * Messages are sequentially as otherwise instruction can be lost.<br>
      * If dispatcher of this Myo is not yet running, {@link #connect()} will be called.
      * It will be taken care of that the Myo is ready before any transmission attempt will be made.
      * Don't alter the message object after submitting it
+     * <p>
+     * A state command on {@link Control#COMMAND} takes the place of queued ones of the same kind, see {@link MyoCmds#supersedes(byte[], byte[])}.
+     * The replaced messages are not sent, they complete with the state of this one, their callbacks are called first.
+     * <p>
+     * A {@link ReadMsg} attaches to a queued or in-flight read of the same characteristic or descriptor.
+     * It isn't sent, but completes with the value and state of that read, after its callback.
+     * <p>
+     * A {@link ReadMsg} with a fresh value in {@link #getReadCache()} completes right away, see {@link ReadMsg#setUseCache(boolean)}.
      *
-     * @param msg A {@link WriteMsg} or {@link ReadMsg}
+     * @param msg A {@link WriteMsg} or {@link ReadMsg}, see {@link MyoMsg#setTimeout(long)} for a deadline.
      */
     public void submit(@NonNull MyoMsg msg) {
-        mDispatchQueue.add(msg);
+        if (msg instanceof ReadMsg && ((ReadMsg) msg).isUseCache()) {
+            byte[] cached = mReadCache.get(msg);
+            if (cached != null) {
+                ((ReadMsg) msg).setValue(cached);
+                msg.setGattStatus(BluetoothGatt.GATT_SUCCESS);
+                msg.setState(MyoMsg.State.SUCCESS);
+                complete(msg);
+                return;
+            }
+        }
+        synchronized (mDispatchLock) {
+            enqueue(msg, true);
+            scheduleDispatch();
+        }
         synchronized (mThreadControl) {
             if (!mRunning)
                 connect();
         }
     }
 
+    /**
+     * Submits messages that are sent in this order, one right after the other's callback.
+     * Nothing else is sent in between, once the first message was sent.
+     * If a message fails, i.e. ends with {@link MyoMsg.State#ERROR} after its retries, the remaining ones are not sent
+     * and end with {@link MyoMsg.State#ERROR} too. Each message's callback is still called.
+     * <p>
+     * The future completes with all messages if each succeeded, otherwise it fails with the first failed message.
+     * {@link MyoFuture#timeout(long, TimeUnit)} applies to the whole transaction,
+     * {@link MyoFuture#cancel(boolean)} only works until the first message was sent.
+     *
+     * @param msgs at least one, see {@link #submit(MyoMsg)}. All are queued with the {@link MyoMsg#getPriority()} of the first one.
+     */
+    public MyoFuture<List<MyoMsg>> submitTransaction(@NonNull List<? extends MyoMsg> msgs) {
+        if (msgs.isEmpty())
+            throw new IllegalArgumentException("Empty transaction.");
+        final MyoFuture<List<MyoMsg>> future = new MyoFuture<>(this);
+        final Transaction transaction = new Transaction(Collections.unmodifiableList(new ArrayList<MyoMsg>(msgs)), future);
+        future.attach(transaction.mMsgs.get(0));
+        synchronized (mDispatchLock) {
+            for (MyoMsg msg : transaction.mMsgs) {
+                msg.setPriority(transaction.mPriority);
+                mTransactions.put(msg, transaction);
+                enqueue(msg, false);
+            }
+            scheduleDispatch();
+        }
+        synchronized (mThreadControl) {
+            if (!mRunning)
+                connect();
+        }
+        return future;
+    }
+
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     */
+    private void enqueue(MyoMsg msg, boolean coalesce) {
+        if (msg.getTimeout() > 0 && msg.getDeadline() == 0)
+            msg.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(msg.getTimeout()));
+        if (coalesce && isCommand(msg) && coalesce((WriteMsg) msg))
+            return;
+        if (coalesce && msg instanceof ReadMsg && attach((ReadMsg) msg))
+            return;
+        mDispatchQueue.add(msg);
+    }
+
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     * The read attaches to the in-flight or a queued read of the same characteristic or descriptor, unless that belongs to a transaction.
+     *
+     * @return true if the read was attached, it's not queued then.
+     */
+    private boolean attach(ReadMsg msg) {
+        boolean queued = false;
+        MyoMsg pending = mInFlightMsg;
+        // A sent read that isn't in flight anymore was lost, it may never complete.
+        if (!(pending instanceof ReadMsg) || !pending.hasSameTarget(msg) || mHandleTable.getSent(pending.getHandle()) != pending
+                || mTransactions.containsKey(pending)) {
+            pending = null;
+            for (MyoMsg candidate : mDispatchQueue) {
+                if (candidate instanceof ReadMsg && !mTransactions.containsKey(candidate) && candidate.hasSameTarget(msg)) {
+                    pending = candidate;
+                    queued = true;
+                    break;
+                }
+            }
+        }
+        if (pending == null)
+            return false;
+        List<MyoMsg> attached = mAttached.get(pending);
+        if (queued && msg.getPriority().compareTo(pending.getPriority()) < 0) {
+            // A higher priority shouldn't wait in a lower lane, this read is sent instead.
+            mDispatchQueue.remove(pending);
+            mDispatchQueue.add(msg);
+            mAttached.remove(pending);
+            List<MyoMsg> older = new ArrayList<>();
+            older.add(pending);
+            if (attached != null)
+                older.addAll(attached);
+            mAttached.put(msg, older);
+        } else {
+            if (attached == null) {
+                attached = new ArrayList<>();
+                mAttached.put(pending, attached);
+            }
+            attached.add(msg);
+        }
+        if (Logy.isLoggable(Logy.VERBOSE))
+            Logy.v(TAG, "Read attached to a pending one: " + msg.getIdentifier());
+        return true;
+    }
+
+    private static boolean isCommand(MyoMsg msg) {
+        return msg instanceof WriteMsg && msg.getDescriptorUUID() == null
+                && msg.getCharacteristicUUID().equals(Control.COMMAND.getCharacteristicUUID())
+                && msg.getServiceUUID().equals(Control.getServiceUUID());
+    }
+
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     * The command takes the place of the first queued one it supersedes, others it supersedes are removed.
+     * Messages of transactions are left alone.
+     *
+     * @return true if the command was queued this way.
+     */
+    private boolean coalesce(WriteMsg msg) {
+        List<MyoMsg> superseded = null;
+        for (MyoMsg queued : mDispatchQueue) {
+            if (isCommand(queued) && !mTransactions.containsKey(queued)
+                    && MyoCmds.supersedes(msg.getData(), ((WriteMsg) queued).getData())) {
+                if (superseded == null)
+                    superseded = new ArrayList<>();
+                // Commands the queued one already replaced are older.
+                List<MyoMsg> older = mAttached.remove(queued);
+                if (older != null)
+                    superseded.addAll(older);
+                superseded.add(queued);
+            }
+        }
+        if (superseded == null)
+            return false;
+        MyoMsg first = null;
+        for (MyoMsg older : superseded) {
+            if (first == null && mDispatchQueue.replace(older, msg))
+                first = older;
+            else
+                mDispatchQueue.remove(older);
+        }
+        // A higher priority shouldn't wait in a lower lane.
+        if (msg.getPriority().compareTo(first.getPriority()) < 0) {
+            mDispatchQueue.remove(msg);
+            mDispatchQueue.add(msg);
+        }
+        mAttached.put(msg, superseded);
+        if (Logy.isLoggable(Logy.DEBUG))
+            Logy.d(TAG, "Command superseded " + superseded.size() + " queued one(s): " + Arrays.toString(msg.getData()));
+        return true;
+    }
+
+    /**
+     * Removes a message that is still waiting in the queue, its callback won't be called.
+     * For a message of a transaction this removes the whole transaction, if none of its messages was sent yet.
+     *
+     * @return false if the message was already sent or isn't queued on this Myo.
+     */
+    public boolean cancel(@NonNull MyoMsg msg) {
+        synchronized (mDispatchLock) {
+            Transaction transaction = mTransactions.get(msg);
+            if (transaction == null)
+                return mHandleTable.getSent(msg.getHandle()) != msg && detach(msg);
+            if (transaction.mStarted)
+                return false;
+            for (MyoMsg item : transaction.mMsgs) {
+                mTransactions.remove(item);
+                mDispatchQueue.remove(item);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     * Removes a message that isn't part of a transaction from the queue, the sent ones or the one it's attached to.
+     * The newest message attached to it takes its place, e.g. the command it replaced, the others stay attached to that one.
+     *
+     * @return false if the message isn't pending.
+     */
+    private boolean detach(MyoMsg msg) {
+        List<MyoMsg> attached = mAttached.get(msg);
+        MyoMsg successor = attached != null ? attached.get(attached.size() - 1) : null;
+        if (mRetryingMsgs.containsKey(msg)) {
+            Long due = mRetryingMsgs.remove(msg);
+            if (successor != null)
+                mRetryingMsgs.put(successor, due);
+        } else if (mHandleTable.getSent(msg.getHandle()) == msg) {
+            if (successor != null) {
+                successor.setSendTime(msg.getSendTime());
+                successor.setHandle(msg.getHandle(), msg.getHandleGeneration());
+            }
+            mHandleTable.putSent(msg.getHandle(), successor);
+        } else if (successor != null ? !mDispatchQueue.replace(msg, successor) : !mDispatchQueue.remove(msg)) {
+            // Attached messages have none attached to them.
+            for (List<MyoMsg> others : mAttached.values()) {
+                if (others.remove(msg))
+                    return true;
+            }
+            return false;
+        }
+        if (attached != null) {
+            mAttached.remove(msg);
+            attached.remove(attached.size() - 1);
+            if (!attached.isEmpty())
+                mAttached.put(successor, attached);
+        }
+        return true;
+    }
+
+    /**
+     * Changes when a submitted message fails if it hasn't completed yet, see {@link MyoMsg#setTimeout(long)}.
+     * Expired messages end with {@link MyoMsg.State#ERROR} and are removed from the queue or, if already sent, no longer wait for their callback.
+     *
+     * @param deadline {@link System#nanoTime()} timestamp, 0 for none.
+     */
+    public void setDeadline(@NonNull MyoMsg msg, long deadline) {
+        synchronized (mDispatchLock) {
+            Transaction transaction = mTransactions.get(msg);
+            if (transaction == null) {
+                msg.setDeadline(deadline);
+            } else {
+                for (MyoMsg item : transaction.mMsgs) {
+                    if (mTransactions.containsKey(item))
+                        item.setDeadline(deadline);
+                }
+            }
+            scheduleDispatch();
+        }
+    }
+
     /**
      * "Starts this Myo"<br>
-     * Launches the innerloop that dispatches {@link MyoMsg}.
-     * This loop will wait until {@link #getConnectionState()} changes to {@link eu.darken.myolib.BaseMyo.ConnectionState#CONNECTED}
+     * Connects and starts dispatching {@link MyoMsg}s, on the {@link #setWorkerPool(WorkerPool)}, by default {@link WorkerPool#getShared()}.
+     * Dispatching waits until {@link #getConnectionState()} changes to {@link eu.darken.myolib.BaseMyo.ConnectionState#CONNECTED}
      * <p>
      * Calling this multiple times has no effect.
      */
@@ -312,16 +817,23 @@ public class BaseMyo extends BluetoothGattCallback {
             if (mRunning) {
                 return;
             } else {
-                Logy.d(TAG, "Connecting to " + mDevice.getName());
-                mWaitToken.drainPermits();
+                Logy.d(TAG, "Connecting to " + mTransport.getDeviceName());
                 mRunning = true;
-                new Thread(mLoop).start();
+                WorkerPool pool = mWorkerPool;
+                if (pool == null) {
+                    if (mOwnWorkerPool == null)
+                        mOwnWorkerPool = new WorkerPool(TAG, 1, android.os.Process.THREAD_PRIORITY_DEFAULT);
+                    pool = mOwnWorkerPool;
+                }
+                mActiveWorkerPool = pool;
+                mDispatchTimer = pool.newTimer(mDispatchTimerTask, WorkerPool.Priority.HIGH);
+                pool.execute(mConnectTask, WorkerPool.Priority.HIGH);
             }
         }
     }
 
     /**
-     * Disconnects the bluetooth connection and stops the dispatcher loop.
+     * Disconnects the bluetooth connection and stops the dispatcher.
      */
     public void disconnect() {
         synchronized (mThreadControl) {
@@ -329,9 +841,11 @@ public class BaseMyo extends BluetoothGattCallback {
                 return;
             } else {
                 mRunning = false;
-                mWaitToken.release();
+                synchronized (mDispatchLock) {
+                    scheduleDispatch();
+                }
 
-                Logy.d(TAG, "Disconnecting from " + mDevice.getName());
+                Logy.d(TAG, "Disconnecting from " + mTransport.getDeviceName());
             }
         }
     }
@@ -348,230 +862,654 @@ public class BaseMyo extends BluetoothGattCallback {
         return mRunning;
     }
 
-    private Runnable mLoop = new Runnable() {
-        private int mPriority = ConnectionSpeed.BALANCED.getPriority();
+    /**
+     * Sets the pool the dispatcher runs on, only possible while not running.
+     * Dispatch tasks are short and use {@link WorkerPool.Priority#HIGH}.
+     *
+     * @param workerPool {@link WorkerPool#getShared()} by default, NULL for a private thread.
+     */
+    public void setWorkerPool(@Nullable WorkerPool workerPool) {
+        synchronized (mThreadControl) {
+            if (mRunning)
+                throw new IllegalStateException("Can't change the worker pool while running.");
+            mWorkerPool = workerPool;
+        }
+    }
+
+    @Nullable
+    public WorkerPool getWorkerPool() {
+        return mWorkerPool;
+    }
+
+    /**
+     * Number of messages waiting to be dispatched.
+     */
+    public int getDispatchQueueSize() {
+        synchronized (mDispatchLock) {
+            return mDispatchQueue.size();
+        }
+    }
+
+    /**
+     * Total time the dispatcher spent idle while running, waiting for a connection, a message or a GATT callback.
+     *
+     * @return time in milliseconds
+     */
+    public long getDispatcherIdleTime() {
+        synchronized (mDispatchLock) {
+            return mDispatcherIdleTime;
+        }
+    }
+
+    /**
+     * How often the dispatcher has been woken up since this Myo was created.
+     * If nothing is submitted and no data is flowing this should not increase.
+     */
+    public long getDispatcherWakeUps() {
+        synchronized (mDispatchLock) {
+            return mDispatcherWakeUps;
+        }
+    }
 
-        @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private final Runnable mConnectTask = new Runnable() {
         @Override
         public void run() {
-            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_DEFAULT);
-            mBluetoothGatt = mDevice.connectGatt(mContext, true, BaseMyo.this);
-            while (mRunning) {
-                if (mConnectionState != ConnectionState.CONNECTED)
+            synchronized (mThreadControl) {
+                if (mRunning && !mTransportConnected) {
+                    mTransportConnected = true;
+                    mTransport.connect(BaseMyo.this);
+                }
+            }
+            synchronized (mDispatchLock) {
+                mDispatcherIdleSince = System.currentTimeMillis();
+                scheduleDispatch();
+            }
+        }
+    };
+
+    private final Runnable mDispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    /**
+     * The timer is due on a pool thread, it only dispatches if no other run is queued or running.
+     */
+    private final Runnable mDispatchTimerTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mDispatchLock) {
+                if (mDispatchScheduled) {
+                    mDispatchRequested = true;
+                    return;
+                }
+                mDispatchScheduled = true;
+            }
+            dispatch();
+        }
+    };
+
+    /**
+     * Queues a dispatch run unless one is already queued or running, caller has to hold {@link #mDispatchLock}.
+     */
+    private void scheduleDispatch() {
+        if (mActiveWorkerPool == null)
+            return;
+        if (mDispatchScheduled) {
+            mDispatchRequested = true;
+            return;
+        }
+        mDispatchScheduled = true;
+        mActiveWorkerPool.execute(mDispatchTask, WorkerPool.Priority.HIGH);
+    }
+
+    /**
+     * Sends messages until it has to wait for a connection, a message or a GATT callback.
+     * Each of these schedules the next run, so no thread is blocked while waiting.
+     * Only one run at a time, see {@link #mDispatchScheduled}.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void dispatch() {
+        synchronized (mDispatchLock) {
+            mDispatchRequested = false;
+            mDispatcherIdleTime += System.currentTimeMillis() - mDispatcherIdleSince;
+            mDispatcherWakeUps++;
+        }
+        boolean idle = false;
+        try {
+            while (true) {
+                MyoMsg msg;
+                synchronized (mDispatchLock) {
+                    msg = nextMsg();
+                }
+                for (int i = 0; i < mExpiredMsgs.size(); i++)
+                    fail(mExpiredMsgs.get(i));
+                mExpiredMsgs.clear();
+                for (int i = 0; i < mLostMsgs.size(); i++) {
+                    mLostMsgs.get(i).setState(MyoMsg.State.ERROR);
+                    retryOrComplete(mLostMsgs.get(i), RetryScheduler.STATUS_LOST);
+                }
+                mLostMsgs.clear();
+                if (msg == null) {
+                    synchronized (mDispatchLock) {
+                        if (!mDispatchRequested) {
+                            mDispatchScheduled = false;
+                            mDispatcherIdleSince = System.currentTimeMillis();
+                            idle = true;
+                            break;
+                        }
+                        mDispatchRequested = false;
+                    }
                     continue;
+                }
                 if (ApiHelper.hasLolliPop()) {
-                    if (getConnectionSpeed().getPriority() != mPriority) {
-                        mPriority = getConnectionSpeed().getPriority();
-                        mBluetoothGatt.requestConnectionPriority(mPriority);
+                    if (getConnectionSpeed().getPriority() != mConnectionPriority) {
+                        mConnectionPriority = getConnectionSpeed().getPriority();
+                        mTransport.requestConnectionPriority(mConnectionPriority);
                     }
                 }
 
-                try {
-                    if (mTimeoutSendQueue == -1) {
-                        mWaitToken.acquire();
-                    } else {
-                        if (!mWaitToken.tryAcquire(mTimeoutSendQueue, TimeUnit.MILLISECONDS))
-                            Logy.w(TAG, "Lost packet!");
+                SendResult result = internalSend(msg);
+                if (result != SendResult.SENT) {
+                    synchronized (mDispatchLock) {
+                        mInFlight = false;
+                        mInFlightMsg = null;
                     }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    onSendFailed(msg, result);
+                }
+            }
+        } finally {
+            // A failed run must not keep the next ones from being scheduled.
+            if (!idle) {
+                synchronized (mDispatchLock) {
+                    mDispatchScheduled = false;
                 }
+            }
+        }
+        if (!mRunning)
+            tearDown();
+    }
 
-                if (!mRunning)
-                    break;
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     * Moves messages past their deadline to {@link #mExpiredMsgs} and arms the timer for the next deadline.
+     *
+     * @return the next message to send, marked as in flight, or NULL if the dispatcher has to wait.
+     */
+    private MyoMsg nextMsg() {
+        if (!mRunning)
+            return null;
+        final long now = System.nanoTime();
+        long wakeUp = Math.min(sweepExpired(now), requeueRetries(now));
+        try {
+            return nextMsg(now);
+        } finally {
+            final long timeout = getSendTimeoutNanos();
+            if (mInFlight && timeout >= 0)
+                wakeUp = Math.min(wakeUp, mInFlightSince + timeout - now);
+            if (wakeUp != Long.MAX_VALUE)
+                mDispatchTimer.schedule(Math.max(0, wakeUp));
+        }
+    }
 
-                MyoMsg msg = mDispatchQueue.poll();
-                if (msg != null) {
-                    internalSend(msg);
-                } else {
-                    mWaitToken.release();
-                }
+    /**
+     * See {@link #nextMsg()}
+     *
+     * @return nanoseconds until the earliest remaining deadline, {@link Long#MAX_VALUE} for none.
+     */
+    private long sweepExpired(long now) {
+        final int expired = mExpiredMsgs.size();
+        long wakeUp = collectExpired(mDispatchQueue, now);
+        // Sent messages stop waiting for their callback, the transport stays busy until the callback or the send queue timeout though.
+        wakeUp = Math.min(wakeUp, collectExpired(Arrays.asList(mHandleTable.getSentMsgs()), now));
+        wakeUp = Math.min(wakeUp, collectExpired(mRetryingMsgs.keySet(), now));
+        for (List<MyoMsg> attached : mAttached.values())
+            wakeUp = Math.min(wakeUp, collectExpired(attached, now));
+        for (int i = expired; i < mExpiredMsgs.size(); i++) {
+            MyoMsg msg = mExpiredMsgs.get(i);
+            Transaction transaction = mTransactions.get(msg);
+            if (transaction != null) {
+                transaction.mFailed = true;
+                if (!mDispatchQueue.remove(msg) && mRetryingMsgs.remove(msg) == null && mHandleTable.getSent(msg.getHandle()) == msg)
+                    mHandleTable.putSent(msg.getHandle(), null);
+            } else {
+                detach(msg);
             }
+            Logy.w(TAG, "Deadline expired: " + msg.getIdentifier());
+        }
+        return wakeUp;
+    }
 
-            mBluetoothGatt.disconnect();
-            mBluetoothGatt.close();
-            mBluetoothGatt = null;
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     * Puts retries whose backoff has passed in front of their lane.
+     *
+     * @return nanoseconds until the next retry, {@link Long#MAX_VALUE} for none.
+     */
+    private long requeueRetries(long now) {
+        long wakeUp = Long.MAX_VALUE;
+        Iterator<Map.Entry<MyoMsg, Long>> retries = mRetryingMsgs.entrySet().iterator();
+        while (retries.hasNext()) {
+            Map.Entry<MyoMsg, Long> retry = retries.next();
+            if (retry.getValue() - now > 0) {
+                wakeUp = Math.min(wakeUp, retry.getValue() - now);
+                continue;
+            }
+            // The entry of an IdentityHashMap is invalid after its removal.
+            final MyoMsg msg = retry.getKey();
+            retries.remove();
+            Transaction transaction = mTransactions.get(msg);
+            if (transaction != null)
+                transaction.mBusy = false;
+            mDispatchQueue.addFirst(msg);
         }
-    };
-    private long mDispatchTime = 0;
+        return wakeUp;
+    }
 
-    private void internalSend(MyoMsg msg) {
-        BluetoothGattService gattService = mBluetoothGatt.getService(msg.getServiceUUID());
-        if (gattService == null) {
-            Logy.w(TAG, "BluetoothGattService unavailable!: " + msg.toString());
-            return;
+    /**
+     * Adds messages past their deadline to {@link #mExpiredMsgs}, without removing them.
+     *
+     * @param msgs may contain NULL.
+     * @return nanoseconds until the earliest remaining deadline of these, {@link Long#MAX_VALUE} for none.
+     */
+    private long collectExpired(Iterable<MyoMsg> msgs, long now) {
+        long wakeUp = Long.MAX_VALUE;
+        for (MyoMsg msg : msgs) {
+            if (msg == null)
+                continue;
+            long deadline = msg.getDeadline();
+            if (deadline == 0)
+                continue;
+            if (deadline - now <= 0)
+                mExpiredMsgs.add(msg);
+            else
+                wakeUp = Math.min(wakeUp, deadline - now);
         }
-        BluetoothGattCharacteristic gattChar = gattService.getCharacteristic(msg.getCharacteristicUUID());
-        if (gattChar == null) {
-            Logy.w(TAG, "BluetoothGattCharacteristic unavailable!: " + msg.toString());
-            return;
+        return wakeUp;
+    }
+
+    private MyoMsg nextMsg(long now) {
+        if (mInFlight) {
+            final long timeout = getSendTimeoutNanos();
+            if (timeout == -1)
+                return null;
+            long remaining = mInFlightSince + timeout - now;
+            if (remaining > 0)
+                return null;
+            if (timeout > 0 && mInFlightMsg != null) {
+                Logy.w(TAG, "Lost packet after " + TimeUnit.NANOSECONDS.toMillis(timeout) + "ms: " + mInFlightMsg.getIdentifier());
+                final GattMetrics.Target target = mHandleTable.getTarget(mInFlightMsg);
+                if (target != null)
+                    mGattMetrics.onTimeout(target);
+                else
+                    mGattMetrics.onTimeout(mInFlightMsg);
+                if (mTimeoutSendQueue == TIMEOUT_ADAPTIVE)
+                    getRttEstimator().onTimeout();
+                // It stops waiting for the callback. The slot is reused by the retry or the next message, so the late
+                // callback has to be counted to not be taken for theirs. Attached messages stay with it.
+                mHandleTable.onLost(mInFlightMsg.getHandle());
+                final MyoMsg lost = mHandleTable.takeSent(mInFlightMsg.getHandle());
+                if (lost != null) {
+                    mResentMsgs.add(lost);
+                    mLostMsgs.add(lost);
+                }
+            }
+            mInFlight = false;
+            mInFlightMsg = null;
+        }
+        if (mConnectionState != ConnectionState.CONNECTED || !mServicesDiscovered || mDispatchQueue.isEmpty())
+            return null;
+        // Once started, a transaction keeps its lane until it ends, so nothing gets in between its messages.
+        Transaction transaction = mActiveTransaction;
+        if (transaction != null) {
+            if (mTransactions.get(mDispatchQueue.peek(transaction.mPriority)) != transaction)
+                return null;
+        } else {
+            transaction = mTransactions.get(mDispatchQueue.peek());
+        }
+        if (transaction != null) {
+            if (transaction.mBusy || transaction.mFailed)
+                return null;
+            transaction.mBusy = true;
+            transaction.mStarted = true;
+            mActiveTransaction = transaction;
         }
+        mInFlight = true;
+        mInFlightSince = now;
+        mInFlightMsg = transaction != null ? mDispatchQueue.poll(transaction.mPriority) : mDispatchQueue.poll();
+        return mInFlightMsg;
+    }
 
-        mDispatchTime = System.currentTimeMillis();
-        if (msg.getDescriptorUUID() != null) {
-            BluetoothGattDescriptor gattDesc = gattChar.getDescriptor(msg.getDescriptorUUID());
-            if (gattDesc == null) {
-                Logy.w(TAG, "BluetoothGattDescriptor unavailable!: " + msg.toString());
+    /**
+     * Closes the connection after {@link #disconnect()}, unless {@link #connect()} was called again in the meantime.
+     */
+    private void tearDown() {
+        synchronized (mThreadControl) {
+            if (mRunning)
                 return;
+            mDispatchTimer.cancel();
+            if (mTransportConnected) {
+                mTransportConnected = false;
+                mTransport.disconnect();
             }
-            mMsgCallbackMap.put(msg.getIdentifier(), msg);
-            if (msg instanceof WriteMsg) {
-                gattDesc.setValue(((WriteMsg) msg).getData());
-                mBluetoothGatt.writeDescriptor(gattDesc);
-            } else {
-                mBluetoothGatt.readDescriptor(gattDesc);
+            // Late GATT callbacks must not schedule anything on a pool that is shut down.
+            synchronized (mDispatchLock) {
+                mActiveWorkerPool = null;
             }
-        } else {
-            mMsgCallbackMap.put(msg.getIdentifier(), msg);
-            if (msg instanceof WriteMsg) {
-                gattChar.setValue(((WriteMsg) msg).getData());
-                mBluetoothGatt.writeCharacteristic(gattChar);
-            } else {
-                mBluetoothGatt.readCharacteristic(gattChar);
+            if (mOwnWorkerPool != null) {
+                mOwnWorkerPool.shutdown();
+                mOwnWorkerPool = null;
             }
         }
-        Logy.v(TAG, "Processed: " + msg.getIdentifier());
     }
 
+    /**
+     * Ends a message with {@link MyoMsg.State#ERROR} without GATT callback, e.g. expired or unavailable.
+     */
+    private void fail(MyoMsg msg) {
+        msg.setState(MyoMsg.State.ERROR);
+        complete(msg);
+    }
 
-    @Override
-    public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int gattStatus) {
-        ReadMsg msg = (ReadMsg) mMsgCallbackMap.remove(MyoMsg.toIdentifier(characteristic));
-        mWaitToken.release();
+    /**
+     * Calls the callback of a message that has its final state.
+     * If it belongs to a transaction, the transaction's next message is sent directly from here, or the transaction ends.
+     */
+    private void complete(MyoMsg msg) {
+        List<MyoMsg> attached;
+        synchronized (mDispatchLock) {
+            attached = mAttached.remove(msg);
+            mResentMsgs.remove(msg);
+        }
+        mRetryScheduler.forget(msg);
+        if (attached != null) {
+            // Oldest first, so the state of this message is applied last.
+            for (MyoMsg other : attached) {
+                if (other instanceof ReadMsg && msg instanceof ReadMsg && ((ReadMsg) msg).getValue() != null)
+                    ((ReadMsg) other).setValue(((ReadMsg) msg).getValue().clone());
+                other.setGattStatus(msg.getGattStatus());
+                other.setState(msg.getState());
+                if (other.getCallback() != null)
+                    other.getCallback().onResult(other);
+            }
+        }
+        if (msg.getCallback() != null)
+            msg.getCallback().onResult(msg);
 
-        msg.setGattStatus(gattStatus);
-        if (gattStatus == BluetoothGatt.GATT_SUCCESS) {
-            Logy.v(TAG, "rtt: " + (System.currentTimeMillis() - mDispatchTime) + "ms | SUCCESS | " + msg.toString());
-            msg.setState(MyoMsg.State.SUCCESS);
-            msg.setValue(characteristic.getValue());
-            if (msg.getCallback() != null)
-                msg.getCallback().onResult(msg);
-        } else {
-            Logy.w(TAG, "rtt: " + (System.currentTimeMillis() - mDispatchTime) + "ms | ERROR(" + gattStatus + ") | " + msg.toString());
-            msg.setState(MyoMsg.State.ERROR);
-            if (msg.getRetryCounter() == 0) {
-                if (msg.getCallback() != null)
-                    msg.getCallback().onResult(msg);
-            } else {
-                msg.decreaseRetryCounter();
-                submit(msg);
+        Transaction transaction;
+        MyoMsg next = null;
+        List<MyoMsg> aborted = null;
+        boolean done = false;
+        synchronized (mDispatchLock) {
+            transaction = mTransactions.remove(msg);
+            if (transaction == null)
+                return;
+            transaction.mBusy = false;
+            if (msg.getState() != MyoMsg.State.SUCCESS) {
+                done = true;
+                if (mActiveTransaction == transaction)
+                    mActiveTransaction = null;
+                transaction.mFailed = true;
+                aborted = new ArrayList<>();
+                for (MyoMsg item : transaction.mMsgs) {
+                    if (mTransactions.remove(item) != null && mDispatchQueue.remove(item))
+                        aborted.add(item);
+                }
+                scheduleDispatch();
+            } else if (msg == transaction.mMsgs.get(transaction.mMsgs.size() - 1)) {
+                done = true;
+                if (mActiveTransaction == transaction)
+                    mActiveTransaction = null;
+                scheduleDispatch();
+            } else if (!transaction.mFailed) {
+                next = claimNext(transaction);
             }
+            // Otherwise a later message expired, its failure ends the transaction.
         }
-        super.onCharacteristicRead(gatt, characteristic, gattStatus);
+        SendResult result = next != null ? internalSend(next) : SendResult.SENT;
+        if (result != SendResult.SENT) {
+            synchronized (mDispatchLock) {
+                mInFlight = false;
+                mInFlightMsg = null;
+                scheduleDispatch();
+            }
+            onSendFailed(next, result);
+        }
+        if (aborted != null) {
+            for (MyoMsg item : aborted)
+                fail(item);
+        }
+        if (done)
+            transaction.mFuture.complete(msg, transaction.mMsgs);
     }
 
-    @Override
-    public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int gattStatus) {
-        WriteMsg msg = (WriteMsg) mMsgCallbackMap.remove(MyoMsg.toIdentifier(characteristic));
-        mWaitToken.release();
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     * Like {@link #nextMsg()}, but only takes the transaction's next message and doesn't wait for the dispatcher.
+     *
+     * @return NULL if it can't be sent right now, the dispatcher takes care of it then.
+     */
+    private MyoMsg claimNext(Transaction transaction) {
+        MyoMsg head = mDispatchQueue.peek(transaction.mPriority);
+        if (mInFlight || !mRunning || head == null || mTransactions.get(head) != transaction
+                || mConnectionState != ConnectionState.CONNECTED || !mServicesDiscovered
+                || (head.getDeadline() != 0 && head.getDeadline() - System.nanoTime() <= 0)) {
+            scheduleDispatch();
+            return null;
+        }
+        transaction.mBusy = true;
+        mInFlight = true;
+        mInFlightSince = System.nanoTime();
+        mInFlightMsg = mDispatchQueue.poll(transaction.mPriority);
+        // Only to re-arm the timer for the send queue timeout.
+        scheduleDispatch();
+        return mInFlightMsg;
+    }
 
-        msg.setGattStatus(gattStatus);
-        if (gattStatus == BluetoothGatt.GATT_SUCCESS) {
-            Logy.v(TAG, "rtt: " + (System.currentTimeMillis() - mDispatchTime) + "ms | SUCCESS | " + msg.toString());
-            msg.setState(MyoMsg.State.SUCCESS);
-            if (msg.getCallback() != null)
-                msg.getCallback().onResult(msg);
-        } else {
-            Logy.w(TAG, "rtt: " + (System.currentTimeMillis() - mDispatchTime) + "ms | ERROR(" + gattStatus + ") | " + msg.toString());
-            msg.setState(MyoMsg.State.ERROR);
-            if (msg.getRetryCounter() == 0) {
-                if (msg.getCallback() != null)
-                    msg.getCallback().onResult(msg);
-            } else {
-                msg.decreaseRetryCounter();
-                submit(msg);
-            }
+    /**
+     * Completes a failed message or queues it again after a backoff, see {@link RetryScheduler}.
+     * A message of a transaction keeps it busy meanwhile, so the transaction goes on with the retry.
+     *
+     * @param gattStatus or {@link RetryScheduler#STATUS_LOST} or {@link RetryScheduler#STATUS_BUSY}.
+     */
+    private void retryOrComplete(MyoMsg msg, int gattStatus) {
+        final long delay = mRetryScheduler.schedule(msg, gattStatus);
+        if (delay == -1) {
+            complete(msg);
+            return;
+        }
+        msg.decreaseRetryCounter();
+        synchronized (mDispatchLock) {
+            final GattMetrics.Target target = mHandleTable.getTarget(msg);
+            if (target != null)
+                mGattMetrics.onRetry(target);
+            else
+                mGattMetrics.onRetry(msg);
+            mRetryingMsgs.put(msg, System.nanoTime() + delay);
+            scheduleDispatch();
         }
-        super.onCharacteristicWrite(gatt, characteristic, gattStatus);
     }
 
-    @Override
-    public void onDescriptorRead(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int gattStatus) {
-        ReadMsg msg = (ReadMsg) mMsgCallbackMap.remove(MyoMsg.toIdentifier(descriptor));
-        mWaitToken.release();
+    /**
+     * Caller has to hold {@link #mDispatchLock}.
+     * Ends the operation in flight if the callback belongs to it and wakes up the dispatcher.
+     * A late callback of a lost operation is ignored, another one may be in flight by now.
+     *
+     * @return the sent message waiting for this callback, NULL if it expired, got lost or is unknown.
+     */
+    @Nullable
+    private MyoMsg takeSentMsg(int handle) {
+        if (mHandleTable.takeLost(handle)) {
+            Logy.w(TAG, "Late callback of a lost operation, handle: " + handle);
+            return null;
+        }
+        MyoMsg msg = mHandleTable.takeSent(handle);
+        if (msg != null && !mResentMsgs.remove(msg)
+                && !(msg instanceof WriteMsg && ((WriteMsg) msg).getWriteType() == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE))
+            getRttEstimator().onSample(System.nanoTime() - msg.getSendTime());
+        // An expired message doesn't wait anymore, but its operation was still in flight.
+        if (msg != null || (mInFlightMsg != null && mInFlightMsg.getHandle() == handle)) {
+            mInFlight = false;
+            mInFlightMsg = null;
+            scheduleDispatch();
+        }
+        if (msg == null)
+            Logy.w(TAG, "Callback without waiting message, handle: " + handle);
+        return msg;
+    }
 
-        msg.setGattStatus(gattStatus);
-        if (gattStatus == BluetoothGatt.GATT_SUCCESS) {
-            Logy.v(TAG, "rtt: " + (System.currentTimeMillis() - mDispatchTime) + "ms | SUCCESS | " + msg.toString());
-            msg.setState(MyoMsg.State.SUCCESS);
-            msg.setValue(descriptor.getValue());
-            if (msg.getCallback() != null)
-                msg.getCallback().onResult(msg);
+    private enum SendResult {
+        SENT,
+        /**
+         * The characteristic or descriptor doesn't exist.
+         */
+        NO_HANDLE,
+        /**
+         * The transport couldn't start the operation right now.
+         */
+        REFUSED
+    }
+
+    /**
+     * A message without handle can never be sent, one the transport refused is retried like after a transient error.
+     */
+    private void onSendFailed(MyoMsg msg, SendResult result) {
+        if (result == SendResult.NO_HANDLE) {
+            fail(msg);
         } else {
-            Logy.w(TAG, "rtt: " + (System.currentTimeMillis() - mDispatchTime) + "ms | ERROR(" + gattStatus + ") | " + msg.toString());
             msg.setState(MyoMsg.State.ERROR);
-            if (msg.getRetryCounter() == 0) {
-                if (msg.getCallback() != null)
-                    msg.getCallback().onResult(msg);
-            } else {
-                msg.decreaseRetryCounter();
-                submit(msg);
+            retryOrComplete(msg, RetryScheduler.STATUS_BUSY);
+        }
+    }
+
+    /**
+     * @return anything but {@link SendResult#SENT} if the message could not be sent, no callback will follow in that case.
+     */
+    private SendResult internalSend(MyoMsg msg) {
+        final int handle;
+        synchronized (mDispatchLock) {
+            handle = mHandleTable.resolve(msg);
+            if (handle != MyoTransport.NO_HANDLE) {
+                msg.setSendTime(System.nanoTime());
+                mHandleTable.putSent(handle, msg);
+            }
+        }
+        boolean sent = false;
+        if (handle != MyoTransport.NO_HANDLE) {
+            if (msg instanceof WriteMsg)
+                sent = mTransport.write(handle, ((WriteMsg) msg).getData(), ((WriteMsg) msg).getWriteType());
+            else
+                sent = mTransport.read(handle);
+            if (!sent) {
+                synchronized (mDispatchLock) {
+                    if (mHandleTable.getSent(handle) == msg)
+                        mHandleTable.putSent(handle, null);
+                }
             }
         }
-        super.onDescriptorRead(gatt, descriptor, gattStatus);
+        if (handle == MyoTransport.NO_HANDLE) {
+            Logy.w(TAG, "Characteristic or descriptor unavailable!: " + msg.toString());
+            return SendResult.NO_HANDLE;
+        }
+        if (!sent) {
+            Logy.w(TAG, "Transport refused: " + msg.toString());
+            return SendResult.REFUSED;
+        }
+        if (Logy.isLoggable(Logy.VERBOSE))
+            Logy.v(TAG, "Processed: " + msg.getIdentifier());
+        return SendResult.SENT;
+    }
+
+    @Override
+    public void onRead(int handle, byte[] value, int gattStatus) {
+        onResult(handle, value, gattStatus);
     }
 
     @Override
-    public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int gattStatus) {
-        WriteMsg msg = (WriteMsg) mMsgCallbackMap.remove(MyoMsg.toIdentifier(descriptor));
-        mWaitToken.release();
+    public void onWrite(int handle, int gattStatus) {
+        onResult(handle, null, gattStatus);
+    }
+
+    /**
+     * Handles the GATT callback of a sent message.
+     *
+     * @param value the value read, NULL for writes.
+     */
+    private void onResult(int handle, @Nullable byte[] value, int gattStatus) {
+        final MyoMsg msg;
+        final GattMetrics.Target target;
+        final ReadCache cache = mReadCache;
+        final ReadCache.Slot slot;
+        synchronized (mDispatchLock) {
+            msg = takeSentMsg(handle);
+            if (msg == null)
+                return;
+            target = mHandleTable.getTarget(handle);
+            slot = mHandleTable.getCacheSlot(handle, cache, msg);
+        }
 
         msg.setGattStatus(gattStatus);
+        final long rtt = System.nanoTime() - msg.getSendTime();
+        if (target != null)
+            mGattMetrics.onResult(target, msg instanceof ReadMsg, rtt, gattStatus == BluetoothGatt.GATT_SUCCESS);
+        else
+            mGattMetrics.onResult(msg, rtt, gattStatus == BluetoothGatt.GATT_SUCCESS);
         if (gattStatus == BluetoothGatt.GATT_SUCCESS) {
-            Logy.v(TAG, "rtt: " + (System.currentTimeMillis() - mDispatchTime) + "ms | SUCCESS | " + msg.toString());
+            if (Logy.isLoggable(Logy.VERBOSE))
+                Logy.v(TAG, "rtt: " + TimeUnit.NANOSECONDS.toMillis(rtt) + "ms | SUCCESS | " + msg.toString());
             msg.setState(MyoMsg.State.SUCCESS);
-            if (msg.getCallback() != null)
-                msg.getCallback().onResult(msg);
+            if (msg instanceof ReadMsg) {
+                ((ReadMsg) msg).setValue(value);
+                if (slot != null)
+                    cache.put(slot, value);
+            } else if (slot != null) {
+                cache.invalidate(slot);
+            }
+            complete(msg);
         } else {
-            Logy.w(TAG, "rtt: " + (System.currentTimeMillis() - mDispatchTime) + "ms | ERROR(" + gattStatus + ") | " + msg.toString());
+            Logy.w(TAG, "rtt: " + TimeUnit.NANOSECONDS.toMillis(rtt) + "ms | ERROR(" + gattStatus + ") | " + msg.toString());
             msg.setState(MyoMsg.State.ERROR);
-            if (msg.getRetryCounter() == 0) {
-                if (msg.getCallback() != null)
-                    msg.getCallback().onResult(msg);
-            } else {
-                msg.decreaseRetryCounter();
-                submit(msg);
-            }
+            retryOrComplete(msg, gattStatus);
         }
-        super.onDescriptorWrite(gatt, descriptor, gattStatus);
     }
 
     /**
      * Adds a Processor object to this Myo, make sure it is unique.
+     * Safe to call while data is being received.
+     *
+     * @throws IllegalStateException if a {@link BaseProcessor} is already added to this or another Myo.
      */
     public void addProcessor(Processor processor) {
-        for (UUID subscriptionTarget : processor.getSubscriptions()) {
-            List<Processor> subscriberList = mSubscriptionMap.get(subscriptionTarget);
-            if (subscriberList == null) {
-                subscriberList = new ArrayList<>();
-                mSubscriptionMap.put(subscriptionTarget, subscriberList);
-            } else {
-                if (subscriberList.contains(processor))
-                    continue;
-            }
-            subscriberList.add(processor);
-        }
         processor.onAdded();
+        synchronized (mRoutingLock) {
+            mRoutingTable = mRoutingTable.with(processor);
+        }
     }
 
     public void removeProcessor(BaseProcessor processor) {
         processor.onRemoved();
-        for (UUID subscriptionTarget : processor.getSubscriptions()) {
-            List<Processor> subscriberList = mSubscriptionMap.get(subscriptionTarget);
-            if (subscriberList != null)
-                subscriberList.remove(processor);
+        synchronized (mRoutingLock) {
+            mRoutingTable = mRoutingTable.without(processor);
         }
     }
 
     @Override
-    public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-        BaseDataPacket packet = new BaseDataPacket(gatt, characteristic);
-        List<Processor> subscribers = mSubscriptionMap.get(characteristic.getUuid());
-        if (subscribers != null) {
+    public void onCharacteristicChanged(UUID serviceUUID, UUID characteristicUUID, byte[] data) {
+        Processor[] subscribers = mRoutingTable.getSubscribers(characteristicUUID);
+        if (subscribers.length > 0) {
+            long timeStamp = SystemClock.elapsedRealtimeNanos();
+            int characteristicId = PacketRegistry.internCharacteristic(serviceUUID, characteristicUUID);
+            PayloadSlab slab = mPayloadSlab;
+            BaseDataPacket packet;
+            if (slab != null)
+                packet = slab.pack(mDeviceId, characteristicId, timeStamp, data);
+            else
+                packet = new BaseDataPacket(mDeviceId, characteristicId, timeStamp, data, 0, data != null ? data.length : 0);
             for (Processor subscriber : subscribers)
                 subscriber.submit(packet);
         }
-        super.onCharacteristicChanged(gatt, characteristic);
     }
 
 }
@@ -0,0 +1,178 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import eu.darken.myolib.msgs.MyoMsg;
+
+/**
+ * The queue of {@link BaseMyo}'s dispatcher, one FIFO lane per {@link MyoMsg.Priority}.
+ * Higher lanes go first, but a waiting lane that was passed over {@link #STARVATION_LIMIT} times gets the next turn.
+ * <p>
+ * Not thread-safe, guarded by the dispatch lock of the Myo.
+ */
+class DispatchQueue implements Iterable<MyoMsg> {
+    /**
+     * How often a waiting lane may be passed over by higher lanes before it is served.
+     */
+    static final int STARVATION_LIMIT = 4;
+    private static final MyoMsg.Priority[] PRIORITIES = MyoMsg.Priority.values();
+    private final ArrayDeque<MyoMsg>[] mLanes;
+    private final int[] mPassedOver = new int[PRIORITIES.length];
+
+    @SuppressWarnings("unchecked")
+    DispatchQueue() {
+        mLanes = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < mLanes.length; i++)
+            mLanes[i] = new ArrayDeque<>();
+    }
+
+    void add(MyoMsg msg) {
+        ArrayDeque<MyoMsg> lane = mLanes[msg.getPriority().ordinal()];
+        if (lane.isEmpty())
+            mPassedOver[msg.getPriority().ordinal()] = 0;
+        lane.add(msg);
+    }
+
+    /**
+     * Puts the message in front of its lane, e.g. a retry that must not lose its place.
+     */
+    void addFirst(MyoMsg msg) {
+        mLanes[msg.getPriority().ordinal()].addFirst(msg);
+    }
+
+    boolean remove(MyoMsg msg) {
+        for (ArrayDeque<MyoMsg> lane : mLanes) {
+            if (lane.remove(msg))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Puts a message at the place of a queued one.
+     *
+     * @return false if old isn't queued.
+     */
+    boolean replace(MyoMsg old, MyoMsg msg) {
+        for (ArrayDeque<MyoMsg> lane : mLanes) {
+            if (!lane.contains(old))
+                continue;
+            for (int i = lane.size(); i > 0; i--) {
+                MyoMsg queued = lane.poll();
+                lane.add(queued == old ? msg : queued);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        for (ArrayDeque<MyoMsg> lane : mLanes) {
+            if (!lane.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    int size() {
+        int size = 0;
+        for (ArrayDeque<MyoMsg> lane : mLanes)
+            size += lane.size();
+        return size;
+    }
+
+    /**
+     * @return the message {@link #poll()} would return, NULL if empty.
+     */
+    @Nullable
+    MyoMsg peek() {
+        int lane = nextLane();
+        return lane == -1 ? null : mLanes[lane].peek();
+    }
+
+    /**
+     * @return the next message by priority, NULL if empty.
+     */
+    @Nullable
+    MyoMsg poll() {
+        int lane = nextLane();
+        return lane == -1 ? null : poll(PRIORITIES[lane]);
+    }
+
+    @Nullable
+    MyoMsg peek(MyoMsg.Priority priority) {
+        return mLanes[priority.ordinal()].peek();
+    }
+
+    /**
+     * Takes the head of one lane, waiting lower lanes count as passed over.
+     */
+    @Nullable
+    MyoMsg poll(MyoMsg.Priority priority) {
+        final int lane = priority.ordinal();
+        MyoMsg msg = mLanes[lane].poll();
+        if (msg == null)
+            return null;
+        mPassedOver[lane] = 0;
+        for (int i = lane + 1; i < mLanes.length; i++) {
+            if (!mLanes[i].isEmpty())
+                mPassedOver[i]++;
+        }
+        return msg;
+    }
+
+    /**
+     * @return the highest non-empty lane, unless a lower one is starving. -1 if empty.
+     */
+    private int nextLane() {
+        int next = -1;
+        for (int i = 0; i < mLanes.length; i++) {
+            if (mLanes[i].isEmpty())
+                continue;
+            if (next == -1)
+                next = i;
+            else if (mPassedOver[i] >= STARVATION_LIMIT)
+                return i;
+        }
+        return next;
+    }
+
+    /**
+     * All messages, lane by lane, supports {@link Iterator#remove()}.
+     */
+    @Override
+    public Iterator<MyoMsg> iterator() {
+        return new Iterator<MyoMsg>() {
+            private int mLane = 0;
+            private Iterator<MyoMsg> mCurrent = mLanes[0].iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!mCurrent.hasNext() && mLane < mLanes.length - 1)
+                    mCurrent = mLanes[++mLane].iterator();
+                return mCurrent.hasNext();
+            }
+
+            @Override
+            public MyoMsg next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return mCurrent.next();
+            }
+
+            @Override
+            public void remove() {
+                mCurrent.remove();
+            }
+        };
+    }
+}
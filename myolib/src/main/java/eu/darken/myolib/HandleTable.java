@@ -0,0 +1,201 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.darken.myolib.metrics.GattMetrics;
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.transport.MyoTransport;
+
+/**
+ * The transport handles of {@link BaseMyo}'s characteristics and descriptors, see {@link MyoTransport#resolveHandle(UUID, UUID, UUID)}.
+ * Each target is resolved once per service discovery and the handle is kept in the message, see {@link MyoMsg#getHandle()},
+ * so sending and matching callbacks doesn't look up services or build identifier strings.
+ * Sent messages wait for their callback in a slot by handle, next to the {@link GattMetrics.Target} and {@link ReadCache.Slot} of that handle.
+ * Operations given up as lost still get their callback later, each handle counts how many of those are yet to come.
+ * <p>
+ * Not thread-safe, guarded by the dispatch lock of the Myo.
+ */
+class HandleTable {
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * Shared by all tables, so a message submitted to another Myo doesn't keep a handle of this one.
+     */
+    private static final AtomicInteger sGenerations = new AtomicInteger();
+    private final MyoTransport mTransport;
+    private final GattMetrics mMetrics;
+    private int mGeneration = sGenerations.incrementAndGet();
+    /**
+     * Service, characteristic and descriptor UUID of each resolved target, next to its handle in {@link #mHandles}.
+     * Only a handful, a linear scan beats hashing the UUIDs.
+     */
+    private UUID[] mTargetUUIDs = new UUID[INITIAL_CAPACITY * 3];
+    private int[] mHandles = new int[INITIAL_CAPACITY];
+    private int mSize;
+    private MyoMsg[] mSentMsgs = new MyoMsg[INITIAL_CAPACITY];
+    private GattMetrics.Target[] mTargets = new GattMetrics.Target[INITIAL_CAPACITY];
+    private int[] mLostCounts = new int[INITIAL_CAPACITY];
+    private ReadCache.Slot[] mCacheSlots = new ReadCache.Slot[INITIAL_CAPACITY];
+    /**
+     * The cache {@link #mCacheSlots} belong to.
+     */
+    private ReadCache mCache;
+
+    HandleTable(MyoTransport transport, GattMetrics metrics) {
+        mTransport = transport;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Drops all handles and sent messages, called when services were discovered again.
+     */
+    void reset() {
+        mGeneration = sGenerations.incrementAndGet();
+        Arrays.fill(mTargetUUIDs, 0, mSize * 3, null);
+        mSize = 0;
+        Arrays.fill(mSentMsgs, null);
+        Arrays.fill(mTargets, null);
+        Arrays.fill(mLostCounts, 0);
+        Arrays.fill(mCacheSlots, null);
+    }
+
+    /**
+     * @return the handle of the message's target, {@link MyoTransport#NO_HANDLE} if it doesn't exist.
+     */
+    int resolve(MyoMsg msg) {
+        if (msg.getHandleGeneration() == mGeneration)
+            return msg.getHandle();
+        final int handle = resolve(msg.getServiceUUID(), msg.getCharacteristicUUID(), msg.getDescriptorUUID());
+        if (handle != MyoTransport.NO_HANDLE && mTargets[handle] == null)
+            mTargets[handle] = mMetrics.getTarget(msg);
+        msg.setHandle(handle, mGeneration);
+        return handle;
+    }
+
+    /**
+     * Asks the transport only the first time, missing targets are remembered too.
+     *
+     * @return {@link MyoTransport#NO_HANDLE} if the target doesn't exist.
+     */
+    int resolve(UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID) {
+        for (int i = 0; i < mSize; i++) {
+            if (characteristicUUID.equals(mTargetUUIDs[i * 3 + 1]) && serviceUUID.equals(mTargetUUIDs[i * 3])
+                    && (descriptorUUID == null ? mTargetUUIDs[i * 3 + 2] == null : descriptorUUID.equals(mTargetUUIDs[i * 3 + 2])))
+                return mHandles[i];
+        }
+        final int handle = mTransport.resolveHandle(serviceUUID, characteristicUUID, descriptorUUID);
+        if (mSize == mHandles.length) {
+            mHandles = Arrays.copyOf(mHandles, mSize * 2);
+            mTargetUUIDs = Arrays.copyOf(mTargetUUIDs, mSize * 2 * 3);
+        }
+        mTargetUUIDs[mSize * 3] = serviceUUID;
+        mTargetUUIDs[mSize * 3 + 1] = characteristicUUID;
+        mTargetUUIDs[mSize * 3 + 2] = descriptorUUID;
+        mHandles[mSize++] = handle;
+        if (handle >= mSentMsgs.length) {
+            int capacity = Math.max(handle + 1, mSentMsgs.length * 2);
+            mSentMsgs = Arrays.copyOf(mSentMsgs, capacity);
+            mTargets = Arrays.copyOf(mTargets, capacity);
+            mLostCounts = Arrays.copyOf(mLostCounts, capacity);
+            mCacheSlots = Arrays.copyOf(mCacheSlots, capacity);
+        }
+        return handle;
+    }
+
+    /**
+     * @return the sent message waiting for a callback of this handle, NULL if none or the handle is invalid.
+     */
+    @Nullable
+    MyoMsg getSent(int handle) {
+        return handle >= 0 && handle < mSentMsgs.length ? mSentMsgs[handle] : null;
+    }
+
+    /**
+     * @param handle a resolved one, see {@link #resolve(MyoMsg)}.
+     * @param msg    NULL to clear the slot.
+     */
+    void putSent(int handle, @Nullable MyoMsg msg) {
+        mSentMsgs[handle] = msg;
+    }
+
+    /**
+     * Like {@link #getSent(int)}, but also clears the slot.
+     */
+    @Nullable
+    MyoMsg takeSent(int handle) {
+        MyoMsg msg = getSent(handle);
+        if (msg != null)
+            mSentMsgs[handle] = null;
+        return msg;
+    }
+
+    /**
+     * The operation in flight on this handle was given up, its callback is still to come.
+     */
+    void onLost(int handle) {
+        if (handle >= 0 && handle < mLostCounts.length)
+            mLostCounts[handle]++;
+    }
+
+    /**
+     * Callbacks arrive in the order the operations were sent, so the next ones of a handle belong to its lost operations.
+     *
+     * @return true if this callback belongs to a lost operation and has to be ignored.
+     */
+    boolean takeLost(int handle) {
+        if (handle < 0 || handle >= mLostCounts.length || mLostCounts[handle] == 0)
+            return false;
+        mLostCounts[handle]--;
+        return true;
+    }
+
+    /**
+     * @return all slots by handle, NULL for empty ones. Don't modify.
+     */
+    MyoMsg[] getSentMsgs() {
+        return mSentMsgs;
+    }
+
+    /**
+     * @return the statistics of the handle's target, NULL if no message was resolved to it yet.
+     */
+    @Nullable
+    GattMetrics.Target getTarget(int handle) {
+        return handle >= 0 && handle < mTargets.length ? mTargets[handle] : null;
+    }
+
+    /**
+     * Like {@link #getTarget(int)}, but only if the message's handle is from the current service discovery.
+     */
+    @Nullable
+    GattMetrics.Target getTarget(MyoMsg msg) {
+        return msg.getHandleGeneration() == mGeneration ? getTarget(msg.getHandle()) : null;
+    }
+
+    /**
+     * @param handle a resolved one, see {@link #resolve(MyoMsg)}.
+     * @param msg    a message sent on this handle, used to look up the slot the first time.
+     * @return the slot of the handle's characteristic in this cache, NULL for descriptors.
+     */
+    @Nullable
+    ReadCache.Slot getCacheSlot(int handle, ReadCache cache, MyoMsg msg) {
+        if (cache != mCache) {
+            Arrays.fill(mCacheSlots, null);
+            mCache = cache;
+        }
+        ReadCache.Slot slot = mCacheSlots[handle];
+        if (slot == null) {
+            slot = cache.obtainSlot(msg);
+            mCacheSlots[handle] = slot;
+        }
+        return slot;
+    }
+}
@@ -6,6 +6,7 @@
 package eu.darken.myolib;
 
 import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCharacteristic;
 import android.content.Context;
 import android.support.annotation.Nullable;
 
@@ -18,6 +19,7 @@ import eu.darken.myolib.services.Device;
 import eu.darken.myolib.services.Generic;
 import eu.darken.myolib.tools.ByteHelper;
 import eu.darken.myolib.tools.Logy;
+import eu.darken.myolib.transport.MyoTransport;
 
 /**
  * Extension of {@link BaseMyo} that provides direct methods to change Myo settings or read them.
@@ -29,6 +31,63 @@ public class Myo extends BaseMyo {
         super(context, device);
     }
 
+    public Myo(MyoTransport transport) {
+        super(transport);
+    }
+
+    private volatile long mCommandTimeout = 0;
+    private volatile boolean mFastCommands = false;
+
+    /**
+     * @return time in milliseconds, 0 for none.
+     */
+    public long getCommandTimeout() {
+        return mCommandTimeout;
+    }
+
+    /**
+     * Default deadline for the messages of this class' read and write methods, see {@link MyoMsg#setTimeout(long)}.
+     * Use {@link MyoFuture#timeout(long, java.util.concurrent.TimeUnit)} for a single call.
+     *
+     * @param commandTimeout time in milliseconds, 0 for none (default).
+     */
+    public void setCommandTimeout(long commandTimeout) {
+        mCommandTimeout = commandTimeout;
+    }
+
+    public boolean isFastCommands() {
+        return mFastCommands;
+    }
+
+    /**
+     * Writes commands that are safe to lose without response, see {@link MyoCmds#isSafeWithoutResponse(byte[])}.
+     * Each one then only waits until it was buffered for sending instead of a full round-trip, so bursts go out at link rate.
+     * Their callbacks report success even if the Myo never got them. Other commands keep being acknowledged.
+     *
+     * @param fastCommands default false.
+     */
+    public void setFastCommands(boolean fastCommands) {
+        mFastCommands = fastCommands;
+    }
+
+    /**
+     * Submits the message with {@link #getCommandTimeout()}, unless it has its own timeout.
+     *
+     * @param future completed by the message's callback.
+     * @return the future.
+     */
+    protected <T> MyoFuture<T> submit(MyoMsg msg, MyoFuture<T> future) {
+        future.attach(msg);
+        if (msg.getTimeout() == 0)
+            msg.setTimeout(mCommandTimeout);
+        if (mFastCommands && msg instanceof WriteMsg && msg.getDescriptorUUID() == null
+                && msg.getCharacteristicUUID().equals(Control.COMMAND.getCharacteristicUUID())
+                && MyoCmds.isSafeWithoutResponse(((WriteMsg) msg).getData()))
+            ((WriteMsg) msg).setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        submit(msg);
+        return future;
+    }
+
     public interface ReadMyoInfoCallback {
         void onReadMyoInfo(Myo myo, MyoMsg msg, MyoInfo myoInfo);
     }
@@ -39,7 +98,8 @@ public class Myo extends BaseMyo {
         return mMyoInfo;
     }
 
-    public void readInfo(final ReadMyoInfoCallback callback) {
+    public MyoFuture<MyoInfo> readInfo(final ReadMyoInfoCallback callback) {
+        final MyoFuture<MyoInfo> future = new MyoFuture<>(this);
         MyoMsg msg = new ReadMsg(Control.MYOINFO, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -47,9 +107,11 @@ public class Myo extends BaseMyo {
                     mMyoInfo = new MyoInfo((ReadMsg) msg);
                 if (callback != null)
                     callback.onReadMyoInfo(Myo.this, msg, mMyoInfo);
+                future.complete(msg, mMyoInfo);
             }
         });
-        submit(msg);
+        msg.setPriority(MyoMsg.Priority.BACKGROUND);
+        return submit(msg, future);
     }
 
     /**
@@ -58,7 +120,8 @@ public class Myo extends BaseMyo {
      * @param newName  make it confirms to bluetooth device name specs
      * @param callback optional
      */
-    public void writeDeviceName(final String newName, @Nullable final MyoCommandCallback callback) {
+    public MyoFuture<MyoMsg> writeDeviceName(final String newName, @Nullable final MyoCommandCallback callback) {
+        final MyoFuture<MyoMsg> future = new MyoFuture<>(this);
         MyoMsg writeMsg = new WriteMsg(Generic.DEVICE_NAME, newName.getBytes(), new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -68,9 +131,10 @@ public class Myo extends BaseMyo {
                 }
                 if (callback != null)
                     callback.onCommandDone(Myo.this, msg);
+                future.complete(msg, msg);
             }
         });
-        submit(writeMsg);
+        return submit(writeMsg, future);
     }
 
     public interface ReadDeviceNameCallback {
@@ -94,7 +158,8 @@ public class Myo extends BaseMyo {
      *
      * @param callback optional
      */
-    public void readDeviceName(@Nullable final ReadDeviceNameCallback callback) {
+    public MyoFuture<String> readDeviceName(@Nullable final ReadDeviceNameCallback callback) {
+        final MyoFuture<String> future = new MyoFuture<>(this);
         MyoMsg msg = new ReadMsg(Generic.DEVICE_NAME, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -102,9 +167,11 @@ public class Myo extends BaseMyo {
                     mDeviceName = new String(((ReadMsg) msg).getValue());
                 if (callback != null)
                     callback.onDeviceNameRead(Myo.this, msg, mDeviceName);
+                future.complete(msg, mDeviceName);
             }
         });
-        submit(msg);
+        msg.setPriority(MyoMsg.Priority.BACKGROUND);
+        return submit(msg, future);
     }
 
     public interface ManufacturerNameCallback {
@@ -120,7 +187,8 @@ public class Myo extends BaseMyo {
     /**
      * @param callback optional
      */
-    public void readManufacturerName(@Nullable final ManufacturerNameCallback callback) {
+    public MyoFuture<String> readManufacturerName(@Nullable final ManufacturerNameCallback callback) {
+        final MyoFuture<String> future = new MyoFuture<>(this);
         MyoMsg msg = new ReadMsg(Device.MANUFACTURER_NAME, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -128,9 +196,11 @@ public class Myo extends BaseMyo {
                     mManufacturerName = new String(((ReadMsg) msg).getValue());
                 if (callback != null)
                     callback.onManufacturerNameRead(Myo.this, msg, mManufacturerName);
+                future.complete(msg, mManufacturerName);
             }
         });
-        submit(msg);
+        msg.setPriority(MyoMsg.Priority.BACKGROUND);
+        return submit(msg, future);
     }
 
     public interface FirmwareCallback {
@@ -146,7 +216,8 @@ public class Myo extends BaseMyo {
     /**
      * @param callback optional
      */
-    public void readFirmware(@Nullable final FirmwareCallback callback) {
+    public MyoFuture<String> readFirmware(@Nullable final FirmwareCallback callback) {
+        final MyoFuture<String> future = new MyoFuture<>(this);
         MyoMsg msg = new ReadMsg(Control.FIRMWARE_VERSION, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -156,9 +227,11 @@ public class Myo extends BaseMyo {
                 }
                 if (callback != null)
                     callback.onFirmwareRead(Myo.this, msg, mFirmware);
+                future.complete(msg, mFirmware);
             }
         });
-        submit(msg);
+        msg.setPriority(MyoMsg.Priority.BACKGROUND);
+        return submit(msg, future);
     }
 
     public interface BatteryCallback {
@@ -174,7 +247,8 @@ public class Myo extends BaseMyo {
     /**
      * @param callback optional
      */
-    public void readBatteryLevel(@Nullable final BatteryCallback callback) {
+    public MyoFuture<Integer> readBatteryLevel(@Nullable final BatteryCallback callback) {
+        final MyoFuture<Integer> future = new MyoFuture<>(this);
         MyoMsg msg = new ReadMsg(Battery.BATTERYLEVEL, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -182,9 +256,11 @@ public class Myo extends BaseMyo {
                     mBatteryLevel = ((ReadMsg) msg).getValue()[0];
                 if (callback != null)
                     callback.onBatteryLevelRead(Myo.this, msg, mBatteryLevel);
+                future.complete(msg, mBatteryLevel);
             }
         });
-        submit(msg);
+        msg.setPriority(MyoMsg.Priority.BACKGROUND);
+        return submit(msg, future);
     }
 
     private MyoCmds.EmgMode mEmgMode = MyoCmds.EmgMode.NONE;
@@ -211,8 +287,9 @@ public class Myo extends BaseMyo {
      * @param classifierMode classifier on/off
      * @param callback       optional
      */
-    public void writeMode(final MyoCmds.EmgMode emgMode, final MyoCmds.ImuMode imuMode, final MyoCmds.ClassifierMode classifierMode, @Nullable final MyoCommandCallback callback) {
+    public MyoFuture<MyoMsg> writeMode(final MyoCmds.EmgMode emgMode, final MyoCmds.ImuMode imuMode, final MyoCmds.ClassifierMode classifierMode, @Nullable final MyoCommandCallback callback) {
         byte[] cmd = MyoCmds.buildSensorModeCmd(emgMode, imuMode, classifierMode);
+        final MyoFuture<MyoMsg> future = new MyoFuture<>(this);
         MyoMsg writeMsg = new WriteMsg(Control.COMMAND, cmd, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -224,10 +301,11 @@ public class Myo extends BaseMyo {
                 }
                 if (callback != null)
                     callback.onCommandDone(Myo.this, msg);
+                future.complete(msg, msg);
 
             }
         });
-        submit(writeMsg);
+        return submit(writeMsg, future);
     }
 
     private MyoCmds.SleepMode mSleepMode = MyoCmds.SleepMode.NORMAL;
@@ -242,8 +320,9 @@ public class Myo extends BaseMyo {
      * @param sleepMode default {@link eu.darken.myolib.MyoCmds.SleepMode}
      * @param callback  optional
      */
-    public void writeSleepMode(final MyoCmds.SleepMode sleepMode, @Nullable final MyoCommandCallback callback) {
+    public MyoFuture<MyoMsg> writeSleepMode(final MyoCmds.SleepMode sleepMode, @Nullable final MyoCommandCallback callback) {
         byte[] cmd = MyoCmds.buildSleepModeCmd(sleepMode);
+        final MyoFuture<MyoMsg> future = new MyoFuture<>(this);
         MyoMsg writeMsg = new WriteMsg(Control.COMMAND, cmd, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -251,9 +330,10 @@ public class Myo extends BaseMyo {
                     mSleepMode = sleepMode;
                 if (callback != null)
                     callback.onCommandDone(Myo.this, msg);
+                future.complete(msg, msg);
             }
         });
-        submit(writeMsg);
+        return submit(writeMsg, future);
     }
 
     /**
@@ -263,8 +343,9 @@ public class Myo extends BaseMyo {
      *
      * @param callback optional
      */
-    public void writeDeepSleep(@Nullable final MyoCommandCallback callback) {
+    public MyoFuture<MyoMsg> writeDeepSleep(@Nullable final MyoCommandCallback callback) {
         byte[] cmd = MyoCmds.buildDeepSleepCmd();
+        final MyoFuture<MyoMsg> future = new MyoFuture<>(this);
         MyoMsg writeMsg = new WriteMsg(Control.COMMAND, cmd, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -272,13 +353,15 @@ public class Myo extends BaseMyo {
                     Logy.d(TAG, "DeepSleep!");
                 if (callback != null)
                     callback.onCommandDone(Myo.this, msg);
+                future.complete(msg, msg);
             }
         });
-        submit(writeMsg);
+        return submit(writeMsg, future);
     }
 
-    public void writeVibrate(MyoCmds.VibrateType vibrateType, @Nullable final MyoCommandCallback callback) {
+    public MyoFuture<MyoMsg> writeVibrate(MyoCmds.VibrateType vibrateType, @Nullable final MyoCommandCallback callback) {
         byte[] cmd = MyoCmds.buildVibrateCmd(vibrateType);
+        final MyoFuture<MyoMsg> future = new MyoFuture<>(this);
         MyoMsg writeMsg = new WriteMsg(Control.COMMAND, cmd, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -286,17 +369,20 @@ public class Myo extends BaseMyo {
                     Logy.d(TAG, "Vibrated!");
                 if (callback != null)
                     callback.onCommandDone(Myo.this, msg);
+                future.complete(msg, msg);
             }
         });
-        submit(writeMsg);
+        writeMsg.setPriority(MyoMsg.Priority.REALTIME);
+        return submit(writeMsg, future);
     }
 
     /**
      * @param unlockType LOCK, TIMED or HOLD
      * @param callback   optional
      */
-    public void writeUnlock(final MyoCmds.UnlockType unlockType, @Nullable final MyoCommandCallback callback) {
+    public MyoFuture<MyoMsg> writeUnlock(final MyoCmds.UnlockType unlockType, @Nullable final MyoCommandCallback callback) {
         byte[] cmd = MyoCmds.buildSetUnlockModeCmd(unlockType);
+        final MyoFuture<MyoMsg> future = new MyoFuture<>(this);
         final MyoMsg writeMsg = new WriteMsg(Control.COMMAND, cmd, new MyoMsg.Callback() {
             @Override
             public void onResult(MyoMsg msg) {
@@ -304,9 +390,11 @@ public class Myo extends BaseMyo {
                     Logy.d(TAG, "SleepMode set: " + unlockType.name());
                 if (callback != null)
                     callback.onCommandDone(Myo.this, msg);
+                future.complete(msg, msg);
             }
         });
-        submit(writeMsg);
+        writeMsg.setPriority(MyoMsg.Priority.REALTIME);
+        return submit(writeMsg, future);
     }
 
     /**
@@ -10,6 +10,31 @@ package eu.darken.myolib;
  */
 public class MyoCmds {
 
+    /**
+     * Commands that can be repeated or lost without leaving the Myo in a wrong state, i.e. vibrate.
+     * Unlock, mode, sleep and deep sleep change the state of the Myo, they should be written with response.
+     *
+     * @param cmd a command built by this class.
+     * @return true if it can be written without response, see {@link eu.darken.myolib.msgs.WriteMsg#setWriteType(int)}.
+     */
+    public static boolean isSafeWithoutResponse(byte[] cmd) {
+        if (cmd.length == 0)
+            return false;
+        return cmd[0] == 0x03;
+    }
+
+    /**
+     * Commands that set a state, i.e. sensor mode, sleep mode and unlock.
+     * An older one that wasn't sent yet is pointless once a newer one of the same kind is waiting.
+     *
+     * @return true if both are state commands of the same kind built by this class.
+     */
+    public static boolean supersedes(byte[] newer, byte[] older) {
+        if (newer.length == 0 || older.length == 0 || newer[0] != older[0])
+            return false;
+        return newer[0] == 0x01 || newer[0] == 0x09 || newer[0] == 0x0a;
+    }
+
     public static byte[] buildDeepSleepCmd() {
         return new byte[]{
                 0x04,
@@ -0,0 +1,183 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.MyoMsgException;
+
+/**
+ * The pending result of a {@link MyoMsg}, returned by the command methods of {@link Myo}.
+ * Setup sequences can be written without nesting callbacks, e.g. on a background thread:
+ * <pre>
+ * myo.writeSleepMode(MyoCmds.SleepMode.NEVER, null).timeout(2, TimeUnit.SECONDS).get();
+ * myo.writeMode(emgMode, imuMode, classifierMode, null).timeout(2, TimeUnit.SECONDS).get();
+ * </pre>
+ * {@link #get()} throws an {@link ExecutionException} caused by a {@link MyoMsgException} if the message failed or timed out.
+ *
+ * @param <V> the value the message was read or converted into.
+ */
+public class MyoFuture<V> implements Future<V> {
+    private final BaseMyo mMyo;
+    private final List<Listener<V>> mListeners = new ArrayList<>();
+    private MyoMsg mMsg;
+    private V mValue;
+    private boolean mDone;
+    private boolean mCancelled;
+
+    public interface Listener<V> {
+        /**
+         * Called once the future is done, on the thread completing it.
+         */
+        void onDone(MyoFuture<V> future);
+    }
+
+    public MyoFuture(BaseMyo myo) {
+        mMyo = myo;
+    }
+
+    /**
+     * Links this future to its message, needed for {@link #cancel(boolean)} and {@link #timeout(long, TimeUnit)}.
+     * Call this before submitting the message.
+     */
+    public synchronized void attach(MyoMsg msg) {
+        mMsg = msg;
+    }
+
+    /**
+     * @return NULL until {@link #attach(MyoMsg)} was called.
+     */
+    @Nullable
+    public synchronized MyoMsg getMsg() {
+        return mMsg;
+    }
+
+    /**
+     * Call this from the callback of the message.
+     *
+     * @param value the result if the message state is {@link MyoMsg.State#SUCCESS}.
+     * @return false if this future was already done.
+     */
+    public boolean complete(MyoMsg msg, @Nullable V value) {
+        List<Listener<V>> listeners;
+        synchronized (this) {
+            if (mDone)
+                return false;
+            mMsg = msg;
+            mValue = value;
+            mDone = true;
+            notifyAll();
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+        }
+        for (Listener<V> listener : listeners)
+            listener.onDone(this);
+        return true;
+    }
+
+    /**
+     * Fails the message if it doesn't complete within this time from now, see {@link MyoMsg#setTimeout(long)}.
+     * Unlike {@link #get(long, TimeUnit)} this also removes the message from the Myo.
+     *
+     * @return this future for chaining.
+     */
+    public MyoFuture<V> timeout(long timeout, TimeUnit unit) {
+        MyoMsg msg = getMsg();
+        if (msg == null)
+            throw new IllegalStateException("No message attached.");
+        mMyo.setDeadline(msg, System.nanoTime() + unit.toNanos(timeout));
+        return this;
+    }
+
+    /**
+     * @param listener called immediately if already done.
+     */
+    public void addListener(Listener<V> listener) {
+        synchronized (this) {
+            if (!mDone) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.onDone(this);
+    }
+
+    /**
+     * Only possible while the message waits in the queue, the message's callback is not called then.
+     *
+     * @param mayInterruptIfRunning ignored, a message that was sent can't be taken back.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        MyoMsg msg;
+        synchronized (this) {
+            if (mDone)
+                return false;
+            msg = mMsg;
+        }
+        if (msg == null || !mMyo.cancel(msg))
+            return false;
+        synchronized (this) {
+            if (mDone)
+                return false;
+            mCancelled = true;
+        }
+        return complete(msg, null);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * @return true if done and the message state is {@link MyoMsg.State#SUCCESS}.
+     */
+    public synchronized boolean isSuccessful() {
+        return mDone && !mCancelled && mMsg.getState() == MyoMsg.State.SUCCESS;
+    }
+
+    @Override
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (!mDone)
+            wait();
+        return getResult();
+    }
+
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!mDone) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private V getResult() throws ExecutionException {
+        if (mCancelled)
+            throw new CancellationException();
+        if (mMsg.getState() != MyoMsg.State.SUCCESS)
+            throw new ExecutionException(new MyoMsgException(mMsg));
+        return mValue;
+    }
+}
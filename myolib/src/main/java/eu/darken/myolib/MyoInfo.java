@@ -3,7 +3,7 @@ package eu.darken.myolib;
 
 import eu.darken.myolib.msgs.ReadMsg;
 import eu.darken.myolib.processor.classifier.PoseClassifierEvent;
-import eu.darken.myolib.tools.ByteHelper;
+import eu.darken.myolib.tools.MyoHwCodec;
 
 public class MyoInfo {
     /**
@@ -13,7 +13,7 @@ public class MyoInfo {
     /**
      * Pose that should be interpreted as the unlock pose.
      */
-    private PoseClassifierEvent.Pose mUnlockPose;
+    private final PoseClassifierEvent.Pose mUnlockPose;
 
     public enum ActiveClassifierType {
         BUILTIN((byte) 0x0), CUSTOM((byte) 0x1);
@@ -66,53 +66,27 @@ public class MyoInfo {
     private final byte[] mReservedData;
 
     public MyoInfo(ReadMsg msg) {
-        ByteHelper byteHelper = new ByteHelper(msg.getValue());
+        this(msg.getValue());
+    }
+
+    /**
+     * @param data a myohw_fw_info_t struct
+     */
+    public MyoInfo(byte[] data) {
         int[] serialNumberValue = new int[6];
         for (int i = 0; i < 6; i++)
-            serialNumberValue[i] = byteHelper.getUInt8();
+            serialNumberValue[i] = MyoHwCodec.decodeSerialNumber(data, 0, i);
         mSerialNumber = serialNumberValue;
-        int unlockPoseValue = byteHelper.getUInt16();
-        for (PoseClassifierEvent.Pose pose : PoseClassifierEvent.Pose.values()) {
-            if (pose.getValue() == unlockPoseValue) {
-                mUnlockPose = pose;
-                break;
-            }
-        }
-        if (mUnlockPose == null)
-            mUnlockPose = PoseClassifierEvent.Pose.UNKNOWN;
-
-        int classifierTypeValue = byteHelper.getUInt8();
-        ActiveClassifierType classifierType = ActiveClassifierType.BUILTIN;
-        for (ActiveClassifierType type : ActiveClassifierType.values()) {
-            if (type.getValue() == classifierTypeValue) {
-                classifierType = type;
-                break;
-            }
-        }
-        mActiveClassifierType = classifierType;
-
-        mActiveClassifierIndex = byteHelper.getUInt8();
-
-        mHasCustomClassifier = byteHelper.getUInt8() == 1;
-
-        mStreamIndicating = byteHelper.getUInt8();
-
-        int skuValue = byteHelper.getUInt8();
-        Sku skuType = Sku.UNKNOWN;
-        for (Sku type : Sku.values()) {
-            if (type.getValue() == skuValue) {
-                skuType = type;
-                break;
-            }
-        }
-        mSKU = skuType;
-
-        mReservedData = new byte[byteHelper.getRemaining()];
-        int rIndex = 0;
-        while (byteHelper.hasRemaining()) {
-            mReservedData[rIndex] = byteHelper.getByte();
-            rIndex++;
-        }
+        mUnlockPose = MyoHwCodec.decodeUnlockPose(data, 0);
+        mActiveClassifierType = MyoHwCodec.decodeActiveClassifierType(data, 0);
+        mActiveClassifierIndex = MyoHwCodec.decodeActiveClassifierIndex(data, 0);
+        mHasCustomClassifier = MyoHwCodec.decodeHasCustomClassifier(data, 0);
+        mStreamIndicating = MyoHwCodec.decodeStreamIndicating(data, 0);
+        mSKU = MyoHwCodec.decodeSku(data, 0);
+
+        int reservedOffset = MyoHwCodec.getMyoInfoReservedOffset(0);
+        mReservedData = new byte[Math.max(0, data.length - reservedOffset)];
+        System.arraycopy(data, reservedOffset, mReservedData, 0, mReservedData.length);
     }
 
     public int[] getSerialNumber() {
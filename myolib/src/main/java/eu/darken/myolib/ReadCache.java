@@ -0,0 +1,336 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.ReadMsg;
+import eu.darken.myolib.services.Battery;
+import eu.darken.myolib.services.Control;
+import eu.darken.myolib.services.Device;
+import eu.darken.myolib.services.Generic;
+import eu.darken.myolib.services.MyoCharacteristic;
+import eu.darken.myolib.tools.Logy;
+
+/**
+ * Values of characteristics that rarely change, so reading them again doesn't cost a GATT round-trip.
+ * Each characteristic has a time to live, characteristics without one are not cached.
+ * By default info, firmware, manufacturer and device name are kept forever and the battery level for a minute.
+ * <p>
+ * Entries survive process restarts if there is a {@link Store}, e.g. a {@link PreferencesStore}.
+ * If a firmware version read from the device differs from the cached one, all entries are dropped.
+ * <p>
+ * Used by {@link BaseMyo#submit(MyoMsg)} for {@link ReadMsg}s, see {@link ReadMsg#setUseCache(boolean)}. Thread-safe.
+ * Lookups are by service and characteristic UUID, identifier strings are only built for the {@link Store}.
+ */
+public class ReadCache {
+    private static final String TAG = "MyoLib:ReadCache";
+    public static final long TTL_FOREVER = -1;
+
+    /**
+     * Persists the entries of one device.
+     */
+    public interface Store {
+        /**
+         * @return all entries passed to {@link #save(String, String)}.
+         */
+        Map<String, String> load();
+
+        /**
+         * @param value NULL to remove the entry.
+         */
+        void save(String key, @Nullable String value);
+
+        void clear();
+    }
+
+    /**
+     * A {@link Store} backed by {@link SharedPreferences}, one file per device address.
+     */
+    public static class PreferencesStore implements Store {
+        private final SharedPreferences mPreferences;
+
+        public PreferencesStore(Context context, String deviceAddress) {
+            mPreferences = context.getSharedPreferences("myolib_readcache_" + deviceAddress.replace(":", ""), Context.MODE_PRIVATE);
+        }
+
+        @Override
+        public Map<String, String> load() {
+            Map<String, String> entries = new HashMap<>();
+            for (Map.Entry<String, ?> entry : mPreferences.getAll().entrySet()) {
+                if (entry.getValue() instanceof String)
+                    entries.put(entry.getKey(), (String) entry.getValue());
+            }
+            return entries;
+        }
+
+        @Override
+        public void save(String key, @Nullable String value) {
+            if (value == null)
+                mPreferences.edit().remove(key).apply();
+            else
+                mPreferences.edit().putString(key, value).apply();
+        }
+
+        @Override
+        public void clear() {
+            mPreferences.edit().clear().apply();
+        }
+    }
+
+    private static class Entry {
+        final byte[] mValue;
+        /**
+         * {@link System#currentTimeMillis()}, as it has to stay valid across restarts.
+         */
+        final long mStoredAt;
+
+        Entry(byte[] value, long storedAt) {
+            mValue = value;
+            mStoredAt = storedAt;
+        }
+    }
+
+    /**
+     * Time to live and cached value of one characteristic.
+     * Kept for the lifetime of the cache, so it can be looked up once and held on to, see {@link #obtainSlot(MyoMsg)}.
+     */
+    static class Slot {
+        final UUID mServiceUUID;
+        final UUID mCharacteristicUUID;
+        long mTtl;
+        @Nullable
+        Entry mEntry;
+        private String mIdentifier;
+
+        Slot(UUID serviceUUID, UUID characteristicUUID) {
+            mServiceUUID = serviceUUID;
+            mCharacteristicUUID = characteristicUUID;
+        }
+
+        /**
+         * The key in the {@link Store}, see {@link MyoMsg#getIdentifier()}.
+         */
+        String getIdentifier() {
+            if (mIdentifier == null)
+                mIdentifier = MyoMsg.toIdentifier(mServiceUUID, mCharacteristicUUID, null);
+            return mIdentifier;
+        }
+    }
+
+    /**
+     * Slots by service UUID, then characteristic UUID.
+     */
+    private final Map<UUID, Map<UUID, Slot>> mSlots = new HashMap<>();
+    private final Slot mFirmware;
+    @Nullable
+    private final Store mStore;
+
+    /**
+     * @param store NULL to only keep entries in memory.
+     */
+    public ReadCache(@Nullable Store store) {
+        mStore = store;
+        setTtl(Control.MYOINFO, TTL_FOREVER);
+        setTtl(Control.FIRMWARE_VERSION, TTL_FOREVER);
+        setTtl(Device.MANUFACTURER_NAME, TTL_FOREVER);
+        setTtl(Generic.DEVICE_NAME, TTL_FOREVER);
+        setTtl(Battery.BATTERYLEVEL, TimeUnit.MINUTES.toMillis(1));
+        mFirmware = obtainSlot(Control.FIRMWARE_VERSION.getServiceUUID(), Control.FIRMWARE_VERSION.getCharacteristicUUID());
+        if (store != null) {
+            for (Map.Entry<String, String> stored : store.load().entrySet()) {
+                Entry entry = decode(stored.getValue());
+                Slot slot = entry != null ? parseIdentifier(stored.getKey()) : null;
+                if (slot != null)
+                    slot.mEntry = entry;
+            }
+        }
+    }
+
+    /**
+     * @param ttl time in milliseconds, {@link #TTL_FOREVER} or 0 to not cache this characteristic.
+     */
+    public synchronized void setTtl(MyoCharacteristic characteristic, long ttl) {
+        obtainSlot(characteristic.getServiceUUID(), characteristic.getCharacteristicUUID()).mTtl = ttl;
+    }
+
+    /**
+     * @return time in milliseconds, 0 if not cached.
+     */
+    public synchronized long getTtl(MyoCharacteristic characteristic) {
+        Slot slot = getSlot(characteristic.getServiceUUID(), characteristic.getCharacteristicUUID());
+        return slot != null ? slot.mTtl : 0;
+    }
+
+    /**
+     * @return a copy of the cached value, NULL if there is none or it's older than its time to live.
+     */
+    @Nullable
+    public synchronized byte[] get(MyoMsg msg) {
+        if (msg.getDescriptorUUID() != null)
+            return null;
+        Slot slot = getSlot(msg.getServiceUUID(), msg.getCharacteristicUUID());
+        if (slot == null || slot.mEntry == null || slot.mTtl == 0)
+            return null;
+        Entry entry = slot.mEntry;
+        if (slot.mTtl != TTL_FOREVER && System.currentTimeMillis() - entry.mStoredAt >= slot.mTtl)
+            return null;
+        return entry.mValue.clone();
+    }
+
+    /**
+     * Stores a value read from the device, if its characteristic has a time to live.
+     */
+    public synchronized void put(MyoMsg msg, byte[] value) {
+        if (msg.getDescriptorUUID() != null)
+            return;
+        Slot slot = getSlot(msg.getServiceUUID(), msg.getCharacteristicUUID());
+        if (slot != null)
+            put(slot, value);
+    }
+
+    /**
+     * Like {@link #put(MyoMsg, byte[])} for a slot looked up before.
+     */
+    synchronized void put(Slot slot, byte[] value) {
+        if (slot.mTtl == 0)
+            return;
+        if (slot == mFirmware && slot.mEntry != null && !Arrays.equals(slot.mEntry.mValue, value)) {
+            Logy.d(TAG, "Firmware changed, dropping cached values.");
+            clear();
+        }
+        slot.mEntry = new Entry(value.clone(), System.currentTimeMillis());
+        if (mStore != null)
+            mStore.save(slot.getIdentifier(), encode(slot.mEntry));
+    }
+
+    /**
+     * Drops the value of the characteristic this message targets, e.g. after writing it.
+     */
+    public synchronized void invalidate(MyoMsg msg) {
+        if (msg.getDescriptorUUID() != null)
+            return;
+        Slot slot = getSlot(msg.getServiceUUID(), msg.getCharacteristicUUID());
+        if (slot != null)
+            invalidate(slot);
+    }
+
+    /**
+     * Like {@link #invalidate(MyoMsg)} for a slot looked up before.
+     */
+    synchronized void invalidate(Slot slot) {
+        if (slot.mEntry == null)
+            return;
+        slot.mEntry = null;
+        if (mStore != null)
+            mStore.save(slot.getIdentifier(), null);
+    }
+
+    public synchronized boolean isEmpty() {
+        for (Map<UUID, Slot> slots : mSlots.values()) {
+            for (Slot slot : slots.values()) {
+                if (slot.mEntry != null)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void clear() {
+        for (Map<UUID, Slot> slots : mSlots.values()) {
+            for (Slot slot : slots.values())
+                slot.mEntry = null;
+        }
+        if (mStore != null)
+            mStore.clear();
+    }
+
+    /**
+     * The slot of the characteristic this message targets, created if it has none yet, so a later time to live applies to it.
+     * Lets callers look it up once instead of per {@link #put(MyoMsg, byte[])} or {@link #invalidate(MyoMsg)}, e.g. per handle.
+     *
+     * @return NULL for descriptors, they aren't cached.
+     */
+    @Nullable
+    synchronized Slot obtainSlot(MyoMsg msg) {
+        if (msg.getDescriptorUUID() != null)
+            return null;
+        return obtainSlot(msg.getServiceUUID(), msg.getCharacteristicUUID());
+    }
+
+    @Nullable
+    private Slot getSlot(UUID serviceUUID, UUID characteristicUUID) {
+        Map<UUID, Slot> slots = mSlots.get(serviceUUID);
+        return slots != null ? slots.get(characteristicUUID) : null;
+    }
+
+    private Slot obtainSlot(UUID serviceUUID, UUID characteristicUUID) {
+        Map<UUID, Slot> slots = mSlots.get(serviceUUID);
+        if (slots == null) {
+            slots = new HashMap<>();
+            mSlots.put(serviceUUID, slots);
+        }
+        Slot slot = slots.get(characteristicUUID);
+        if (slot == null) {
+            slot = new Slot(serviceUUID, characteristicUUID);
+            slots.put(characteristicUUID, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * @param identifier a key written by {@link #put(MyoMsg, byte[])}, see {@link MyoMsg#toIdentifier(UUID, UUID, UUID)}.
+     * @return the slot for this characteristic, NULL if the identifier is malformed.
+     */
+    @Nullable
+    private Slot parseIdentifier(String identifier) {
+        String[] uuids = identifier.split(":");
+        if (uuids.length != 2)
+            return null;
+        try {
+            return obtainSlot(UUID.fromString(uuids[0]), UUID.fromString(uuids[1]));
+        } catch (IllegalArgumentException e) {
+            Logy.w(TAG, "Dropping malformed key: " + identifier);
+            return null;
+        }
+    }
+
+    private static String encode(Entry entry) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(entry.mStoredAt).append(':');
+        for (byte b : entry.mValue)
+            builder.append(String.format("%02x", b));
+        return builder.toString();
+    }
+
+    @Nullable
+    private static Entry decode(String stored) {
+        int separator = stored.indexOf(':');
+        if (separator == -1 || (stored.length() - separator - 1) % 2 != 0)
+            return null;
+        try {
+            long storedAt = Long.parseLong(stored.substring(0, separator));
+            byte[] value = new byte[(stored.length() - separator - 1) / 2];
+            for (int i = 0; i < value.length; i++) {
+                int offset = separator + 1 + i * 2;
+                value[i] = (byte) Integer.parseInt(stored.substring(offset, offset + 2), 16);
+            }
+            return new Entry(value, storedAt);
+        } catch (NumberFormatException e) {
+            Logy.w(TAG, "Dropping malformed entry: " + stored);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import android.bluetooth.BluetoothGatt;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.tools.Logy;
+
+/**
+ * Decides if and when {@link BaseMyo} sends a failed message again, see {@link MyoMsg#setRetryCounter(int)}.
+ * <p>
+ * Retries wait an exponential backoff with jitter, half of the delay is random: {@code baseDelay * 2^attempt}, at most the max delay.
+ * All retries of a device draw from one budget that refills over time, so a flapping link can't cause a retry storm.
+ * Errors that a retry can't fix, e.g. {@link BluetoothGatt#GATT_READ_NOT_PERMITTED}, are not retried at all.
+ * <p>
+ * Thread-safe.
+ */
+public class RetryScheduler {
+    private static final String TAG = "MyoLib:RetryScheduler";
+    /**
+     * Status for operations without callback, see {@link BaseMyo#setTimeoutSendQueue(long)}, or lost with the connection.
+     */
+    public static final int STATUS_LOST = -1;
+    /**
+     * Status for operations the transport refused to start, e.g. because the bluetooth stack was still busy.
+     */
+    public static final int STATUS_BUSY = -2;
+
+    public enum ErrorClass {
+        /**
+         * e.g. {@link BluetoothGatt#GATT_FAILURE}, {@link BluetoothGatt#GATT_CONNECTION_CONGESTED}, a lost or a refused operation.
+         */
+        TRANSIENT,
+        /**
+         * Invalid or not permitted requests and missing authentication or encryption.
+         */
+        PERMANENT
+    }
+
+    private final Random mRandom = new Random();
+    /**
+     * Retries so far, by failed message.
+     */
+    private final Map<MyoMsg, Integer> mAttempts = new IdentityHashMap<>();
+    private long mBaseDelay = TimeUnit.MILLISECONDS.toNanos(50);
+    private long mMaxDelay = TimeUnit.SECONDS.toNanos(2);
+    private int mBudgetCapacity = 10;
+    private long mBudgetRefill = TimeUnit.MILLISECONDS.toNanos(500);
+    private double mBudget = mBudgetCapacity;
+    private long mBudgetUpdated = System.nanoTime();
+    private long mRetries;
+    private long mPermanentFailures;
+    private long mExhaustedFailures;
+    private long mBudgetFailures;
+
+    public static ErrorClass classify(int gattStatus) {
+        switch (gattStatus) {
+            case BluetoothGatt.GATT_READ_NOT_PERMITTED:
+            case BluetoothGatt.GATT_WRITE_NOT_PERMITTED:
+            case BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION:
+            case BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED:
+            case BluetoothGatt.GATT_INVALID_OFFSET:
+            case BluetoothGatt.GATT_INVALID_ATTRIBUTE_LENGTH:
+            case BluetoothGatt.GATT_INSUFFICIENT_ENCRYPTION:
+                return ErrorClass.PERMANENT;
+            default:
+                return ErrorClass.TRANSIENT;
+        }
+    }
+
+    /**
+     * @param baseDelay delay of the first retry in milliseconds, default 50ms.
+     * @param maxDelay  in milliseconds, default 2s.
+     */
+    public synchronized void setBackoff(long baseDelay, long maxDelay) {
+        mBaseDelay = TimeUnit.MILLISECONDS.toNanos(baseDelay);
+        mMaxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+    }
+
+    /**
+     * @param capacity retries that can happen in a burst, default 10.
+     * @param refill   milliseconds until one more retry is available, default 500ms.
+     */
+    public synchronized void setBudget(int capacity, long refill) {
+        mBudgetCapacity = capacity;
+        mBudgetRefill = TimeUnit.MILLISECONDS.toNanos(refill);
+        mBudget = Math.min(mBudget, capacity);
+    }
+
+    /**
+     * @return retries that are currently available.
+     */
+    public synchronized int getBudget() {
+        refillBudget(System.nanoTime());
+        return (int) mBudget;
+    }
+
+    /**
+     * @return number of scheduled retries.
+     */
+    public synchronized long getRetryCount() {
+        return mRetries;
+    }
+
+    /**
+     * @return number of messages that failed without retry due to a {@link ErrorClass#PERMANENT} error.
+     */
+    public synchronized long getPermanentFailureCount() {
+        return mPermanentFailures;
+    }
+
+    /**
+     * @return number of messages that failed after using up their {@link MyoMsg#getRetryCounter()}.
+     */
+    public synchronized long getExhaustedFailureCount() {
+        return mExhaustedFailures;
+    }
+
+    /**
+     * @return number of messages that failed because the budget was used up.
+     */
+    public synchronized long getBudgetFailureCount() {
+        return mBudgetFailures;
+    }
+
+    public synchronized void resetCounters() {
+        mRetries = 0;
+        mPermanentFailures = 0;
+        mExhaustedFailures = 0;
+        mBudgetFailures = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "retries=" + mRetries + ", permanent=" + mPermanentFailures + ", exhausted=" + mExhaustedFailures
+                + ", overBudget=" + mBudgetFailures + ", budget=" + getBudget();
+    }
+
+    /**
+     * Called by {@link BaseMyo} for a failed message, takes a retry from the budget.
+     *
+     * @param gattStatus or {@link #STATUS_LOST}.
+     * @return nanoseconds until the message should be sent again, -1 if it fails.
+     */
+    synchronized long schedule(MyoMsg msg, int gattStatus) {
+        if (classify(gattStatus) == ErrorClass.PERMANENT) {
+            mPermanentFailures++;
+            return -1;
+        }
+        if (msg.getRetryCounter() == 0) {
+            mExhaustedFailures++;
+            return -1;
+        }
+        refillBudget(System.nanoTime());
+        if (mBudget < 1) {
+            mBudgetFailures++;
+            Logy.w(TAG, "Retry budget used up: " + msg.getIdentifier());
+            return -1;
+        }
+        mBudget--;
+        mRetries++;
+        Integer attempts = mAttempts.get(msg);
+        final int attempt = attempts != null ? attempts : 0;
+        mAttempts.put(msg, attempt + 1);
+        final long delay = mBaseDelay < mMaxDelay >> Math.min(attempt, 62) ? mBaseDelay << attempt : mMaxDelay;
+        return delay / 2 + (long) (mRandom.nextDouble() * (delay / 2));
+    }
+
+    /**
+     * Called by {@link BaseMyo} once a message completed.
+     */
+    synchronized void forget(MyoMsg msg) {
+        mAttempts.remove(msg);
+    }
+
+    private void refillBudget(long now) {
+        if (mBudgetRefill <= 0) {
+            mBudget = mBudgetCapacity;
+        } else {
+            mBudget = Math.min(mBudgetCapacity, mBudget + (double) (now - mBudgetUpdated) / mBudgetRefill);
+        }
+        mBudgetUpdated = now;
+    }
+}
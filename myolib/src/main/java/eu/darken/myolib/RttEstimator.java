@@ -0,0 +1,68 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The send timeout of {@link BaseMyo}'s dispatcher, computed from observed round-trip times like TCP's retransmission timeout (RFC 6298).
+ * Smoothed RTT plus four times its variance, but at least a margin of a few connection intervals above the smoothed RTT.
+ * Each timeout doubles it until the next sample.
+ * <p>
+ * Not thread-safe, guarded by the dispatch lock of the Myo.
+ */
+class RttEstimator {
+    static final long MAX_TIMEOUT = TimeUnit.SECONDS.toNanos(4);
+    private static final int MAX_BACKOFF = 4;
+    private final long mInitialTimeout;
+    private final long mMargin;
+    private long mSmoothedRtt = -1;
+    private long mRttVariance;
+    private int mBackoff;
+
+    /**
+     * @param initialTimeout nanoseconds, until there is a sample.
+     * @param margin         nanoseconds, the minimal time above the smoothed RTT.
+     */
+    RttEstimator(long initialTimeout, long margin) {
+        mInitialTimeout = initialTimeout;
+        mMargin = margin;
+    }
+
+    /**
+     * @param rtt nanoseconds from sending an operation until its callback. Not of resent operations, their callback is ambiguous.
+     */
+    void onSample(long rtt) {
+        if (mSmoothedRtt == -1) {
+            mSmoothedRtt = rtt;
+            mRttVariance = rtt / 2;
+        } else {
+            mRttVariance = (3 * mRttVariance + Math.abs(mSmoothedRtt - rtt)) / 4;
+            mSmoothedRtt = (7 * mSmoothedRtt + rtt) / 8;
+        }
+        mBackoff = 0;
+    }
+
+    void onTimeout() {
+        if (mBackoff < MAX_BACKOFF)
+            mBackoff++;
+    }
+
+    /**
+     * @return nanoseconds, -1 if there is no sample yet.
+     */
+    long getSmoothedRtt() {
+        return mSmoothedRtt;
+    }
+
+    /**
+     * @return nanoseconds, at most {@link #MAX_TIMEOUT}.
+     */
+    long getTimeout() {
+        long timeout = mSmoothedRtt == -1 ? mInitialTimeout : mSmoothedRtt + Math.max(mMargin, 4 * mRttVariance);
+        return Math.min(timeout << mBackoff, MAX_TIMEOUT);
+    }
+}
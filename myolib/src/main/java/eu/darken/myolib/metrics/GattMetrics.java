@@ -0,0 +1,258 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.metrics;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.ReadMsg;
+
+/**
+ * Round-trip times and failure counts of the GATT operations of one {@link eu.darken.myolib.BaseMyo},
+ * per characteristic or descriptor. Always on, recording only touches a few atomic counters.
+ */
+public class GattMetrics {
+    private final ConcurrentHashMap<String, Target> mTargets = new ConcurrentHashMap<>();
+
+    /**
+     * Statistics of one characteristic or descriptor.
+     */
+    public static class Target {
+        private final UUID mServiceUUID;
+        private final UUID mCharacteristicUUID;
+        private final UUID mDescriptorUUID;
+        private final LatencyHistogram mReadRtt = new LatencyHistogram();
+        private final LatencyHistogram mWriteRtt = new LatencyHistogram();
+        private final AtomicLong mErrors = new AtomicLong();
+        private final AtomicLong mRetries = new AtomicLong();
+        private final AtomicLong mTimeouts = new AtomicLong();
+
+        Target(UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID) {
+            mServiceUUID = serviceUUID;
+            mCharacteristicUUID = characteristicUUID;
+            mDescriptorUUID = descriptorUUID;
+        }
+
+        public UUID getServiceUUID() {
+            return mServiceUUID;
+        }
+
+        public UUID getCharacteristicUUID() {
+            return mCharacteristicUUID;
+        }
+
+        /**
+         * @return NULL if this is a characteristic.
+         */
+        @Nullable
+        public UUID getDescriptorUUID() {
+            return mDescriptorUUID;
+        }
+
+        /**
+         * Time from sending a read until its callback, successful or not.
+         */
+        public LatencyHistogram getReadRtt() {
+            return mReadRtt;
+        }
+
+        /**
+         * See {@link #getReadRtt()}
+         */
+        public LatencyHistogram getWriteRtt() {
+            return mWriteRtt;
+        }
+
+        /**
+         * @return number of callbacks with a GATT status other than success.
+         */
+        public long getErrorCount() {
+            return mErrors.get();
+        }
+
+        /**
+         * @return number of times a failed message was submitted again.
+         */
+        public long getRetryCount() {
+            return mRetries.get();
+        }
+
+        /**
+         * @return number of operations without callback within {@link eu.darken.myolib.BaseMyo#getSendTimeout()}.
+         */
+        public long getTimeoutCount() {
+            return mTimeouts.get();
+        }
+
+        public Snapshot snapshot() {
+            return new Snapshot(this);
+        }
+
+        void reset() {
+            mReadRtt.reset();
+            mWriteRtt.reset();
+            mErrors.set(0);
+            mRetries.set(0);
+            mTimeouts.set(0);
+        }
+    }
+
+    /**
+     * Immutable state of a {@link Target}, e.g. for export.
+     */
+    public static class Snapshot {
+        private final UUID mServiceUUID;
+        private final UUID mCharacteristicUUID;
+        private final UUID mDescriptorUUID;
+        private final LatencyHistogram.Snapshot mReadRtt;
+        private final LatencyHistogram.Snapshot mWriteRtt;
+        private final long mErrors;
+        private final long mRetries;
+        private final long mTimeouts;
+
+        Snapshot(Target target) {
+            mServiceUUID = target.mServiceUUID;
+            mCharacteristicUUID = target.mCharacteristicUUID;
+            mDescriptorUUID = target.mDescriptorUUID;
+            mReadRtt = target.mReadRtt.snapshot();
+            mWriteRtt = target.mWriteRtt.snapshot();
+            mErrors = target.mErrors.get();
+            mRetries = target.mRetries.get();
+            mTimeouts = target.mTimeouts.get();
+        }
+
+        public UUID getServiceUUID() {
+            return mServiceUUID;
+        }
+
+        public UUID getCharacteristicUUID() {
+            return mCharacteristicUUID;
+        }
+
+        @Nullable
+        public UUID getDescriptorUUID() {
+            return mDescriptorUUID;
+        }
+
+        public LatencyHistogram.Snapshot getReadRtt() {
+            return mReadRtt;
+        }
+
+        public LatencyHistogram.Snapshot getWriteRtt() {
+            return mWriteRtt;
+        }
+
+        public long getErrorCount() {
+            return mErrors;
+        }
+
+        public long getRetryCount() {
+            return mRetries;
+        }
+
+        public long getTimeoutCount() {
+            return mTimeouts;
+        }
+
+        @Override
+        public String toString() {
+            return MyoMsg.toIdentifier(mServiceUUID, mCharacteristicUUID, mDescriptorUUID)
+                    + " | read: " + mReadRtt + " | write: " + mWriteRtt
+                    + " | errors=" + mErrors + ", retries=" + mRetries + ", timeouts=" + mTimeouts;
+        }
+    }
+
+    /**
+     * @return the statistics for the characteristic or descriptor this message targets, created on first use.
+     */
+    public Target getTarget(MyoMsg msg) {
+        String identifier = msg.getIdentifier();
+        Target target = mTargets.get(identifier);
+        if (target == null) {
+            mTargets.putIfAbsent(identifier, new Target(msg.getServiceUUID(), msg.getCharacteristicUUID(), msg.getDescriptorUUID()));
+            target = mTargets.get(identifier);
+        }
+        return target;
+    }
+
+    /**
+     * @return NULL if nothing was sent to this characteristic or descriptor yet.
+     */
+    @Nullable
+    public Target getTarget(UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID) {
+        return mTargets.get(MyoMsg.toIdentifier(serviceUUID, characteristicUUID, descriptorUUID));
+    }
+
+    /**
+     * Called by {@link eu.darken.myolib.BaseMyo} when an operation returned.
+     *
+     * @param rttNanos time since the message was sent.
+     */
+    public void onResult(MyoMsg msg, long rttNanos, boolean success) {
+        onResult(getTarget(msg), msg instanceof ReadMsg, rttNanos, success);
+    }
+
+    /**
+     * Like {@link #onResult(MyoMsg, long, boolean)} for a target looked up before, e.g. cached by handle.
+     */
+    public void onResult(Target target, boolean read, long rttNanos, boolean success) {
+        if (read)
+            target.mReadRtt.record(rttNanos);
+        else
+            target.mWriteRtt.record(rttNanos);
+        if (!success)
+            target.mErrors.incrementAndGet();
+    }
+
+    /**
+     * Called by {@link eu.darken.myolib.BaseMyo} when a failed message is submitted again.
+     */
+    public void onRetry(MyoMsg msg) {
+        onRetry(getTarget(msg));
+    }
+
+    /**
+     * Like {@link #onRetry(MyoMsg)} for a target looked up before.
+     */
+    public void onRetry(Target target) {
+        target.mRetries.incrementAndGet();
+    }
+
+    /**
+     * Called by {@link eu.darken.myolib.BaseMyo} when an operation got no callback in time.
+     */
+    public void onTimeout(MyoMsg msg) {
+        onTimeout(getTarget(msg));
+    }
+
+    /**
+     * Like {@link #onTimeout(MyoMsg)} for a target looked up before.
+     */
+    public void onTimeout(Target target) {
+        target.mTimeouts.incrementAndGet();
+    }
+
+    /**
+     * @return snapshots of all characteristics and descriptors that were used.
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Target target : mTargets.values())
+            snapshots.add(target.snapshot());
+        return snapshots;
+    }
+
+    public void reset() {
+        for (Target target : mTargets.values())
+            target.reset();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with fixed, log-linear buckets:
+ * each power of two is split into {@link #SUB_BUCKETS} buckets, so any value is off by at most 25%.
+ * <p>
+ * Recording is lock-free and doesn't allocate, it can be called from any thread.
+ */
+public class LatencyHistogram {
+    public static final int SUB_BUCKETS = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+    public static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * @param nanos negative values are counted as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        mBuckets.incrementAndGet(toBucket(nanos));
+        mCount.incrementAndGet();
+        mSum.addAndGet(nanos);
+        long max;
+        do {
+            max = mMax.get();
+        } while (nanos > max && !mMax.compareAndSet(max, nanos));
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            mBuckets.set(i, 0);
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Not atomic, values recorded concurrently may be partially included.
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        return new Snapshot(buckets, count, mSum.get(), mMax.get());
+    }
+
+    static int toBucket(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return smallest value in nanoseconds that falls into this bucket.
+     */
+    public static long getBucketLowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * @return largest value in nanoseconds that falls into this bucket.
+     */
+    public static long getBucketUpperBound(int bucket) {
+        if (bucket == BUCKET_COUNT - 1)
+            return Long.MAX_VALUE;
+        return getBucketLowerBound(bucket + 1) - 1;
+    }
+
+    /**
+     * Immutable state of a {@link LatencyHistogram}, e.g. for export.
+     */
+    public static class Snapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mSum;
+        private final long mMax;
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            mBuckets = buckets;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return mean in nanoseconds, 0 if empty.
+         */
+        public long getMean() {
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        /**
+         * @return maximum in nanoseconds, 0 if empty.
+         */
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * @param percentile e.g. 99.0
+         * @return upper bound of the bucket containing the percentile, at most {@link #getMax()}. 0 if empty.
+         */
+        public long getPercentile(double percentile) {
+            if (mCount == 0)
+                return 0;
+            long rank = (long) Math.ceil(percentile / 100.0 * mCount);
+            if (rank < 1)
+                rank = 1;
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank)
+                    return Math.min(getBucketUpperBound(i), mMax);
+            }
+            return mMax;
+        }
+
+        /**
+         * @return count of the bucket, see {@link #getBucketLowerBound(int)}.
+         */
+        public long getBucketCount(int bucket) {
+            return mBuckets[bucket];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%dus, p50=%dus, p90=%dus, p99=%dus, max=%dus",
+                    mCount, getMean() / 1000, getPercentile(50) / 1000, getPercentile(90) / 1000, getPercentile(99) / 1000, mMax / 1000);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue and timing statistics of one {@link eu.darken.myolib.processor.BaseProcessor}.
+ * Updated by the thread submitting packets and the thread processing them, readable from any thread.
+ */
+public class ProcessorMetrics {
+    private static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(1);
+    private final LatencyHistogram mServiceTime = new LatencyHistogram();
+    private final LatencyHistogram mDeliveryLatency = new LatencyHistogram();
+    private final AtomicLong mMaxQueueDepth = new AtomicLong();
+    private final AtomicLong mSubmitted = new AtomicLong();
+    private final AtomicLong mProcessed = new AtomicLong();
+    private volatile int mQueueDepth;
+    private volatile long mPacketsPerSecond;
+    // Only touched by the submitting thread.
+    private long mWindowStart = System.nanoTime();
+    private long mWindowCount;
+
+    /**
+     * Called after a packet was queued, from the submitting thread.
+     */
+    public void onSubmitted(int queueDepth) {
+        mQueueDepth = queueDepth;
+        if (queueDepth > mMaxQueueDepth.get())
+            mMaxQueueDepth.set(queueDepth);
+        mSubmitted.incrementAndGet();
+        mWindowCount++;
+        final long now = System.nanoTime();
+        if (now - mWindowStart >= RATE_WINDOW) {
+            mPacketsPerSecond = mWindowCount * RATE_WINDOW / (now - mWindowStart);
+            mWindowCount = 0;
+            mWindowStart = now;
+        }
+    }
+
+    /**
+     * Called after a packet was handed to the listeners, from the processing thread.
+     *
+     * @param serviceNanos    time spent decoding and in listeners.
+     * @param deliveryLatency time from the packet's arrival until the listeners returned.
+     * @param queueDepth      packets still waiting.
+     */
+    public void onProcessed(long serviceNanos, long deliveryLatency, int queueDepth) {
+        mQueueDepth = queueDepth;
+        mServiceTime.record(serviceNanos);
+        mDeliveryLatency.record(deliveryLatency);
+        mProcessed.incrementAndGet();
+    }
+
+    /**
+     * Packets waiting to be processed, as of the last submit or process.
+     */
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public long getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+    /**
+     * Packets submitted during the last full second.
+     */
+    public long getPacketsPerSecond() {
+        return mPacketsPerSecond;
+    }
+
+    public long getSubmittedCount() {
+        return mSubmitted.get();
+    }
+
+    public long getProcessedCount() {
+        return mProcessed.get();
+    }
+
+    /**
+     * Time {@link eu.darken.myolib.processor.BaseProcessor#doProcess(eu.darken.myolib.processor.BaseDataPacket)} took,
+     * i.e. decoding and all listeners. If this approaches the packet interval, the queue grows.
+     */
+    public LatencyHistogram getServiceTime() {
+        return mServiceTime;
+    }
+
+    /**
+     * Time from the packet's arrival at the Myo (its {@link eu.darken.myolib.processor.DataPacket#getTimeStampNanos()})
+     * until all listeners returned, includes waiting in the queue.
+     */
+    public LatencyHistogram getDeliveryLatency() {
+        return mDeliveryLatency;
+    }
+
+    /**
+     * Resets the histograms and the maximum queue depth.
+     */
+    public void reset() {
+        mServiceTime.reset();
+        mDeliveryLatency.reset();
+        mMaxQueueDepth.set(0);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Immutable state of {@link ProcessorMetrics}, e.g. for export.
+     */
+    public static class Snapshot {
+        private final int mQueueDepth;
+        private final long mMaxQueueDepth;
+        private final long mPacketsPerSecond;
+        private final long mSubmitted;
+        private final long mProcessed;
+        private final LatencyHistogram.Snapshot mServiceTime;
+        private final LatencyHistogram.Snapshot mDeliveryLatency;
+
+        Snapshot(ProcessorMetrics metrics) {
+            mQueueDepth = metrics.mQueueDepth;
+            mMaxQueueDepth = metrics.mMaxQueueDepth.get();
+            mPacketsPerSecond = metrics.mPacketsPerSecond;
+            mSubmitted = metrics.mSubmitted.get();
+            mProcessed = metrics.mProcessed.get();
+            mServiceTime = metrics.mServiceTime.snapshot();
+            mDeliveryLatency = metrics.mDeliveryLatency.snapshot();
+        }
+
+        public int getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        public long getMaxQueueDepth() {
+            return mMaxQueueDepth;
+        }
+
+        public long getPacketsPerSecond() {
+            return mPacketsPerSecond;
+        }
+
+        public long getSubmittedCount() {
+            return mSubmitted;
+        }
+
+        public long getProcessedCount() {
+            return mProcessed;
+        }
+
+        public LatencyHistogram.Snapshot getServiceTime() {
+            return mServiceTime;
+        }
+
+        public LatencyHistogram.Snapshot getDeliveryLatency() {
+            return mDeliveryLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "queue=" + mQueueDepth + " (max " + mMaxQueueDepth + "), " + mPacketsPerSecond + " packets/s"
+                    + " | service: " + mServiceTime + " | latency: " + mDeliveryLatency;
+        }
+    }
+}
@@ -32,6 +32,12 @@ public class MyoMsg {
     private int mRetryCounter = -1;
     private Integer mGattStatus = null;
     private State mState = State.NEW;
+    private long mSendTime;
+    private int mHandle = -1;
+    private int mHandleGeneration;
+    private long mTimeout;
+    private volatile long mDeadline;
+    private Priority mPriority = Priority.NORMAL;
 
     /**
      * Values reflecting state of this {@link MyoMsg}
@@ -52,6 +58,25 @@ public class MyoMsg {
         ERROR
     }
 
+    /**
+     * Lane of the dispatch queue, higher lanes are sent first, FIFO within a lane.
+     * A lower lane that was passed over repeatedly gets a turn, so it can't starve.
+     */
+    public enum Priority {
+        /**
+         * Latency-critical commands, e.g. vibrate or unlock as feedback to the user.
+         */
+        REALTIME,
+        /**
+         * Configuration, e.g. modes and notification setup.
+         */
+        NORMAL,
+        /**
+         * Reads that can wait, e.g. battery level or firmware.
+         */
+        BACKGROUND
+    }
+
     /**
      * See <br>
      * {@link eu.darken.myolib.services.Battery}<br>
@@ -128,6 +153,94 @@ public class MyoMsg {
         mGattStatus = gattStatus;
     }
 
+    /**
+     * When this message was last handed to the device.
+     *
+     * @return {@link System#nanoTime()} timestamp, 0 if not sent yet.
+     */
+    public long getSendTime() {
+        return mSendTime;
+    }
+
+    /**
+     * Set by {@link eu.darken.myolib.BaseMyo} each time this message is sent.
+     * Don't set this yourself.
+     */
+    public void setSendTime(long sendTime) {
+        mSendTime = sendTime;
+    }
+
+    /**
+     * The transport handle of the characteristic or descriptor this message targets,
+     * see {@link eu.darken.myolib.transport.MyoTransport#resolveHandle(UUID, UUID, UUID)}.
+     *
+     * @return -1 if not resolved yet.
+     */
+    public int getHandle() {
+        return mHandle;
+    }
+
+    /**
+     * @return the service discovery {@link #getHandle()} belongs to, it's only valid for that one.
+     */
+    public int getHandleGeneration() {
+        return mHandleGeneration;
+    }
+
+    /**
+     * Set by {@link eu.darken.myolib.BaseMyo} when it resolves the target of this message.
+     * Don't set this yourself.
+     */
+    public void setHandle(int handle, int generation) {
+        mHandle = handle;
+        mHandleGeneration = generation;
+    }
+
+    /**
+     * @return time in milliseconds, 0 for none (default).
+     */
+    public long getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * Fails this message with {@link State#ERROR} if it didn't complete within this time after {@link eu.darken.myolib.BaseMyo#submit(MyoMsg)},
+     * including retries. Set it before submitting.
+     *
+     * @param timeout time in milliseconds, 0 for none (default).
+     */
+    public void setTimeout(long timeout) {
+        mTimeout = timeout;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which this message fails, 0 for none.
+     */
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Set by {@link eu.darken.myolib.BaseMyo} on submit, see {@link #setTimeout(long)}.
+     * Use {@link eu.darken.myolib.BaseMyo#setDeadline(MyoMsg, long)} to change it later.
+     */
+    public void setDeadline(long deadline) {
+        mDeadline = deadline;
+    }
+
+    public Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Set it before submitting.
+     *
+     * @param priority default {@link Priority#NORMAL}
+     */
+    public void setPriority(Priority priority) {
+        mPriority = priority;
+    }
+
     public int decreaseRetryCounter() {
         if (mRetryCounter > 0)
             mRetryCounter--;
@@ -171,12 +284,15 @@ public class MyoMsg {
      *
      */
     public String getIdentifier() {
-        StringBuilder builder = new StringBuilder();
-        builder.append(mServiceUUID.toString());
-        builder.append(":").append(mCharacteristicUUID.toString());
-        if (mDescriptorUUID != null)
-            builder.append(":").append(mDescriptorUUID.toString());
-        return builder.toString();
+        return toIdentifier(mServiceUUID, mCharacteristicUUID, mDescriptorUUID);
+    }
+
+    /**
+     * @return true if both messages target the same characteristic or descriptor, like equal {@link #getIdentifier()}s.
+     */
+    public boolean hasSameTarget(MyoMsg other) {
+        return mCharacteristicUUID.equals(other.mCharacteristicUUID) && mServiceUUID.equals(other.mServiceUUID)
+                && (mDescriptorUUID == null ? other.mDescriptorUUID == null : mDescriptorUUID.equals(other.mDescriptorUUID));
     }
 
     @Override
@@ -189,20 +305,25 @@ public class MyoMsg {
      * Also see {@link #getIdentifier()}.
      */
     public static String toIdentifier(BluetoothGattCharacteristic characteristic) {
-        StringBuilder builder = new StringBuilder();
-        builder.append(characteristic.getService().getUuid().toString());
-        builder.append(":").append(characteristic.getUuid().toString());
-        return builder.toString();
+        return toIdentifier(characteristic.getService().getUuid(), characteristic.getUuid(), null);
     }
 
     /**
      * See {@link #toIdentifier(BluetoothGattCharacteristic)}
      */
     public static String toIdentifier(BluetoothGattDescriptor descriptor) {
+        return toIdentifier(descriptor.getCharacteristic().getService().getUuid(), descriptor.getCharacteristic().getUuid(), descriptor.getUuid());
+    }
+
+    /**
+     * See {@link #toIdentifier(BluetoothGattCharacteristic)}
+     */
+    public static String toIdentifier(UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID) {
         StringBuilder builder = new StringBuilder();
-        builder.append(descriptor.getCharacteristic().getService().getUuid().toString());
-        builder.append(":").append(descriptor.getCharacteristic().getUuid().toString());
-        builder.append(":").append(descriptor.getUuid().toString());
+        builder.append(serviceUUID.toString());
+        builder.append(":").append(characteristicUUID.toString());
+        if (descriptorUUID != null)
+            builder.append(":").append(descriptorUUID.toString());
         return builder.toString();
     }
 }
@@ -0,0 +1,22 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.msgs;
+
+/**
+ * A {@link MyoMsg} that ended with {@link MyoMsg.State#ERROR}, e.g. the cause of an {@link java.util.concurrent.ExecutionException}.
+ */
+public class MyoMsgException extends Exception {
+    private final MyoMsg mMsg;
+
+    public MyoMsgException(MyoMsg msg) {
+        super(msg.getGattStatus() != null ? "GATT status " + msg.getGattStatus() + ": " + msg.getIdentifier() : "Timed out or not sent: " + msg.getIdentifier());
+        mMsg = msg;
+    }
+
+    public MyoMsg getMsg() {
+        return mMsg;
+    }
+}
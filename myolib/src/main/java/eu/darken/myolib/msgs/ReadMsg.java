@@ -16,6 +16,7 @@ import eu.darken.myolib.services.MyoCharacteristic;
  */
 public class ReadMsg extends MyoMsg {
     private byte[] mValue;
+    private boolean mUseCache = true;
 
     public ReadMsg(MyoCharacteristic myoCharacteristic, Callback callback) {
         this(myoCharacteristic.getServiceUUID(), myoCharacteristic.getCharacteristicUUID(), callback);
@@ -45,6 +46,21 @@ public class ReadMsg extends MyoMsg {
         mValue = value;
     }
 
+    public boolean isUseCache() {
+        return mUseCache;
+    }
+
+    /**
+     * Whether a fresh value from {@link eu.darken.myolib.BaseMyo#getReadCache()} may answer this read without a GATT round-trip.
+     * The callback is then called right away, from {@link eu.darken.myolib.BaseMyo#submit(MyoMsg)}.
+     * Either way a successful read updates the cache.
+     *
+     * @param useCache default true, false to always read from the device.
+     */
+    public void setUseCache(boolean useCache) {
+        mUseCache = useCache;
+    }
+
     @Override
     public String toString() {
         return "ReadMsg\n" + "Value: " + Arrays.toString(mValue) + "\n" + super.toString();
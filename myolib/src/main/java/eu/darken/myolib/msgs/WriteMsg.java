@@ -6,6 +6,8 @@
 
 package eu.darken.myolib.msgs;
 
+import android.bluetooth.BluetoothGattCharacteristic;
+
 import java.util.Arrays;
 import java.util.UUID;
 
@@ -17,6 +19,7 @@ import eu.darken.myolib.services.MyoDescriptor;
  */
 public class WriteMsg extends MyoMsg {
     private final byte[] mData;
+    private int mWriteType = BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
 
     public WriteMsg(MyoCharacteristic characteristic, byte[] data, Callback callback) {
         this(characteristic.getServiceUUID(), characteristic.getCharacteristicUUID(), null, data, callback);
@@ -35,6 +38,21 @@ public class WriteMsg extends MyoMsg {
         return mData;
     }
 
+    public int getWriteType() {
+        return mWriteType;
+    }
+
+    /**
+     * Only used for characteristics.
+     * Without response the message succeeds once the write was buffered for sending, a failure on the device is not noticed.
+     * Use it for commands that don't hurt if lost, see {@link eu.darken.myolib.MyoCmds#isSafeWithoutResponse(byte[])}.
+     *
+     * @param writeType {@link BluetoothGattCharacteristic#WRITE_TYPE_DEFAULT} (default) or {@link BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE}
+     */
+    public void setWriteType(int writeType) {
+        mWriteType = writeType;
+    }
+
     @Override
     public String toString() {
         return "WriteMsg\n" + "Data: " + Arrays.toString(mData) + "\n" + super.toString();
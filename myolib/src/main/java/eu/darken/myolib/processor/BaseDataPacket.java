@@ -8,7 +8,10 @@ package eu.darken.myolib.processor;
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 import eu.darken.myolib.services.MyoCharacteristic;
@@ -18,21 +21,42 @@ import eu.darken.myolib.services.MyoService;
  * The base class for sensor data received from a Myo.
  * If you create a custom processor by implementing {@link Processor},
  * this is what you will get as data.
+ * <p>
+ * Device and characteristic are stored as interned ids (see {@link PacketRegistry}),
+ * the payload can be a slice of a larger array that is shared with other packets (see {@link PayloadSlab}).
+ * Use {@link #getDataArray()}, {@link #getDataOffset()} and {@link #getDataLength()} to read it without copying.
  */
 public class BaseDataPacket extends DataPacket {
-    private final UUID mServiceUUID;
-    private final UUID mCharacteristicUUID;
+    private final short mCharacteristicId;
     private final byte[] mData;
+    private final int mDataOffset;
+    private final int mDataLength;
 
     public BaseDataPacket(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
         this(gatt.getDevice().getAddress(), characteristic.getService().getUuid(), characteristic.getUuid(), characteristic.getValue());
     }
 
     public BaseDataPacket(String deviceAddress, UUID serviceUUID, UUID characteristicUUID, byte[] data) {
-        super(deviceAddress, System.currentTimeMillis());
-        mServiceUUID = serviceUUID;
-        mCharacteristicUUID = characteristicUUID;
+        this(PacketRegistry.internDevice(deviceAddress), PacketRegistry.internCharacteristic(serviceUUID, characteristicUUID),
+                SystemClock.elapsedRealtimeNanos(), data, 0, data != null ? data.length : 0);
+    }
+
+    /**
+     * The compact form, nothing is interned or copied here.
+     *
+     * @param deviceId         see {@link PacketRegistry#internDevice(String)}
+     * @param characteristicId see {@link PacketRegistry#internCharacteristic(UUID, UUID)}
+     * @param timeStampNanos   see {@link #getTimeStampNanos()}
+     * @param data             the array containing the payload, not copied.
+     * @param offset           where the payload starts within data
+     * @param length           length of the payload
+     */
+    public BaseDataPacket(int deviceId, int characteristicId, long timeStampNanos, @Nullable byte[] data, int offset, int length) {
+        super(deviceId, timeStampNanos);
+        mCharacteristicId = (short) characteristicId;
         mData = data;
+        mDataOffset = offset;
+        mDataLength = length;
     }
 
     /**
@@ -41,7 +65,7 @@ public class BaseDataPacket extends DataPacket {
      * @return A UUID corresponding to a {@link MyoService}
      */
     public UUID getServiceUUID() {
-        return mServiceUUID;
+        return PacketRegistry.getServiceUUID(getCharacteristicId());
     }
 
     /**
@@ -50,16 +74,46 @@ public class BaseDataPacket extends DataPacket {
      * @return A UUID corresponding to a {@link MyoCharacteristic}
      */
     public UUID getCharacteristicUUID() {
-        return mCharacteristicUUID;
+        return PacketRegistry.getCharacteristicUUID(getCharacteristicId());
+    }
+
+    /**
+     * Compact alternative to {@link #getCharacteristicUUID()} and {@link #getServiceUUID()}.
+     *
+     * @return the interned id of the characteristic, see {@link PacketRegistry#internCharacteristic(UUID, UUID)}
+     */
+    public int getCharacteristicId() {
+        return mCharacteristicId & 0xFFFF;
     }
 
     /**
      * The raw data that was delivered.
+     * If the payload is stored in a shared array, this returns a copy.
      *
      * @return A byte array that can be NULL.
      */
     public byte[] getData() {
+        if (mData == null || (mDataOffset == 0 && mDataLength == mData.length))
+            return mData;
+        return Arrays.copyOfRange(mData, mDataOffset, mDataOffset + mDataLength);
+    }
+
+    /**
+     * The array holding the payload, which may contain other data too.
+     * Read {@link #getDataLength()} bytes starting at {@link #getDataOffset()}, don't modify it.
+     *
+     * @return A byte array that can be NULL.
+     */
+    public byte[] getDataArray() {
         return mData;
     }
 
+    public int getDataOffset() {
+        return mDataOffset;
+    }
+
+    public int getDataLength() {
+        return mDataLength;
+    }
+
 }
@@ -5,26 +5,70 @@
  */
 package eu.darken.myolib.processor;
 
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.darken.myolib.metrics.ProcessorMetrics;
+import eu.darken.myolib.tools.Logy;
+import eu.darken.myolib.tools.SpscRingBuffer;
+import eu.darken.myolib.tools.WorkerPool;
 
 /**
  * A convenience class for creating {@link Processor} compliant classes.
- * It takes packets submitted via {@link #submit(BaseDataPacket)} and processes them sequentially on a worker thread.
+ * It takes packets submitted via {@link #submit(BaseDataPacket)} and processes them sequentially,
+ * as tasks on {@link WorkerPool#getShared()} or, see {@link #setWorkerPool(WorkerPool, WorkerPool.Priority)}, another pool or its own worker thread.
  * To create a custom Processor you can extend this and just do your processing in {@link #doProcess(BaseDataPacket)}.
  */
 public abstract class BaseProcessor implements Processor {
+    private static final String TAG = "MyoLib:BaseProcessor";
+    /**
+     * Enough for a few seconds of EMG data (4 characteristics at 50 packets/s each).
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    /**
+     * Packets processed per task on a {@link WorkerPool} before giving other tasks a turn.
+     */
+    private static final int DRAIN_BATCH = 64;
     private final List<UUID> mSubscriptions = new ArrayList<>();
     private final List<DataListener> mDataListeners = new ArrayList<>();
-    private final LinkedBlockingQueue<BaseDataPacket> mQueue = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<UUID, AtomicLong> mDropCounters = new ConcurrentHashMap<>();
+    private final AtomicLong mDropCounter = new AtomicLong();
+    private final SpscRingBuffer.DropListener<BaseDataPacket> mDropListener = new SpscRingBuffer.DropListener<BaseDataPacket>() {
+        @Override
+        public void onDropped(BaseDataPacket packet) {
+            mDropCounter.incrementAndGet();
+            AtomicLong counter = mDropCounters.get(packet.getCharacteristicUUID());
+            if (counter == null) {
+                mDropCounters.putIfAbsent(packet.getCharacteristicUUID(), new AtomicLong());
+                counter = mDropCounters.get(packet.getCharacteristicUUID());
+            }
+            counter.incrementAndGet();
+            if (Logy.isLoggable(Logy.VERBOSE))
+                Logy.v(TAG, "Queue full, dropped packet from " + packet.getDeviceAddress());
+        }
+    };
+    private SpscRingBuffer<BaseDataPacket> mQueue = new SpscRingBuffer<>(DEFAULT_QUEUE_CAPACITY, SpscRingBuffer.WaitStrategy.PARK, SpscRingBuffer.OverflowPolicy.DROP_NEWEST, mDropListener);
+    private final Object mLifecycleLock = new Object();
     private Thread mProcessor;
-    private long mPacketCounter;
-    private long mPacketCounterTimeStamp;
-    private long mPacketThroughput;
+    private WorkerPool mWorkerPool;
+    private WorkerPool.Priority mPriority = WorkerPool.Priority.NORMAL;
+    private WorkerPool.Timer mTimeoutTimer;
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean(false);
+    private volatile boolean mTimeoutPending = false;
+    private final ProcessorMetrics mMetrics = new ProcessorMetrics();
 
     public BaseProcessor() {
+        mWorkerPool = WorkerPool.getShared();
+        mTimeoutTimer = mWorkerPool.newTimer(mTimeoutTask, mPriority);
     }
 
     @Override
@@ -32,33 +76,173 @@ public abstract class BaseProcessor implements Processor {
         return mSubscriptions;
     }
 
+    /**
+     * See {@link #setQueueConfig(int, SpscRingBuffer.WaitStrategy, SpscRingBuffer.OverflowPolicy)}, keeps the current overflow policy.
+     */
+    public void setQueueConfig(int capacity, SpscRingBuffer.WaitStrategy waitStrategy) {
+        setQueueConfig(capacity, waitStrategy, mQueue.getOverflowPolicy());
+    }
+
+    /**
+     * Replaces the packet queue, only possible while this processor is not added to a Myo.
+     *
+     * @param capacity       maximum number of queued packets, rounded up to the next power of two.
+     * @param waitStrategy   how a dedicated worker thread waits for new packets, default is {@link SpscRingBuffer.WaitStrategy#PARK}.
+     *                       Has no effect on a {@link WorkerPool}, see {@link #setWorkerPool(WorkerPool, WorkerPool.Priority)}.
+     * @param overflowPolicy what to do if the queue is full, default is {@link SpscRingBuffer.OverflowPolicy#DROP_NEWEST}.
+     *                       {@link SpscRingBuffer.OverflowPolicy#BLOCK} stalls the bluetooth callback thread of the Myo.
+     */
+    public void setQueueConfig(int capacity, SpscRingBuffer.WaitStrategy waitStrategy, SpscRingBuffer.OverflowPolicy overflowPolicy) {
+        if (mRunning)
+            throw new IllegalStateException("Can't change the queue while the processor is running.");
+        mQueue = new SpscRingBuffer<>(capacity, waitStrategy, overflowPolicy, mDropListener);
+    }
+
+    /**
+     * Sets the pool packets are processed on as tasks, only possible while this processor is not added to a Myo.
+     * Packets are processed sequentially either way.
+     *
+     * @param workerPool {@link WorkerPool#getShared()} by default, NULL for a dedicated thread that waits according to the {@link SpscRingBuffer.WaitStrategy}.
+     * @param priority   lane for this processor's tasks.
+     */
+    public void setWorkerPool(@Nullable WorkerPool workerPool, WorkerPool.Priority priority) {
+        if (mRunning)
+            throw new IllegalStateException("Can't change the worker pool while the processor is running.");
+        mWorkerPool = workerPool;
+        mPriority = priority;
+        mTimeoutTimer = workerPool != null ? workerPool.newTimer(mTimeoutTask, priority) : null;
+    }
+
+    @Nullable
+    public WorkerPool getWorkerPool() {
+        return mWorkerPool;
+    }
+
+    public WorkerPool.Priority getPriority() {
+        return mPriority;
+    }
+
+    public int getQueueCapacity() {
+        return mQueue.getCapacity();
+    }
+
+    public SpscRingBuffer.WaitStrategy getWaitStrategy() {
+        return mQueue.getWaitStrategy();
+    }
+
+    public SpscRingBuffer.OverflowPolicy getOverflowPolicy() {
+        return mQueue.getOverflowPolicy();
+    }
+
+    /**
+     * @return number of packets discarded due to the {@link #getOverflowPolicy()} since this processor was created.
+     */
+    public long getDroppedPacketCount() {
+        return mDropCounter.get();
+    }
+
+    /**
+     * @param characteristicUUID a UUID from {@link #getSubscriptions()}
+     * @return number of packets from this characteristic that were discarded.
+     */
+    public long getDroppedPacketCount(UUID characteristicUUID) {
+        AtomicLong counter = mDropCounters.get(characteristicUUID);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * @return a snapshot of discarded packets per characteristic UUID, only contains characteristics that had drops.
+     */
+    public Map<UUID, Long> getDroppedPacketCounts() {
+        Map<UUID, Long> snapshot = new HashMap<>();
+        for (Map.Entry<UUID, AtomicLong> entry : mDropCounters.entrySet())
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        return snapshot;
+    }
+
+    /**
+     * Hands the packet to the worker thread or pool without allocating.
+     * Has to be called from a single thread at a time, which is the case for packets routed by {@link eu.darken.myolib.BaseMyo},
+     * as a processor can only be added to one Myo at a time.
+     */
     @Override
     public void submit(BaseDataPacket packet) {
-        mQueue.add(packet);
-        mPacketCounter++;
-        if (System.currentTimeMillis() - mPacketCounterTimeStamp > 1000) {
-            mPacketThroughput = mPacketCounter;
-            mPacketCounter = 0;
-            mPacketCounterTimeStamp = System.currentTimeMillis();
-//            Logy.v("BaseProcessor:" + packet.getDeviceAddress(), "throughput: " + mPacketThroughput + " packets/s");
-        }
+        mQueue.offer(packet);
+        mMetrics.onSubmitted(mQueue.size());
+        if (mWorkerPool != null)
+            scheduleDrain();
     }
 
+    /**
+     * @return packets submitted during the last full second, see {@link #getMetrics()}.
+     */
     public long getPacketCounter() {
-        return mPacketThroughput;
+        return mMetrics.getPacketsPerSecond();
     }
 
+    /**
+     * Queue depth, throughput, service time and delivery latency of this processor.
+     */
+    public ProcessorMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Starts the worker. The queue has a single producer, so a processor can only be added to one Myo at a time.
+     * If it was removed before, this waits for the previous worker thread to finish its current packet.
+     *
+     * @throws IllegalStateException if it is already added.
+     */
     @Override
     public void onAdded() {
-        mProcessor = new Thread(mLoop);
-        mRunning = true;
-        mProcessor.start();
+        synchronized (mLifecycleLock) {
+            if (mRunning)
+                throw new IllegalStateException("Processor is already added to a Myo.");
+            joinProcessor();
+            mQueue.open();
+            mRunning = true;
+            if (mWorkerPool != null) {
+                scheduleDrain();
+            } else {
+                mProcessor = new Thread(mLoop);
+                mProcessor.start();
+            }
+        }
     }
 
     @Override
     public void onRemoved() {
-        mRunning = false;
-        mProcessor.interrupt();
+        synchronized (mLifecycleLock) {
+            if (!mRunning)
+                return;
+            mRunning = false;
+            mQueue.close();
+            if (mWorkerPool != null) {
+                mTimeoutTimer.cancel();
+            } else {
+                mProcessor.interrupt();
+            }
+        }
+    }
+
+    /**
+     * An old worker thread that is still running would consume packets alongside the new one.
+     */
+    private void joinProcessor() {
+        Thread previous = mProcessor;
+        if (previous == null)
+            return;
+        boolean interrupted = false;
+        while (previous.isAlive()) {
+            try {
+                previous.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        mProcessor = null;
     }
 
     private volatile boolean mRunning = false;
@@ -69,17 +253,90 @@ public abstract class BaseProcessor implements Processor {
             while (mRunning) {
                 BaseDataPacket packet;
                 try {
-                    packet = mQueue.take();
+                    long timeout = getTimeoutNanos();
+                    packet = timeout < 0 ? mQueue.take() : mQueue.take(timeout);
                 } catch (InterruptedException e) {
                     continue;
                 }
-                doProcess(packet);
+                if (packet != null)
+                    process(packet);
+                else if (mRunning)
+                    onTimeout();
             }
         }
     };
 
+    /**
+     * At most one drain task is queued or running at a time, so packets are still consumed by one thread at a time.
+     */
+    private void scheduleDrain() {
+        if (mDrainScheduled.compareAndSet(false, true))
+            mWorkerPool.execute(mDrainTask, mPriority);
+    }
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            int processed = 0;
+            BaseDataPacket packet;
+            while (mRunning && processed < DRAIN_BATCH && (packet = mQueue.poll()) != null) {
+                process(packet);
+                processed++;
+            }
+            if (mRunning && processed == 0 && mTimeoutPending)
+                onTimeout();
+            mTimeoutPending = false;
+            mDrainScheduled.set(false);
+            if (!mRunning)
+                return;
+            if (!mQueue.isEmpty())
+                scheduleDrain();
+            long timeout = getTimeoutNanos();
+            if (timeout < 0)
+                mTimeoutTimer.cancel();
+            else
+                mTimeoutTimer.schedule(timeout);
+        }
+    };
+
+    /**
+     * {@link #onTimeout()} has to run on the drain task, the timer only requests it.
+     */
+    private final Runnable mTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            mTimeoutPending = true;
+            if (mRunning)
+                scheduleDrain();
+        }
+    };
+
+    private void process(BaseDataPacket packet) {
+        final long start = System.nanoTime();
+        doProcess(packet);
+        final long serviceTime = System.nanoTime() - start;
+        mMetrics.onProcessed(serviceTime, SystemClock.elapsedRealtimeNanos() - packet.getTimeStampNanos(), mQueue.size());
+    }
+
     protected abstract void doProcess(BaseDataPacket packet);
 
+    /**
+     * Lets the worker wake up without a new packet, e.g. to flush buffered data.
+     * Queried before each wait.
+     *
+     * @return nanoseconds until {@link #onTimeout()} should be called if no packet arrives, -1 to wait indefinitely.
+     */
+    protected long getTimeoutNanos() {
+        return -1;
+    }
+
+    /**
+     * Called on the worker if no packet arrived within {@link #getTimeoutNanos()}.
+     */
+    protected void onTimeout() {
+
+    }
+
     public List<? extends DataListener> getDataListeners() {
         return mDataListeners;
     }
@@ -2,23 +2,38 @@ package eu.darken.myolib.processor;
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.SystemClock;
 
 /**
  * Created by darken on 31.07.2015.
  */
 public abstract class DataPacket {
+    /**
+     * Wall-clock time and {@link SystemClock#elapsedRealtimeNanos()} at the same moment,
+     * used to convert between the stored nanosecond timestamp and {@link #getTimeStamp()}.
+     */
+    private static final long BASE_MILLIS = System.currentTimeMillis();
+    private static final long BASE_NANOS = SystemClock.elapsedRealtimeNanos();
 
-    private final long mTimeStamp;
-    private final String mDeviceAddress;
+    private final long mTimeStampNanos;
+    private final short mDeviceId;
 
     protected DataPacket(DataPacket packet) {
-        mDeviceAddress = packet.getDeviceAddress();
-        mTimeStamp = packet.getTimeStamp();
+        mDeviceId = packet.mDeviceId;
+        mTimeStampNanos = packet.mTimeStampNanos;
     }
 
     protected DataPacket(String deviceAddress, long timeStamp) {
-        mDeviceAddress = deviceAddress;
-        mTimeStamp = timeStamp;
+        this(PacketRegistry.internDevice(deviceAddress), BASE_NANOS + (timeStamp - BASE_MILLIS) * 1000 * 1000);
+    }
+
+    /**
+     * @param deviceId       see {@link PacketRegistry#internDevice(String)}
+     * @param timeStampNanos see {@link #getTimeStampNanos()}
+     */
+    protected DataPacket(int deviceId, long timeStampNanos) {
+        mDeviceId = (short) deviceId;
+        mTimeStampNanos = timeStampNanos;
     }
 
     /**
@@ -27,16 +42,35 @@ public abstract class DataPacket {
      * @return The hex bluetooth address of a Myo.
      */
     public String getDeviceAddress() {
-        return mDeviceAddress;
+        return PacketRegistry.getDeviceAddress(mDeviceId);
+    }
+
+    /**
+     * Compact alternative to {@link #getDeviceAddress()}.
+     *
+     * @return the interned id of the device, see {@link PacketRegistry#internDevice(String)}
+     */
+    public int getDeviceId() {
+        return mDeviceId;
     }
 
     /**
      * A timestamp set when this class was created, which is shortly after {@link android.bluetooth.BluetoothGattCallback#onCharacteristicChanged(BluetoothGatt, BluetoothGattCharacteristic)} is triggered.
-     * {@link System#currentTimeMillis()} is used.
+     * Derived from {@link #getTimeStampNanos()}, so it is on the {@link System#currentTimeMillis()} scale,
+     * but doesn't follow changes to the wall-clock made while the app is running.
      *
      * @return timestamp in milliseconds
      */
     public long getTimeStamp() {
-        return mTimeStamp;
+        return BASE_MILLIS + (mTimeStampNanos - BASE_NANOS) / (1000 * 1000);
+    }
+
+    /**
+     * Same moment as {@link #getTimeStamp()} with full precision.
+     *
+     * @return timestamp in nanoseconds on the {@link SystemClock#elapsedRealtimeNanos()} scale.
+     */
+    public long getTimeStampNanos() {
+        return mTimeStampNanos;
     }
 }
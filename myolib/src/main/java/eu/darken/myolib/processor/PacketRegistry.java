@@ -0,0 +1,162 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Interns device addresses and characteristics into small integer ids, so that {@link BaseDataPacket}s don't have to carry
+ * strings and UUIDs around. Ids are never released, which is fine for the handful of devices and characteristics an app sees.
+ * <p>
+ * Lookups by id don't lock, registering a new id is copy-on-write.
+ */
+public class PacketRegistry {
+    /**
+     * Largest device id, ids are stored as short.
+     */
+    public static final int MAX_DEVICE_ID = Short.MAX_VALUE;
+    private static final Object sLock = new Object();
+    private static final Map<String, Integer> sDeviceIds = new HashMap<>();
+    private static volatile String[] sDeviceAddresses = new String[0];
+    /**
+     * 256 chunks of 256 entries, indexed by the 16-bit characteristic id. Chunks are only allocated when used.
+     */
+    private static volatile Characteristic[][] sCharacteristics = new Characteristic[256][];
+    /**
+     * Characteristics whose embedded id was already taken, mapped to the id they got instead.
+     */
+    private static volatile Map<UUID, Integer> sRelocatedIds = new HashMap<>();
+
+    private static class Characteristic {
+        final UUID mServiceUUID;
+        final UUID mCharacteristicUUID;
+
+        Characteristic(UUID serviceUUID, UUID characteristicUUID) {
+            mServiceUUID = serviceUUID;
+            mCharacteristicUUID = characteristicUUID;
+        }
+
+        boolean matches(UUID serviceUUID, UUID characteristicUUID) {
+            return mCharacteristicUUID.equals(characteristicUUID) && mServiceUUID.equals(serviceUUID);
+        }
+    }
+
+    private PacketRegistry() {
+    }
+
+    /**
+     * @param deviceAddress the bluetooth address, NULL is treated like any other address.
+     * @return the id for this address, the same address always yields the same id.
+     * @throws IllegalStateException if more than {@link #MAX_DEVICE_ID} addresses were interned.
+     */
+    public static int internDevice(String deviceAddress) {
+        synchronized (sLock) {
+            Integer id = sDeviceIds.get(deviceAddress);
+            if (id != null)
+                return id;
+            String[] addresses = sDeviceAddresses;
+            if (addresses.length > MAX_DEVICE_ID)
+                throw new IllegalStateException("Too many devices: " + addresses.length);
+            String[] grown = new String[addresses.length + 1];
+            System.arraycopy(addresses, 0, grown, 0, addresses.length);
+            grown[addresses.length] = deviceAddress;
+            sDeviceIds.put(deviceAddress, addresses.length);
+            sDeviceAddresses = grown;
+            return addresses.length;
+        }
+    }
+
+    /**
+     * @param deviceId an id obtained from {@link #internDevice(String)}
+     */
+    public static String getDeviceAddress(int deviceId) {
+        return sDeviceAddresses[deviceId];
+    }
+
+    /**
+     * The id is the 16-bit characteristic id embedded in the UUID (see {@link RoutingTable#toCharacteristicId(UUID)}),
+     * e.g. 0x0105 for EMG data 0. Only if that id is already taken by a different characteristic, another free id is assigned.
+     *
+     * @return the id for this service/characteristic combination, the same combination always yields the same id.
+     * @throws IllegalStateException if all 65536 ids are taken.
+     */
+    public static int internCharacteristic(UUID serviceUUID, UUID characteristicUUID) {
+        int id = RoutingTable.toCharacteristicId(characteristicUUID);
+        Characteristic[] chunk = sCharacteristics[id >>> 8];
+        if (chunk != null) {
+            Characteristic characteristic = chunk[id & 0xFF];
+            if (characteristic != null && characteristic.matches(serviceUUID, characteristicUUID))
+                return id;
+        }
+        Integer relocated = sRelocatedIds.get(characteristicUUID);
+        if (relocated != null && getCharacteristic(relocated).matches(serviceUUID, characteristicUUID))
+            return relocated;
+        synchronized (sLock) {
+            Characteristic[][] table = sCharacteristics;
+            int free = -1;
+            for (int i = 0; i <= 0xFFFF; i++) {
+                // Start at the embedded id and wrap around.
+                int candidate = (id + i) & 0xFFFF;
+                Characteristic[] candidateChunk = table[candidate >>> 8];
+                Characteristic existing = candidateChunk != null ? candidateChunk[candidate & 0xFF] : null;
+                if (existing == null) {
+                    if (free == -1)
+                        free = candidate;
+                    // Collisions are rare, only keep scanning if the embedded id itself was taken.
+                    if (candidate == id)
+                        break;
+                } else if (existing.matches(serviceUUID, characteristicUUID)) {
+                    relocate(characteristicUUID, candidate);
+                    return candidate;
+                }
+            }
+            if (free == -1)
+                throw new IllegalStateException("No characteristic ids left.");
+            Characteristic[][] grown = table.clone();
+            Characteristic[] freeChunk = grown[free >>> 8];
+            grown[free >>> 8] = freeChunk != null ? freeChunk.clone() : new Characteristic[256];
+            grown[free >>> 8][free & 0xFF] = new Characteristic(serviceUUID, characteristicUUID);
+            sCharacteristics = grown;
+            relocate(characteristicUUID, free);
+            return free;
+        }
+    }
+
+    /**
+     * Remembers where a displaced characteristic ended up, so that later lookups don't have to scan. Call with sLock held.
+     */
+    private static void relocate(UUID characteristicUUID, int id) {
+        if (id == RoutingTable.toCharacteristicId(characteristicUUID))
+            return;
+        Map<UUID, Integer> relocated = new HashMap<>(sRelocatedIds);
+        relocated.put(characteristicUUID, id);
+        sRelocatedIds = relocated;
+    }
+
+    /**
+     * @param characteristicId an id obtained from {@link #internCharacteristic(UUID, UUID)}
+     */
+    public static UUID getServiceUUID(int characteristicId) {
+        return getCharacteristic(characteristicId).mServiceUUID;
+    }
+
+    /**
+     * @param characteristicId an id obtained from {@link #internCharacteristic(UUID, UUID)}
+     */
+    public static UUID getCharacteristicUUID(int characteristicId) {
+        return getCharacteristic(characteristicId).mCharacteristicUUID;
+    }
+
+    private static Characteristic getCharacteristic(int characteristicId) {
+        Characteristic[] chunk = sCharacteristics[(characteristicId >>> 8) & 0xFF];
+        Characteristic characteristic = chunk != null ? chunk[characteristicId & 0xFF] : null;
+        if (characteristic == null)
+            throw new IllegalArgumentException("Unknown characteristic id: " + characteristicId);
+        return characteristic;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Copies packet payloads into shared chunks instead of keeping one array per packet.
+ * This saves the per-array overhead for packets that are kept around, e.g. when recording.
+ * <p>
+ * A chunk stays in memory as long as any packet stored in it is referenced,
+ * so pick a chunk size that is small compared to what you retain.
+ */
+public class PayloadSlab {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+    private final int mChunkSize;
+    private byte[] mChunk;
+    private int mPosition;
+
+    public PayloadSlab() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize size of the shared arrays in bytes, larger payloads keep their own array.
+     */
+    public PayloadSlab(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        mChunkSize = chunkSize;
+        mChunk = new byte[chunkSize];
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    /**
+     * Creates a packet whose payload is a copy of data within the current chunk.
+     *
+     * @param data can be NULL
+     */
+    public synchronized BaseDataPacket pack(int deviceId, int characteristicId, long timeStampNanos, @Nullable byte[] data) {
+        if (data == null || data.length > mChunkSize)
+            return new BaseDataPacket(deviceId, characteristicId, timeStampNanos, data, 0, data != null ? data.length : 0);
+        if (mPosition + data.length > mChunkSize) {
+            mChunk = new byte[mChunkSize];
+            mPosition = 0;
+        }
+        System.arraycopy(data, 0, mChunk, mPosition, data.length);
+        BaseDataPacket packet = new BaseDataPacket(deviceId, characteristicId, timeStampNanos, mChunk, mPosition, data.length);
+        mPosition += data.length;
+        return packet;
+    }
+}
@@ -23,7 +23,7 @@ public interface Processor {
      * will {@link #submit(BaseDataPacket)}, if this list contains the UUID of the characteristic delivered by
      * {@link android.bluetooth.BluetoothGattCallback#onCharacteristicChanged(BluetoothGatt, BluetoothGattCharacteristic)}.
      * <br>
-     * Don't modify this list live or {@link eu.darken.myolib.BaseMyo} might throw a {@link java.util.ConcurrentModificationException}.
+     * The list is read once when the processor is added, later changes have no effect until it is re-added.
      *
      * @return A list of unique characteristic UUIDs from {@link MyoCharacteristic#getCharacteristicUUID()}
      */
@@ -0,0 +1,134 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable mapping of characteristic UUIDs to subscribed {@link Processor}s.
+ * Changes create a new table (copy-on-write), so lookups need no locking and are safe while the table is being reconfigured.
+ * <p>
+ * Lookups don't hash the UUID, routes are indexed by the 16-bit characteristic id (e.g. 0x0105 for EMG data 0)
+ * that is embedded in the Myo and the bluetooth base UUIDs.
+ */
+public class RoutingTable {
+    public static final RoutingTable EMPTY = new RoutingTable(new Route[0]);
+    private static final Processor[] NO_PROCESSORS = new Processor[0];
+    private final Route[] mRoutes;
+    private final Route[] mSlots = new Route[256];
+    private final Route[] mOverflow;
+
+    private static class Route {
+        final UUID mCharacteristicUUID;
+        final Processor[] mProcessors;
+
+        Route(UUID characteristicUUID, Processor[] processors) {
+            mCharacteristicUUID = characteristicUUID;
+            mProcessors = processors;
+        }
+    }
+
+    private RoutingTable(Route[] routes) {
+        mRoutes = routes;
+        List<Route> overflow = new ArrayList<>();
+        for (Route route : routes) {
+            int slot = toSlot(toCharacteristicId(route.mCharacteristicUUID));
+            if (mSlots[slot] == null)
+                mSlots[slot] = route;
+            else
+                overflow.add(route);
+        }
+        mOverflow = overflow.toArray(new Route[overflow.size()]);
+    }
+
+    /**
+     * @return the 16-bit id, e.g. 0x0105 for d5060105-a904-deb9-4748-2c7f4a124842 or 0x2A19 for 00002a19-0000-1000-8000-00805f9b34fb
+     */
+    public static int toCharacteristicId(UUID uuid) {
+        return (int) (uuid.getMostSignificantBits() >>> 32) & 0xFFFF;
+    }
+
+    /**
+     * Myo ids have the characteristic in the high byte and the service in the low byte, both are small numbers.
+     */
+    private static int toSlot(int characteristicId) {
+        return ((characteristicId >>> 4) & 0xF0) | (characteristicId & 0x0F);
+    }
+
+    /**
+     * @param characteristicUUID the characteristic that delivered data.
+     * @return the subscribed processors, don't modify this array. Empty if there are none.
+     */
+    public Processor[] getSubscribers(UUID characteristicUUID) {
+        Route route = mSlots[toSlot(toCharacteristicId(characteristicUUID))];
+        if (route != null && route.mCharacteristicUUID.equals(characteristicUUID))
+            return route.mProcessors;
+        for (Route overflow : mOverflow) {
+            if (overflow.mCharacteristicUUID.equals(characteristicUUID))
+                return overflow.mProcessors;
+        }
+        return NO_PROCESSORS;
+    }
+
+    /**
+     * @return a new table that additionally routes all of {@link Processor#getSubscriptions()} to the processor.
+     */
+    public RoutingTable with(Processor processor) {
+        List<Route> routes = new ArrayList<>();
+        List<UUID> pending = new ArrayList<>(processor.getSubscriptions());
+        for (Route route : mRoutes) {
+            if (pending.remove(route.mCharacteristicUUID) && !contains(route.mProcessors, processor)) {
+                Processor[] processors = new Processor[route.mProcessors.length + 1];
+                System.arraycopy(route.mProcessors, 0, processors, 0, route.mProcessors.length);
+                processors[route.mProcessors.length] = processor;
+                routes.add(new Route(route.mCharacteristicUUID, processors));
+            } else {
+                routes.add(route);
+            }
+        }
+        for (UUID characteristicUUID : pending) {
+            boolean duplicate = false;
+            for (Route route : routes)
+                duplicate |= route.mCharacteristicUUID.equals(characteristicUUID);
+            if (!duplicate)
+                routes.add(new Route(characteristicUUID, new Processor[]{processor}));
+        }
+        return new RoutingTable(routes.toArray(new Route[routes.size()]));
+    }
+
+    /**
+     * @return a new table without any routes to the processor.
+     */
+    public RoutingTable without(Processor processor) {
+        List<Route> routes = new ArrayList<>();
+        for (Route route : mRoutes) {
+            if (!contains(route.mProcessors, processor)) {
+                routes.add(route);
+                continue;
+            }
+            if (route.mProcessors.length == 1)
+                continue;
+            Processor[] processors = new Processor[route.mProcessors.length - 1];
+            int index = 0;
+            for (Processor existing : route.mProcessors) {
+                if (existing != processor)
+                    processors[index++] = existing;
+            }
+            routes.add(new Route(route.mCharacteristicUUID, processors));
+        }
+        return new RoutingTable(routes.toArray(new Route[routes.size()]));
+    }
+
+    private static boolean contains(Processor[] processors, Processor processor) {
+        for (Processor existing : processors) {
+            if (existing == processor)
+                return true;
+        }
+        return false;
+    }
+}
@@ -1,7 +1,7 @@
 package eu.darken.myolib.processor.classifier;
 
 import eu.darken.myolib.processor.BaseDataPacket;
-import eu.darken.myolib.tools.ByteHelper;
+import eu.darken.myolib.tools.MyoHwCodec;
 
 public class ArmSyncedClassifierEvent extends ClassifierEvent {
     /**
@@ -62,39 +62,19 @@ public class ArmSyncedClassifierEvent extends ClassifierEvent {
 
     public ArmSyncedClassifierEvent(BaseDataPacket packet) {
         super(packet, Type.ARM_SYNCED);
-        ByteHelper byteHelper = new ByteHelper(packet.getData());
-        int typeValue = byteHelper.getUInt8();
-        if (getType().getValue() != typeValue)
-            throw new RuntimeException("Incompatible BaseDataPacket:" + typeValue);
-
-        int armValue = byteHelper.getUInt8();
-        for (ArmSyncedClassifierEvent.Arm arm : ArmSyncedClassifierEvent.Arm.values()) {
-            if (arm.getValue() == armValue) {
-                mArm = arm;
-                break;
-            }
-        }
-        int directionValue = byteHelper.getUInt8();
-        for (ArmSyncedClassifierEvent.Direction direction : ArmSyncedClassifierEvent.Direction.values()) {
-            if (direction.getValue() == directionValue) {
-                mDirection = direction;
-                break;
-            }
-        }
-        if (mDirection == null)
-            mDirection = Direction.UNKNOWN;
+        byte[] data = packet.getDataArray();
+        int offset = packet.getDataOffset();
+        if (MyoHwCodec.decodeClassifierEventType(data, offset) != getType())
+            throw new RuntimeException("Incompatible BaseDataPacket:" + MyoHwCodec.uint8(data, offset));
+
+        mArm = MyoHwCodec.decodeArm(data, offset);
+        mDirection = MyoHwCodec.decodeDirection(data, offset);
         // FIXME what is the correct scale for this?
         // https://github.com/logotype/myodaemon/blob/master/native-osx/libs/myo.framework/Versions/A/Headers/cxx/impl/Hub_impl.hpp#L144
-        if (packet.getData().length > 3) {
-            int warmUpStateValue = byteHelper.getUInt8();
-            for (ArmSyncedClassifierEvent.WarmUpState warmUpState : ArmSyncedClassifierEvent.WarmUpState.values()) {
-                if (warmUpState.getValue() == warmUpStateValue) {
-                    mWarmUpState = warmUpState;
-                    break;
-                }
-            }
-            mRotation = byteHelper.getUInt16() / 16384.0f;
-        }
+        if (packet.getDataLength() > 3)
+            mWarmUpState = MyoHwCodec.decodeWarmUpState(data, offset);
+        if (packet.getDataLength() > 5)
+            mRotation = MyoHwCodec.decodeRotation(data, offset);
     }
 
     public WarmUpState getWarmUpState() {
@@ -25,7 +25,7 @@ public class ClassifierEvent extends DataPacket {
     private final Type mType;
 
     protected ClassifierEvent(DataPacket packet, Type type) {
-        super(packet.getDeviceAddress(), packet.getTimeStamp());
+        super(packet);
         mType = type;
     }
 
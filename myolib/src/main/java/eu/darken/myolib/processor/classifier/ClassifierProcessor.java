@@ -1,11 +1,12 @@
 package eu.darken.myolib.processor.classifier;
 
 import java.util.Arrays;
+import java.util.List;
 
 import eu.darken.myolib.processor.BaseDataPacket;
 import eu.darken.myolib.processor.BaseProcessor;
 import eu.darken.myolib.services.Classifier;
-import eu.darken.myolib.tools.ByteHelper;
+import eu.darken.myolib.tools.MyoHwCodec;
 import eu.darken.myolib.tools.Logy;
 
 /**
@@ -21,33 +22,36 @@ public class ClassifierProcessor extends BaseProcessor {
 
     @Override
     protected void doProcess(BaseDataPacket packet) {
-        Logy.v(TAG, Arrays.toString(packet.getData()));
+        if (Logy.isLoggable(Logy.VERBOSE))
+            Logy.v(TAG, Arrays.toString(packet.getData()));
 
-        ByteHelper byteHelper = new ByteHelper(packet.getData());
-        int typeValue = byteHelper.getUInt8();
-        ClassifierEvent event = null;
-
-        if (typeValue == ClassifierEvent.Type.ARM_SYNCED.getValue()) {
-            event = new ArmSyncedClassifierEvent(packet);
-        } else if (typeValue == ClassifierEvent.Type.ARM_UNSYNCED.getValue()) {
-            event = new ClassifierEvent(packet, ClassifierEvent.Type.ARM_UNSYNCED);
-        } else if (typeValue == ClassifierEvent.Type.POSE.getValue()) {
-            event = new PoseClassifierEvent(packet);
-        } else if (typeValue == ClassifierEvent.Type.UNLOCKED.getValue()) {
-            event = new ClassifierEvent(packet, ClassifierEvent.Type.UNLOCKED);
-        } else if (typeValue == ClassifierEvent.Type.LOCKED.getValue()) {
-            event = new ClassifierEvent(packet, ClassifierEvent.Type.LOCKED);
-        } else if (typeValue == ClassifierEvent.Type.SYNC_FAILED.getValue()) {
-            event = new SyncFailedClassifierEvent(packet);
-        } else if (typeValue == ClassifierEvent.Type.WARM_UP_RESULT.getValue()) {
-            event = new WarmUpResultClassifierEvent(packet);
-        }
-        if (event == null) {
+        ClassifierEvent.Type type = MyoHwCodec.decodeClassifierEventType(packet.getDataArray(), packet.getDataOffset());
+        if (type == null) {
             Logy.e(TAG, "Unknown classifier event type!");
             return;
         }
-        for (DataListener listener : getDataListeners()) {
-            ClassifierEventListener motionEventListener = (ClassifierEventListener) listener;
+
+        ClassifierEvent event;
+        switch (type) {
+            case ARM_SYNCED:
+                event = new ArmSyncedClassifierEvent(packet);
+                break;
+            case POSE:
+                event = new PoseClassifierEvent(packet);
+                break;
+            case SYNC_FAILED:
+                event = new SyncFailedClassifierEvent(packet);
+                break;
+            case WARM_UP_RESULT:
+                event = new WarmUpResultClassifierEvent(packet);
+                break;
+            default:
+                event = new ClassifierEvent(packet, type);
+                break;
+        }
+        List<? extends DataListener> listeners = getDataListeners();
+        for (int i = 0; i < listeners.size(); i++) {
+            ClassifierEventListener motionEventListener = (ClassifierEventListener) listeners.get(i);
             motionEventListener.onClassifierEvent(event);
         }
     }
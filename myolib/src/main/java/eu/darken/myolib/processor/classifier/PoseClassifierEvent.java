@@ -2,7 +2,7 @@ package eu.darken.myolib.processor.classifier;
 
 
 import eu.darken.myolib.processor.BaseDataPacket;
-import eu.darken.myolib.tools.ByteHelper;
+import eu.darken.myolib.tools.MyoHwCodec;
 
 public class PoseClassifierEvent extends ClassifierEvent {
     public enum Pose {
@@ -23,18 +23,12 @@ public class PoseClassifierEvent extends ClassifierEvent {
 
     public PoseClassifierEvent(BaseDataPacket packet) {
         super(packet, Type.POSE);
-        ByteHelper byteHelper = new ByteHelper(packet.getData());
-        int typeValue = byteHelper.getUInt8();
-        if (getType().getValue() != typeValue)
-            throw new RuntimeException("Incompatible BaseDataPacket:" + typeValue);
-
-        int poseValue = byteHelper.getUInt16();
-        for (PoseClassifierEvent.Pose pose : PoseClassifierEvent.Pose.values()) {
-            if (pose.getValue() == poseValue) {
-                mPose = pose;
-                break;
-            }
-        }
+        byte[] data = packet.getDataArray();
+        int offset = packet.getDataOffset();
+        if (MyoHwCodec.decodeClassifierEventType(data, offset) != getType())
+            throw new RuntimeException("Incompatible BaseDataPacket:" + MyoHwCodec.uint8(data, offset));
+
+        mPose = MyoHwCodec.decodePose(data, offset);
     }
 
 
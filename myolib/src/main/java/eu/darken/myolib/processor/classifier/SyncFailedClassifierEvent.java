@@ -2,7 +2,7 @@ package eu.darken.myolib.processor.classifier;
 
 
 import eu.darken.myolib.processor.BaseDataPacket;
-import eu.darken.myolib.tools.ByteHelper;
+import eu.darken.myolib.tools.MyoHwCodec;
 
 public class SyncFailedClassifierEvent extends ClassifierEvent {
     /**
@@ -29,18 +29,12 @@ public class SyncFailedClassifierEvent extends ClassifierEvent {
 
     public SyncFailedClassifierEvent(BaseDataPacket packet) {
         super(packet, Type.SYNC_FAILED);
-        ByteHelper byteHelper = new ByteHelper(packet.getData());
-        int typeValue = byteHelper.getUInt8();
-        if (getType().getValue() != typeValue)
-            throw new RuntimeException("Incompatible BaseDataPacket:" + typeValue);
-
-        int syncResultValue = byteHelper.getUInt8();
-        for (SyncFailedClassifierEvent.SyncResult syncResult : SyncFailedClassifierEvent.SyncResult.values()) {
-            if (syncResult.getValue() == syncResultValue) {
-                mSyncResult = syncResult;
-                break;
-            }
-        }
+        byte[] data = packet.getDataArray();
+        int offset = packet.getDataOffset();
+        if (MyoHwCodec.decodeClassifierEventType(data, offset) != getType())
+            throw new RuntimeException("Incompatible BaseDataPacket:" + MyoHwCodec.uint8(data, offset));
+
+        mSyncResult = MyoHwCodec.decodeSyncResult(data, offset);
     }
 
     public SyncResult getSyncResult() {
@@ -1,7 +1,7 @@
 package eu.darken.myolib.processor.classifier;
 
 import eu.darken.myolib.processor.BaseDataPacket;
-import eu.darken.myolib.tools.ByteHelper;
+import eu.darken.myolib.tools.MyoHwCodec;
 
 public class WarmUpResultClassifierEvent extends ClassifierEvent {
     /**
@@ -24,18 +24,12 @@ public class WarmUpResultClassifierEvent extends ClassifierEvent {
 
     public WarmUpResultClassifierEvent(BaseDataPacket packet) {
         super(packet, Type.WARM_UP_RESULT);
-        ByteHelper byteHelper = new ByteHelper(packet.getData());
-        int typeValue = byteHelper.getUInt8();
-        if (getType().getValue() != typeValue)
-            throw new RuntimeException("Incompatible BaseDataPacket:" + typeValue);
-
-        int warmUpResultValue = byteHelper.getUInt8();
-        for (WarmUpResultClassifierEvent.WarmUpResult warmUpResult : WarmUpResultClassifierEvent.WarmUpResult.values()) {
-            if (warmUpResult.getValue() == warmUpResultValue) {
-                mWarmUpResult = warmUpResult;
-                break;
-            }
-        }
+        byte[] data = packet.getDataArray();
+        int offset = packet.getDataOffset();
+        if (MyoHwCodec.decodeClassifierEventType(data, offset) != getType())
+            throw new RuntimeException("Incompatible BaseDataPacket:" + MyoHwCodec.uint8(data, offset));
+
+        mWarmUpResult = MyoHwCodec.decodeWarmUpResult(data, offset);
     }
 
     public WarmUpResult getWarmUpResult() {
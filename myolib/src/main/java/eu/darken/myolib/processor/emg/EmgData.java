@@ -9,11 +9,14 @@ import eu.darken.myolib.processor.BaseDataPacket;
 
 /**
  * Class to hold EMG data from one of the Myo's 8 EMG sensors.
+ * <p>
+ * If {@link EmgProcessor#setReuseEmgData(boolean)} is enabled, the {@link EmgProcessor} recycles its instances.
+ * They are then only valid during {@link EmgProcessor.EmgDataListener#onNewEmgData(EmgData)}, use {@link #copy()} to keep one.
  */
 public class EmgData {
     private final byte[] mData;
-    private final long mTimestamp;
-    private final String mDeviceAddress;
+    private long mTimestamp;
+    private String mDeviceAddress;
 
     public EmgData(String deviceAddress, long timestamp, byte[] data) {
         mDeviceAddress = deviceAddress;
@@ -21,6 +24,29 @@ public class EmgData {
         mData = data;
     }
 
+    /**
+     * Creates an empty instance for reuse via {@link #update(String, long, byte[], int)}.
+     */
+    EmgData() {
+        mData = new byte[8];
+    }
+
+    /**
+     * Overwrites this instance with the 8 samples found at {@code offset}.
+     */
+    void update(String deviceAddress, long timestamp, byte[] source, int offset) {
+        mDeviceAddress = deviceAddress;
+        mTimestamp = timestamp;
+        System.arraycopy(source, offset, mData, 0, mData.length);
+    }
+
+    /**
+     * @return an independent copy that stays valid after the listener callback returned.
+     */
+    public EmgData copy() {
+        return new EmgData(mDeviceAddress, mTimestamp, mData.clone());
+    }
+
     public String getDeviceAddress() {
         return mDeviceAddress;
     }
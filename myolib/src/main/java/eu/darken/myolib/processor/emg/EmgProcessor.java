@@ -5,16 +5,32 @@
  */
 package eu.darken.myolib.processor.emg;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import eu.darken.myolib.processor.BaseDataPacket;
 import eu.darken.myolib.processor.BaseProcessor;
 import eu.darken.myolib.services.Emg;
 
 /**
  * Creates {@link EmgData} objects from {@link BaseDataPacket} objects.<br>
- * More specifically, two for each.
+ * More specifically, two for each.<br>
+ * {@link EmgBatchListener}s instead receive the frames accumulated in primitive arrays.
  */
 public class EmgProcessor extends BaseProcessor {
     private static final String TAG = "MyoLib:EmgProcessor";
+    public static final int DEFAULT_BATCH_SIZE = 20;
+    public static final long DEFAULT_BATCH_LATENCY = 50;
+    private final EmgData mReusableFirst = new EmgData();
+    private final EmgData mReusableSecond = new EmgData();
+    private volatile boolean mReuseEmgData = false;
+    private volatile int mBatchSize = DEFAULT_BATCH_SIZE;
+    private volatile long mBatchLatency = DEFAULT_BATCH_LATENCY;
+    private long[] mBatchTimestamps = new long[DEFAULT_BATCH_SIZE];
+    private byte[] mBatchSamples = new byte[DEFAULT_BATCH_SIZE * 8];
+    private int mBatchCount;
+    private long mBatchStart;
+    private String mBatchDeviceAddress;
 
     public EmgProcessor() {
         super();
@@ -24,27 +40,160 @@ public class EmgProcessor extends BaseProcessor {
         getSubscriptions().add(Emg.EMGDATA3.getCharacteristicUUID());
     }
 
+    /**
+     * If enabled, the same two {@link EmgData} objects are handed to listeners for every packet,
+     * so decoding doesn't allocate anything.
+     * Listeners must not keep a reference after {@link EmgDataListener#onNewEmgData(EmgData)} returned, see {@link EmgData#copy()}.
+     *
+     * @param reuseEmgData default false
+     */
+    public void setReuseEmgData(boolean reuseEmgData) {
+        mReuseEmgData = reuseEmgData;
+    }
+
+    public boolean isReuseEmgData() {
+        return mReuseEmgData;
+    }
+
+    /**
+     * Configures when {@link EmgBatchListener}s are called, whichever limit is reached first.
+     *
+     * @param batchSize    maximum number of frames per batch, default {@link #DEFAULT_BATCH_SIZE}
+     * @param batchLatency maximum time in milliseconds a frame waits in the batch, default {@link #DEFAULT_BATCH_LATENCY}
+     */
+    public void setBatchConfig(int batchSize, long batchLatency) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        if (batchLatency < 0)
+            throw new IllegalArgumentException("Batch latency must not be negative: " + batchLatency);
+        mBatchSize = batchSize;
+        mBatchLatency = batchLatency;
+    }
+
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    public long getBatchLatency() {
+        return mBatchLatency;
+    }
+
     protected void doProcess(BaseDataPacket packet) {
-        byte[] data1 = new byte[8];
-        System.arraycopy(packet.getData(), 0, data1, 0, 8);
-        EmgData emgData1 = new EmgData(packet.getDeviceAddress(), packet.getTimeStamp(), data1);
+        boolean hasEmgListener = false;
+        boolean hasBatchListener = false;
+        List<? extends DataListener> listeners = getDataListeners();
+        for (int i = 0; i < listeners.size(); i++) {
+            if (listeners.get(i) instanceof EmgDataListener)
+                hasEmgListener = true;
+            if (listeners.get(i) instanceof EmgBatchListener)
+                hasBatchListener = true;
+        }
+        if (hasBatchListener)
+            appendToBatch(packet);
+        if (!hasEmgListener)
+            return;
 
-        byte[] data2 = new byte[8];
-        System.arraycopy(packet.getData(), 8, data2, 0, 8);
-        EmgData emgData2 = new EmgData(packet.getDeviceAddress(), packet.getTimeStamp() + 5, data2);
+        EmgData emgData1;
+        EmgData emgData2;
+        final byte[] data = packet.getDataArray();
+        final int offset = packet.getDataOffset();
+        if (mReuseEmgData) {
+            emgData1 = mReusableFirst;
+            emgData1.update(packet.getDeviceAddress(), packet.getTimeStamp(), data, offset);
+            emgData2 = mReusableSecond;
+            emgData2.update(packet.getDeviceAddress(), packet.getTimeStamp() + 5, data, offset + 8);
+        } else {
+            byte[] data1 = new byte[8];
+            System.arraycopy(data, offset, data1, 0, 8);
+            emgData1 = new EmgData(packet.getDeviceAddress(), packet.getTimeStamp(), data1);
 
-        for (DataListener listener : getDataListeners()) {
-            EmgDataListener emgListener = (EmgDataListener) listener;
+            byte[] data2 = new byte[8];
+            System.arraycopy(data, offset + 8, data2, 0, 8);
+            emgData2 = new EmgData(packet.getDeviceAddress(), packet.getTimeStamp() + 5, data2);
+        }
+
+        // Indexed loop, an iterator would be an allocation per packet.
+        for (int i = 0; i < listeners.size(); i++) {
+            if (!(listeners.get(i) instanceof EmgDataListener))
+                continue;
+            EmgDataListener emgListener = (EmgDataListener) listeners.get(i);
             emgListener.onNewEmgData(emgData1);
             emgListener.onNewEmgData(emgData2);
         }
     }
 
+    private void appendToBatch(BaseDataPacket packet) {
+        if (mBatchCount > 0 && !packet.getDeviceAddress().equals(mBatchDeviceAddress))
+            flushBatch();
+        final int batchSize = mBatchSize;
+        if (mBatchTimestamps.length != batchSize) {
+            flushBatch();
+            mBatchTimestamps = new long[batchSize];
+            mBatchSamples = new byte[batchSize * 8];
+        }
+        // Each packet contains two frames, the second one 5ms after the first.
+        for (int frame = 0; frame < 2; frame++) {
+            if (mBatchCount == 0) {
+                mBatchStart = System.nanoTime();
+                mBatchDeviceAddress = packet.getDeviceAddress();
+            }
+            mBatchTimestamps[mBatchCount] = packet.getTimeStamp() + frame * 5;
+            System.arraycopy(packet.getDataArray(), packet.getDataOffset() + frame * 8, mBatchSamples, mBatchCount * 8, 8);
+            mBatchCount++;
+            if (mBatchCount == batchSize)
+                flushBatch();
+        }
+        if (mBatchCount > 0 && System.nanoTime() - mBatchStart >= TimeUnit.MILLISECONDS.toNanos(mBatchLatency))
+            flushBatch();
+    }
+
+    private void flushBatch() {
+        if (mBatchCount == 0)
+            return;
+        List<? extends DataListener> listeners = getDataListeners();
+        for (int i = 0; i < listeners.size(); i++) {
+            if (listeners.get(i) instanceof EmgBatchListener)
+                ((EmgBatchListener) listeners.get(i)).onNewEmgBatch(mBatchDeviceAddress, mBatchTimestamps, mBatchSamples, 0, mBatchCount);
+        }
+        mBatchCount = 0;
+    }
+
+    @Override
+    protected long getTimeoutNanos() {
+        if (mBatchCount == 0)
+            return -1;
+        return Math.max(0, mBatchStart + TimeUnit.MILLISECONDS.toNanos(mBatchLatency) - System.nanoTime());
+    }
+
+    @Override
+    protected void onTimeout() {
+        flushBatch();
+    }
+
     public interface EmgDataListener extends DataListener {
         void onNewEmgData(EmgData emgData);
     }
 
+    /**
+     * Receives EMG frames in batches, see {@link #setBatchConfig(int, long)}.
+     * The arrays are reused, they are only valid during the callback.
+     */
+    public interface EmgBatchListener extends DataListener {
+        /**
+         * @param deviceAddress the Myo the frames came from
+         * @param timestamps    one timestamp per frame, see {@link EmgData#getTimestamp()}
+         * @param samples       8 samples per frame, frame {@code i} starts at {@code (offset + i) * 8}
+         * @param offset        index of the first frame
+         * @param count         number of frames
+         */
+        void onNewEmgBatch(String deviceAddress, long[] timestamps, byte[] samples, int offset, int count);
+    }
+
     public void addListener(EmgDataListener listener) {
         super.addDataListener(listener);
     }
+
+    public void addBatchListener(EmgBatchListener listener) {
+        super.addDataListener(listener);
+    }
 }
@@ -8,62 +8,129 @@ package eu.darken.myolib.processor.imu;
 
 import eu.darken.myolib.processor.BaseDataPacket;
 import eu.darken.myolib.processor.DataPacket;
-import eu.darken.myolib.tools.ByteHelper;
+import eu.darken.myolib.tools.MyoHwCodec;
 
 /**
  * Class representing data from the Myo's IMU sensors.
+ * <p>
+ * The 20 byte payload is kept as is and only decoded on demand.
+ * The indexed getters e.g. {@link #getOrientation(int)} and the methods taking a target array don't allocate.
  */
 public class ImuData extends DataPacket {
-    private static final double MYOHW_ORIENTATION_SCALE = 16384.0f; ///< See myohw_imu_data_t::orientation
-    private static final double MYOHW_ACCELEROMETER_SCALE = 2048.0f; ///< See myohw_imu_data_t::accelerometer
-    private static final double MYOHW_ACCEMYOHW_GYROSCOPE_SCALELEROMETER_SCALE = 16.0f; ///< See myohw_imu_data_t::gyroscope
-    private final double[] mOrientationData;
-    private final double[] mAccelerometerData;
-    private final double[] mGyroData;
+    private final byte[] mData;
+    private final int mDataOffset;
+    private double[] mOrientationData;
+    private double[] mAccelerometerData;
+    private double[] mGyroData;
 
     public ImuData(BaseDataPacket packet) {
-        super(packet.getDeviceAddress(), packet.getTimeStamp());
-        ByteHelper byteHelper = new ByteHelper(packet.getData());
-        mOrientationData = new double[4];
+        super(packet);
+        mData = packet.getDataArray();
+        mDataOffset = packet.getDataOffset();
+    }
+
+    /**
+     * @param axis 0-3 for [w,x,y,z]
+     * @see #getOrientationData()
+     */
+    public double getOrientation(int axis) {
+        if (axis < 0 || axis > 3)
+            throw new IndexOutOfBoundsException("Axis: " + axis);
+        return MyoHwCodec.decodeOrientation(mData, mDataOffset, axis);
+    }
+
+    /**
+     * @param axis 0-2
+     * @see #getAccelerometerData()
+     */
+    public double getAccelerometer(int axis) {
+        if (axis < 0 || axis > 2)
+            throw new IndexOutOfBoundsException("Axis: " + axis);
+        return MyoHwCodec.decodeAccelerometer(mData, mDataOffset, axis);
+    }
+
+    /**
+     * @param axis 0-2
+     * @see #getGyroData()
+     */
+    public double getGyro(int axis) {
+        if (axis < 0 || axis > 2)
+            throw new IndexOutOfBoundsException("Axis: " + axis);
+        return MyoHwCodec.decodeGyroscope(mData, mDataOffset, axis);
+    }
+
+    /**
+     * Decodes the orientation into the given array, see {@link #getOrientationData()}.
+     *
+     * @param target needs room for 4 values.
+     * @return the target array
+     */
+    public double[] getOrientationData(double[] target) {
         for (int i = 0; i < 4; i++)
-            mOrientationData[i] = byteHelper.getUInt16() / MYOHW_ORIENTATION_SCALE;
+            target[i] = MyoHwCodec.decodeOrientation(mData, mDataOffset, i);
+        return target;
+    }
 
-        mAccelerometerData = new double[3];
+    /**
+     * Decodes the accelerometer values into the given array, see {@link #getAccelerometerData()}.
+     *
+     * @param target needs room for 3 values.
+     * @return the target array
+     */
+    public double[] getAccelerometerData(double[] target) {
         for (int i = 0; i < 3; i++)
-            mAccelerometerData[i] = byteHelper.getUInt16() / MYOHW_ACCELEROMETER_SCALE;
+            target[i] = MyoHwCodec.decodeAccelerometer(mData, mDataOffset, i);
+        return target;
+    }
 
-        mGyroData = new double[3];
+    /**
+     * Decodes the gyroscope values into the given array, see {@link #getGyroData()}.
+     *
+     * @param target needs room for 3 values.
+     * @return the target array
+     */
+    public double[] getGyroData(double[] target) {
         for (int i = 0; i < 3; i++)
-            mGyroData[i] = byteHelper.getUInt16() / MYOHW_ACCEMYOHW_GYROSCOPE_SCALELEROMETER_SCALE;
+            target[i] = MyoHwCodec.decodeGyroscope(mData, mDataOffset, i);
+        return target;
     }
 
     /**
      * Values range form -1.0 to 1.0<br>
-     * Format: [w,x,y,z]
+     * Format: [w,x,y,z]<br>
+     * Decoded on the first call.
      *
      * @see <a href="https://github.com/thalmiclabs/myo-bluetooth/blob/master/myohw.h">Myo protocol specification</a>
      */
     public double[] getOrientationData() {
+        if (mOrientationData == null)
+            mOrientationData = getOrientationData(new double[4]);
         return mOrientationData;
     }
 
     /**
      * Values range from -1.0 to 1.0 <br>
-     * Format: [?,?,?]
+     * Format: [?,?,?]<br>
+     * Decoded on the first call.
      *
      * @see <a href="https://github.com/thalmiclabs/myo-bluetooth/blob/master/myohw.h">Myo protocol specification</a>
      */
     public double[] getAccelerometerData() {
+        if (mAccelerometerData == null)
+            mAccelerometerData = getAccelerometerData(new double[3]);
         return mAccelerometerData;
     }
 
     /**
      * Values range from -? to ? <br>
-     * Format: [?,?,?]
+     * Format: [?,?,?]<br>
+     * Decoded on the first call.
      *
      * @see <a href="https://github.com/thalmiclabs/myo-bluetooth/blob/master/myohw.h">Myo protocol specification</a>
      */
     public double[] getGyroData() {
+        if (mGyroData == null)
+            mGyroData = getGyroData(new double[3]);
         return mGyroData;
     }
 
@@ -5,6 +5,8 @@
  */
 package eu.darken.myolib.processor.imu;
 
+import java.util.List;
+
 import eu.darken.myolib.processor.BaseDataPacket;
 import eu.darken.myolib.processor.BaseProcessor;
 import eu.darken.myolib.services.Imu;
@@ -24,8 +26,9 @@ public class ImuProcessor extends BaseProcessor {
     protected void doProcess(BaseDataPacket packet) {
         ImuData imuData = new ImuData(packet);
 
-        for (DataListener listener : getDataListeners()) {
-            ImuDataListener imuListener = (ImuDataListener) listener;
+        List<? extends DataListener> listeners = getDataListeners();
+        for (int i = 0; i < listeners.size(); i++) {
+            ImuDataListener imuListener = (ImuDataListener) listeners.get(i);
             imuListener.onNewImuData(imuData);
         }
     }
@@ -1,11 +1,12 @@
 package eu.darken.myolib.processor.imu;
 
 import java.util.Arrays;
+import java.util.List;
 
 import eu.darken.myolib.processor.BaseDataPacket;
 import eu.darken.myolib.processor.BaseProcessor;
 import eu.darken.myolib.services.Imu;
-import eu.darken.myolib.tools.ByteHelper;
+import eu.darken.myolib.tools.MyoHwCodec;
 import eu.darken.myolib.tools.Logy;
 
 /**
@@ -21,17 +22,16 @@ public class MotionProcessor extends BaseProcessor {
 
     @Override
     protected void doProcess(BaseDataPacket packet) {
-        Logy.v(TAG, Arrays.toString(packet.getData()));
+        if (Logy.isLoggable(Logy.VERBOSE))
+            Logy.v(TAG, Arrays.toString(packet.getData()));
 
-        ByteHelper byteHelper = new ByteHelper(packet.getData());
+        byte[] data = packet.getDataArray();
+        int offset = packet.getDataOffset();
         MotionEvent event = null;
-        int typeValue = byteHelper.getUInt8();
-        if (typeValue == MotionEvent.Type.TAP.getValue()) {
+        if (MyoHwCodec.decodeMotionEventType(data, offset) == MotionEvent.Type.TAP) {
             TapMotionEvent _event = new TapMotionEvent(packet);
-            // TODO possible values are unknown
-            int tapDirectionValue = byteHelper.getUInt8();
-            int tapCountValue = byteHelper.getUInt8();
-            _event.setTapCount(tapCountValue);
+            // TODO possible values of MyoHwCodec.decodeTapDirection() are unknown
+            _event.setTapCount(MyoHwCodec.decodeTapCount(data, offset));
             event = _event;
         }
         if (event == null) {
@@ -40,8 +40,9 @@ public class MotionProcessor extends BaseProcessor {
         }
 
 
-        for (DataListener listener : getDataListeners()) {
-            MotionEventListener motionEventListener = (MotionEventListener) listener;
+        List<? extends DataListener> listeners = getDataListeners();
+        for (int i = 0; i < listeners.size(); i++) {
+            MotionEventListener motionEventListener = (MotionEventListener) listeners.get(i);
             motionEventListener.onMotionEvent(event);
         }
     }
@@ -21,6 +21,15 @@ public class Logy {
 
     public static int sLoglevel = BuildConfig.DEBUG ? VERBOSE : QUIET;
 
+    /**
+     * Check this before building expensive log messages, e.g. in the data path.
+     *
+     * @param level e.g. {@link #VERBOSE}
+     */
+    public static boolean isLoggable(int level) {
+        return sLoglevel >= level;
+    }
+
     public static void v(String c, String s) {
         if (sLoglevel >= VERBOSE) {
             Log.v(c, s);
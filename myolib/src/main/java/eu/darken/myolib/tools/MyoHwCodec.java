@@ -0,0 +1,260 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.tools;
+
+import eu.darken.myolib.MyoInfo;
+import eu.darken.myolib.processor.classifier.ArmSyncedClassifierEvent;
+import eu.darken.myolib.processor.classifier.ClassifierEvent;
+import eu.darken.myolib.processor.classifier.PoseClassifierEvent;
+import eu.darken.myolib.processor.classifier.SyncFailedClassifierEvent;
+import eu.darken.myolib.processor.classifier.WarmUpResultClassifierEvent;
+import eu.darken.myolib.processor.imu.MotionEvent;
+
+/**
+ * Static decoders for the structs of the Myo bluetooth protocol.
+ * All methods work directly on the received byte[] and the offset at which the struct starts,
+ * enum values are resolved through precomputed lookup tables.
+ * Nothing is allocated.
+ *
+ * @see <a href="https://github.com/thalmiclabs/myo-bluetooth/blob/master/myohw.h">Myo protocol specification</a>
+ */
+public class MyoHwCodec {
+    public static final double ORIENTATION_SCALE = 16384.0f; ///< See myohw_imu_data_t::orientation
+    public static final double ACCELEROMETER_SCALE = 2048.0f; ///< See myohw_imu_data_t::accelerometer
+    public static final double GYROSCOPE_SCALE = 16.0f; ///< See myohw_imu_data_t::gyroscope
+    public static final float ROTATION_SCALE = 16384.0f;
+
+    public static final int IMU_ORIENTATION_OFFSET = 0;
+    public static final int IMU_ACCELEROMETER_OFFSET = 8;
+    public static final int IMU_GYROSCOPE_OFFSET = 14;
+    public static final int EMG_CHANNELS = 8;
+
+    private static final ClassifierEvent.Type[] CLASSIFIER_EVENT_TYPES = new ClassifierEvent.Type[256];
+    private static final PoseClassifierEvent.Pose[] POSES = new PoseClassifierEvent.Pose[256];
+    private static final ArmSyncedClassifierEvent.Arm[] ARMS = new ArmSyncedClassifierEvent.Arm[256];
+    private static final ArmSyncedClassifierEvent.Direction[] DIRECTIONS = new ArmSyncedClassifierEvent.Direction[256];
+    private static final ArmSyncedClassifierEvent.WarmUpState[] WARM_UP_STATES = new ArmSyncedClassifierEvent.WarmUpState[256];
+    private static final WarmUpResultClassifierEvent.WarmUpResult[] WARM_UP_RESULTS = new WarmUpResultClassifierEvent.WarmUpResult[256];
+    private static final SyncFailedClassifierEvent.SyncResult[] SYNC_RESULTS = new SyncFailedClassifierEvent.SyncResult[256];
+    private static final MotionEvent.Type[] MOTION_EVENT_TYPES = new MotionEvent.Type[256];
+    private static final MyoInfo.Sku[] SKUS = new MyoInfo.Sku[256];
+    private static final MyoInfo.ActiveClassifierType[] ACTIVE_CLASSIFIER_TYPES = new MyoInfo.ActiveClassifierType[256];
+
+    static {
+        for (ClassifierEvent.Type type : ClassifierEvent.Type.values())
+            CLASSIFIER_EVENT_TYPES[type.getValue() & 0xFF] = type;
+        for (PoseClassifierEvent.Pose pose : PoseClassifierEvent.Pose.values()) {
+            // UNKNOWN (0xFFFF) is the fallback and doesn't fit the table.
+            if ((pose.getValue() & 0xFFFF) < POSES.length)
+                POSES[pose.getValue() & 0xFFFF] = pose;
+        }
+        for (ArmSyncedClassifierEvent.Arm arm : ArmSyncedClassifierEvent.Arm.values())
+            ARMS[arm.getValue() & 0xFF] = arm;
+        for (ArmSyncedClassifierEvent.Direction direction : ArmSyncedClassifierEvent.Direction.values())
+            DIRECTIONS[direction.getValue() & 0xFF] = direction;
+        for (ArmSyncedClassifierEvent.WarmUpState warmUpState : ArmSyncedClassifierEvent.WarmUpState.values())
+            WARM_UP_STATES[warmUpState.getValue() & 0xFF] = warmUpState;
+        for (WarmUpResultClassifierEvent.WarmUpResult warmUpResult : WarmUpResultClassifierEvent.WarmUpResult.values())
+            WARM_UP_RESULTS[warmUpResult.getValue() & 0xFF] = warmUpResult;
+        for (SyncFailedClassifierEvent.SyncResult syncResult : SyncFailedClassifierEvent.SyncResult.values())
+            SYNC_RESULTS[syncResult.getValue() & 0xFF] = syncResult;
+        for (MotionEvent.Type type : MotionEvent.Type.values())
+            MOTION_EVENT_TYPES[type.getValue() & 0xFF] = type;
+        for (MyoInfo.Sku sku : MyoInfo.Sku.values())
+            SKUS[sku.getValue() & 0xFF] = sku;
+        for (MyoInfo.ActiveClassifierType type : MyoInfo.ActiveClassifierType.values())
+            ACTIVE_CLASSIFIER_TYPES[type.getValue() & 0xFF] = type;
+    }
+
+    private MyoHwCodec() {
+    }
+
+    public static int uint8(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    /**
+     * Little endian.
+     */
+    public static int int16(byte[] data, int offset) {
+        return (short) ((data[offset] & 0xFF) | (data[offset + 1] << 8));
+    }
+
+    /**
+     * Little endian.
+     */
+    public static int uint16(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    // myohw_classifier_event_t
+
+    /**
+     * @return NULL for unknown types.
+     */
+    public static ClassifierEvent.Type decodeClassifierEventType(byte[] data, int offset) {
+        return CLASSIFIER_EVENT_TYPES[uint8(data, offset)];
+    }
+
+    /**
+     * For {@link ClassifierEvent.Type#POSE}
+     */
+    public static PoseClassifierEvent.Pose decodePose(byte[] data, int offset) {
+        return toPose(uint16(data, offset + 1));
+    }
+
+    /**
+     * For {@link ClassifierEvent.Type#ARM_SYNCED}
+     */
+    public static ArmSyncedClassifierEvent.Arm decodeArm(byte[] data, int offset) {
+        ArmSyncedClassifierEvent.Arm arm = ARMS[uint8(data, offset + 1)];
+        return arm != null ? arm : ArmSyncedClassifierEvent.Arm.UNKNOWN;
+    }
+
+    /**
+     * For {@link ClassifierEvent.Type#ARM_SYNCED}
+     */
+    public static ArmSyncedClassifierEvent.Direction decodeDirection(byte[] data, int offset) {
+        ArmSyncedClassifierEvent.Direction direction = DIRECTIONS[uint8(data, offset + 2)];
+        return direction != null ? direction : ArmSyncedClassifierEvent.Direction.UNKNOWN;
+    }
+
+    /**
+     * For {@link ClassifierEvent.Type#ARM_SYNCED}, only sent by newer firmware.
+     */
+    public static ArmSyncedClassifierEvent.WarmUpState decodeWarmUpState(byte[] data, int offset) {
+        ArmSyncedClassifierEvent.WarmUpState warmUpState = WARM_UP_STATES[uint8(data, offset + 3)];
+        return warmUpState != null ? warmUpState : ArmSyncedClassifierEvent.WarmUpState.UNKNOWN;
+    }
+
+    /**
+     * For {@link ClassifierEvent.Type#ARM_SYNCED}, only sent by newer firmware.
+     */
+    public static float decodeRotation(byte[] data, int offset) {
+        return int16(data, offset + 4) / ROTATION_SCALE;
+    }
+
+    /**
+     * For {@link ClassifierEvent.Type#WARM_UP_RESULT}
+     *
+     * @return NULL for unknown values.
+     */
+    public static WarmUpResultClassifierEvent.WarmUpResult decodeWarmUpResult(byte[] data, int offset) {
+        return WARM_UP_RESULTS[uint8(data, offset + 1)];
+    }
+
+    /**
+     * For {@link ClassifierEvent.Type#SYNC_FAILED}
+     *
+     * @return NULL for unknown values.
+     */
+    public static SyncFailedClassifierEvent.SyncResult decodeSyncResult(byte[] data, int offset) {
+        return SYNC_RESULTS[uint8(data, offset + 1)];
+    }
+
+    // myohw_motion_event_t
+
+    /**
+     * @return NULL for unknown types.
+     */
+    public static MotionEvent.Type decodeMotionEventType(byte[] data, int offset) {
+        return MOTION_EVENT_TYPES[uint8(data, offset)];
+    }
+
+    /**
+     * For {@link MotionEvent.Type#TAP}
+     */
+    public static int decodeTapDirection(byte[] data, int offset) {
+        return uint8(data, offset + 1);
+    }
+
+    /**
+     * For {@link MotionEvent.Type#TAP}
+     */
+    public static int decodeTapCount(byte[] data, int offset) {
+        return uint8(data, offset + 2);
+    }
+
+    // myohw_imu_data_t
+
+    /**
+     * @param axis 0-3 for [w,x,y,z]
+     */
+    public static double decodeOrientation(byte[] data, int offset, int axis) {
+        return int16(data, offset + IMU_ORIENTATION_OFFSET + axis * 2) / ORIENTATION_SCALE;
+    }
+
+    /**
+     * @param axis 0-2
+     */
+    public static double decodeAccelerometer(byte[] data, int offset, int axis) {
+        return int16(data, offset + IMU_ACCELEROMETER_OFFSET + axis * 2) / ACCELEROMETER_SCALE;
+    }
+
+    /**
+     * @param axis 0-2
+     */
+    public static double decodeGyroscope(byte[] data, int offset, int axis) {
+        return int16(data, offset + IMU_GYROSCOPE_OFFSET + axis * 2) / GYROSCOPE_SCALE;
+    }
+
+    // myohw_emg_data_t
+
+    /**
+     * @param frame   0 or 1, each packet contains two frames.
+     * @param channel 0-7
+     */
+    public static byte decodeEmgSample(byte[] data, int offset, int frame, int channel) {
+        return data[offset + frame * EMG_CHANNELS + channel];
+    }
+
+    // myohw_fw_info_t
+
+    /**
+     * @param index 0-5
+     */
+    public static int decodeSerialNumber(byte[] data, int offset, int index) {
+        return uint8(data, offset + index);
+    }
+
+    public static PoseClassifierEvent.Pose decodeUnlockPose(byte[] data, int offset) {
+        return toPose(uint16(data, offset + 6));
+    }
+
+    public static MyoInfo.ActiveClassifierType decodeActiveClassifierType(byte[] data, int offset) {
+        MyoInfo.ActiveClassifierType type = ACTIVE_CLASSIFIER_TYPES[uint8(data, offset + 8)];
+        return type != null ? type : MyoInfo.ActiveClassifierType.BUILTIN;
+    }
+
+    public static int decodeActiveClassifierIndex(byte[] data, int offset) {
+        return uint8(data, offset + 9);
+    }
+
+    public static boolean decodeHasCustomClassifier(byte[] data, int offset) {
+        return uint8(data, offset + 10) == 1;
+    }
+
+    public static int decodeStreamIndicating(byte[] data, int offset) {
+        return uint8(data, offset + 11);
+    }
+
+    public static MyoInfo.Sku decodeSku(byte[] data, int offset) {
+        MyoInfo.Sku sku = SKUS[uint8(data, offset + 12)];
+        return sku != null ? sku : MyoInfo.Sku.UNKNOWN;
+    }
+
+    /**
+     * Offset of the reserved bytes that follow the known fields of myohw_fw_info_t.
+     */
+    public static int getMyoInfoReservedOffset(int offset) {
+        return offset + 13;
+    }
+
+    private static PoseClassifierEvent.Pose toPose(int value) {
+        PoseClassifierEvent.Pose pose = value < POSES.length ? POSES[value] : null;
+        return pose != null ? pose : PoseClassifierEvent.Pose.UNKNOWN;
+    }
+}
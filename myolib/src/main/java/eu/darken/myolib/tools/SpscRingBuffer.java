@@ -0,0 +1,312 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.tools;
+
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated single-producer/single-consumer ring buffer.
+ * {@link #offer(Object)} and {@link #poll()} are lock-free and don't allocate.
+ * Only one thread may call {@link #offer(Object)} and only one (other) thread may call {@link #poll()}/{@link #take()}.
+ * <p>
+ * What happens if the buffer is full is decided by the {@link OverflowPolicy}.
+ * Slots are overwritten rather than cleared, so up to {@link #getCapacity()} consumed elements stay referenced.
+ *
+ * @param <E> element type
+ */
+public class SpscRingBuffer<E> {
+    private static final long BLOCK_PARK_NANOS = 1000 * 1000;
+
+    /**
+     * How the consumer waits in {@link #take()} while the buffer is empty.
+     */
+    public enum WaitStrategy {
+        /**
+         * Park the consumer thread until the producer wakes it up. Lowest CPU usage, highest wake-up latency.
+         */
+        PARK,
+        /**
+         * Busy-wait but yield the CPU between checks.
+         */
+        YIELD,
+        /**
+         * Busy-wait without yielding. Lowest latency, burns a full core.
+         */
+        SPIN
+    }
+
+    /**
+     * What {@link #offer(Object)} does if the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until the consumer made room. Lossless, but stalls the producer.
+         * Fails fast instead while the buffer is {@link #close()}d.
+         */
+        BLOCK,
+        /**
+         * Discard the oldest queued element to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the new element.
+         */
+        DROP_NEWEST,
+        /**
+         * Discard everything that is queued, so the consumer continues with the newest element.
+         */
+        CONFLATE
+    }
+
+    /**
+     * Informed about every element that was discarded due to the {@link OverflowPolicy}.
+     * Called on the producer thread.
+     */
+    public interface DropListener<E> {
+        void onDropped(E element);
+    }
+
+    private final Object[] mBuffer;
+    private final int mMask;
+    private final WaitStrategy mWaitStrategy;
+    private final OverflowPolicy mOverflowPolicy;
+    private final DropListener<E> mDropListener;
+    /**
+     * Next index to read. Advanced by the consumer, and by the producer when it discards queued elements.
+     */
+    private final AtomicLong mHead = new AtomicLong();
+    /**
+     * Next index to write, only written by the producer.
+     */
+    private final AtomicLong mTail = new AtomicLong();
+    private volatile Thread mWaiter;
+    private volatile Thread mBlockedProducer;
+    private volatile boolean mClosed = false;
+
+    /**
+     * Creates a buffer using {@link OverflowPolicy#DROP_NEWEST}.
+     * See {@link #SpscRingBuffer(int, WaitStrategy, OverflowPolicy, DropListener)}
+     */
+    public SpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        this(capacity, waitStrategy, OverflowPolicy.DROP_NEWEST, null);
+    }
+
+    /**
+     * @param capacity       will be rounded up to the next power of two.
+     * @param waitStrategy   see {@link WaitStrategy}
+     * @param overflowPolicy see {@link OverflowPolicy}
+     * @param dropListener   optional
+     */
+    public SpscRingBuffer(int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy, @Nullable DropListener<E> dropListener) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        mBuffer = new Object[size];
+        mMask = size - 1;
+        mWaitStrategy = waitStrategy;
+        mOverflowPolicy = overflowPolicy;
+        mDropListener = dropListener;
+    }
+
+    public int getCapacity() {
+        return mBuffer.length;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return mWaitStrategy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return false if the element itself was discarded.
+     */
+    public boolean offer(E element) {
+        final long tail = mTail.get();
+        while (tail - mHead.get() >= mBuffer.length) {
+            if (mOverflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                onDropped(element);
+                return false;
+            } else if (mOverflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                discardHead(tail);
+            } else if (mOverflowPolicy == OverflowPolicy.CONFLATE) {
+                while (discardHead(tail)) ;
+            } else {
+                if (mClosed) {
+                    onDropped(element);
+                    return false;
+                }
+                mBlockedProducer = Thread.currentThread();
+                if (tail - mHead.get() >= mBuffer.length)
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                mBlockedProducer = null;
+            }
+        }
+        mBuffer[(int) tail & mMask] = element;
+        // Volatile write, so the consumer is guaranteed to see it before we check for a parked waiter.
+        mTail.set(tail + 1);
+        if (mWaitStrategy == WaitStrategy.PARK) {
+            Thread waiter = mWaiter;
+            if (waiter != null)
+                LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    /**
+     * Producer side, removes the oldest element unless the consumer was faster.
+     *
+     * @return false if there was nothing left to discard.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean discardHead(long tail) {
+        final long head = mHead.get();
+        if (head == tail)
+            return false;
+        E element = (E) mBuffer[(int) head & mMask];
+        if (mHead.compareAndSet(head, head + 1))
+            onDropped(element);
+        return true;
+    }
+
+    private void onDropped(E element) {
+        if (mDropListener != null)
+            mDropListener.onDropped(element);
+    }
+
+    /**
+     * Consumer side.
+     *
+     * @return the oldest element or NULL if the buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            final long head = mHead.get();
+            if (head == mTail.get())
+                return null;
+            E element = (E) mBuffer[(int) head & mMask];
+            // CAS because the producer might have discarded this element in the meantime.
+            if (mHead.compareAndSet(head, head + 1)) {
+                Thread producer = mBlockedProducer;
+                if (producer != null)
+                    LockSupport.unpark(producer);
+                return element;
+            }
+        }
+    }
+
+    /**
+     * Consumer side. Waits according to the {@link WaitStrategy} until an element is available.
+     *
+     * @return the oldest element, NULL once the buffer is {@link #close()}d and empty.
+     * @throws InterruptedException if the consumer thread was interrupted while waiting.
+     */
+    @Nullable
+    public E take() throws InterruptedException {
+        E element;
+        while ((element = poll()) == null) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            // An element offered between the poll above and close() is still handed out.
+            if (mClosed)
+                return poll();
+            if (mWaitStrategy == WaitStrategy.PARK) {
+                mWaiter = Thread.currentThread();
+                // Re-check after publishing ourselves, the producer or close() might have missed us.
+                element = poll();
+                if (element == null && !mClosed)
+                    LockSupport.park(this);
+                mWaiter = null;
+                if (element != null)
+                    return element;
+            } else if (mWaitStrategy == WaitStrategy.YIELD) {
+                Thread.yield();
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Like {@link #take()}, but gives up after the timeout.
+     *
+     * @param timeoutNanos maximum time to wait in nanoseconds.
+     * @return the oldest element or NULL if the timeout elapsed or the buffer is {@link #close()}d and empty.
+     * @throws InterruptedException if the consumer thread was interrupted while waiting.
+     */
+    @Nullable
+    public E take(long timeoutNanos) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        E element;
+        while ((element = poll()) == null) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            // An element offered between the poll above and close() is still handed out.
+            if (mClosed)
+                return poll();
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return null;
+            if (mWaitStrategy == WaitStrategy.PARK) {
+                mWaiter = Thread.currentThread();
+                element = poll();
+                if (element == null && !mClosed)
+                    LockSupport.parkNanos(this, remaining);
+                mWaiter = null;
+                if (element != null)
+                    return element;
+            } else if (mWaitStrategy == WaitStrategy.YIELD) {
+                Thread.yield();
+            }
+        }
+        return element;
+    }
+
+    /**
+     * While closed, {@link OverflowPolicy#BLOCK} no longer waits for the consumer and discards new elements instead,
+     * and {@link #take()} returns NULL instead of waiting once the buffer is empty.
+     * Use this when the consumer stops, so neither side can get stuck.
+     */
+    public void close() {
+        mClosed = true;
+        Thread producer = mBlockedProducer;
+        if (producer != null)
+            LockSupport.unpark(producer);
+        Thread waiter = mWaiter;
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+    }
+
+    /**
+     * Reverts {@link #close()}.
+     */
+    public void open() {
+        mClosed = false;
+    }
+
+    /**
+     * Approximate number of elements, exact if called from the producer or consumer while the other side is idle.
+     */
+    public int size() {
+        long size = mTail.get() - mHead.get();
+        if (size < 0)
+            return 0;
+        return (int) Math.min(size, mBuffer.length);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
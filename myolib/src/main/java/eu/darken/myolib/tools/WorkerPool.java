@@ -0,0 +1,227 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed number of worker threads shared by Myos and processors, so the thread count doesn't grow with each device or processor.
+ * Tasks are taken from three priority lanes, higher lanes first, FIFO within a lane.
+ * <p>
+ * Submitting a task and (re)scheduling a {@link Timer} doesn't allocate.
+ * A task that blocks occupies a worker, size the pool accordingly.
+ */
+public class WorkerPool implements Executor {
+    private static final String TAG = "MyoLib:WorkerPool";
+    private static WorkerPool sShared;
+
+    public enum Priority {
+        /**
+         * E.g. device dispatch, which only sends short GATT commands.
+         */
+        HIGH,
+        /**
+         * Default for processors.
+         */
+        NORMAL,
+        /**
+         * E.g. processors doing expensive work on low rate data.
+         */
+        LOW
+    }
+
+    private final Object mLock = new Object();
+    private final ArrayDeque<Runnable>[] mLanes;
+    private final List<Timer> mTimers = new ArrayList<>();
+    private final Thread[] mThreads;
+    private final int mThreadPriority;
+    private boolean mShutdown = false;
+
+    /**
+     * A delayed task that can be re-armed without allocating.
+     * Once due, its task is queued like {@link #execute(Runnable, Priority)}.
+     */
+    public class Timer {
+        private final Runnable mTask;
+        private final Priority mPriority;
+        private long mDeadline;
+        private boolean mScheduled;
+
+        private Timer(Runnable task, Priority priority) {
+            mTask = task;
+            mPriority = priority;
+        }
+
+        /**
+         * Replaces any pending deadline.
+         *
+         * @param delayNanos time from now in nanoseconds.
+         */
+        public void schedule(long delayNanos) {
+            synchronized (mLock) {
+                mDeadline = System.nanoTime() + delayNanos;
+                if (!mScheduled) {
+                    mScheduled = true;
+                    mTimers.add(this);
+                }
+                mLock.notifyAll();
+            }
+        }
+
+        public void cancel() {
+            synchronized (mLock) {
+                if (mScheduled) {
+                    mScheduled = false;
+                    mTimers.remove(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name           prefix for the thread names.
+     * @param threadCount    number of worker threads, at least 1.
+     * @param threadPriority android thread priority of the workers, e.g. {@link android.os.Process#THREAD_PRIORITY_DEFAULT}
+     */
+    @SuppressWarnings("unchecked")
+    public WorkerPool(String name, int threadCount, int threadPriority) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        mThreadPriority = threadPriority;
+        mLanes = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < mLanes.length; i++)
+            mLanes[i] = new ArrayDeque<>();
+        mThreads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            mThreads[i] = new Thread(mWorker, name + "-" + i);
+            mThreads[i].setDaemon(true);
+            mThreads[i].start();
+        }
+    }
+
+    /**
+     * A process wide pool with one worker per CPU core (at least two).
+     */
+    public static synchronized WorkerPool getShared() {
+        if (sShared == null)
+            sShared = new WorkerPool("MyoLib:Worker", Math.max(2, Runtime.getRuntime().availableProcessors()), android.os.Process.THREAD_PRIORITY_DEFAULT);
+        return sShared;
+    }
+
+    public int getThreadCount() {
+        return mThreads.length;
+    }
+
+    /**
+     * Same as {@link #execute(Runnable, Priority)} with {@link Priority#NORMAL}.
+     */
+    @Override
+    public void execute(Runnable task) {
+        execute(task, Priority.NORMAL);
+    }
+
+    /**
+     * @throws IllegalStateException if the pool was shut down.
+     */
+    public void execute(Runnable task, Priority priority) {
+        synchronized (mLock) {
+            if (mShutdown)
+                throw new IllegalStateException("WorkerPool is shut down.");
+            mLanes[priority.ordinal()].add(task);
+            mLock.notify();
+        }
+    }
+
+    /**
+     * @param task     run each time the timer is due.
+     * @param priority lane the task is queued in.
+     * @return a timer that is not scheduled yet.
+     */
+    public Timer newTimer(Runnable task, Priority priority) {
+        return new Timer(task, priority);
+    }
+
+    /**
+     * Workers finish their current task and stop, queued tasks and timers are discarded.
+     */
+    public void shutdown() {
+        synchronized (mLock) {
+            mShutdown = true;
+            for (ArrayDeque<Runnable> lane : mLanes)
+                lane.clear();
+            for (Timer timer : mTimers)
+                timer.mScheduled = false;
+            mTimers.clear();
+            mLock.notifyAll();
+        }
+    }
+
+    public boolean isShutdown() {
+        synchronized (mLock) {
+            return mShutdown;
+        }
+    }
+
+    /**
+     * @return the next task or NULL if the pool was shut down.
+     */
+    private Runnable awaitTask() throws InterruptedException {
+        synchronized (mLock) {
+            while (!mShutdown) {
+                final long now = System.nanoTime();
+                long nextDeadline = Long.MAX_VALUE;
+                for (int i = mTimers.size() - 1; i >= 0; i--) {
+                    Timer timer = mTimers.get(i);
+                    long remaining = timer.mDeadline - now;
+                    if (remaining <= 0) {
+                        mTimers.remove(i);
+                        timer.mScheduled = false;
+                        mLanes[timer.mPriority.ordinal()].add(timer.mTask);
+                    } else {
+                        nextDeadline = Math.min(nextDeadline, remaining);
+                    }
+                }
+                for (ArrayDeque<Runnable> lane : mLanes) {
+                    Runnable task = lane.poll();
+                    if (task != null)
+                        return task;
+                }
+                if (nextDeadline == Long.MAX_VALUE)
+                    mLock.wait();
+                else
+                    TimeUnit.NANOSECONDS.timedWait(mLock, nextDeadline);
+            }
+            return null;
+        }
+    }
+
+    private final Runnable mWorker = new Runnable() {
+        @Override
+        public void run() {
+            android.os.Process.setThreadPriority(mThreadPriority);
+            while (true) {
+                Runnable task;
+                try {
+                    task = awaitTask();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (task == null)
+                    return;
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    // Errors too, each dead worker would shrink the pool for good.
+                    Logy.e(TAG, "Task failed.", e);
+                }
+            }
+        }
+    };
+}
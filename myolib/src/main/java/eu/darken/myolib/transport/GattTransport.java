@@ -0,0 +1,230 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.transport;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import eu.darken.myolib.tools.ApiHelper;
+
+/**
+ * {@link MyoTransport} using Android's {@link BluetoothGatt}.
+ */
+public class GattTransport implements MyoTransport {
+    private final Context mContext;
+    private final BluetoothDevice mDevice;
+    private volatile BluetoothGatt mBluetoothGatt;
+    private volatile Callback mCallback;
+    /**
+     * {@link BluetoothGattCharacteristic}s and {@link BluetoothGattDescriptor}s by handle, and the reverse for callbacks.
+     * Guarded by the list, cleared on each service discovery.
+     */
+    private final List<Object> mHandles = new ArrayList<>();
+    private final Map<Object, Integer> mHandleIndex = new IdentityHashMap<>();
+
+    public GattTransport(Context context, BluetoothDevice device) {
+        mContext = context;
+        mDevice = device;
+    }
+
+    public BluetoothDevice getBluetoothDevice() {
+        return mDevice;
+    }
+
+    @Override
+    public String getDeviceAddress() {
+        return mDevice.getAddress();
+    }
+
+    @Nullable
+    @Override
+    public String getDeviceName() {
+        return mDevice.getName();
+    }
+
+    @Override
+    public void connect(Callback callback) {
+        mCallback = callback;
+        mBluetoothGatt = mDevice.connectGatt(mContext, true, mGattCallback);
+    }
+
+    @Override
+    public void disconnect() {
+        BluetoothGatt gatt = mBluetoothGatt;
+        mBluetoothGatt = null;
+        if (gatt != null) {
+            gatt.disconnect();
+            gatt.close();
+        }
+    }
+
+    @Override
+    public boolean discoverServices() {
+        BluetoothGatt gatt = mBluetoothGatt;
+        return gatt != null && gatt.discoverServices();
+    }
+
+    @Nullable
+    private BluetoothGattCharacteristic getCharacteristic(BluetoothGatt gatt, UUID serviceUUID, UUID characteristicUUID) {
+        if (gatt == null)
+            return null;
+        BluetoothGattService service = gatt.getService(serviceUUID);
+        if (service == null)
+            return null;
+        return service.getCharacteristic(characteristicUUID);
+    }
+
+    @Nullable
+    private BluetoothGattDescriptor getDescriptor(BluetoothGatt gatt, UUID serviceUUID, UUID characteristicUUID, UUID descriptorUUID) {
+        BluetoothGattCharacteristic characteristic = getCharacteristic(gatt, serviceUUID, characteristicUUID);
+        if (characteristic == null)
+            return null;
+        return characteristic.getDescriptor(descriptorUUID);
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID serviceUUID, UUID characteristicUUID) {
+        return getCharacteristic(mBluetoothGatt, serviceUUID, characteristicUUID) != null;
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(UUID serviceUUID, UUID characteristicUUID, boolean enable) {
+        BluetoothGatt gatt = mBluetoothGatt;
+        BluetoothGattCharacteristic characteristic = getCharacteristic(gatt, serviceUUID, characteristicUUID);
+        return characteristic != null && gatt.setCharacteristicNotification(characteristic, enable);
+    }
+
+    @Override
+    public int resolveHandle(UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID) {
+        BluetoothGatt gatt = mBluetoothGatt;
+        Object target;
+        if (descriptorUUID == null)
+            target = getCharacteristic(gatt, serviceUUID, characteristicUUID);
+        else
+            target = getDescriptor(gatt, serviceUUID, characteristicUUID, descriptorUUID);
+        if (target == null)
+            return NO_HANDLE;
+        synchronized (mHandles) {
+            Integer handle = mHandleIndex.get(target);
+            if (handle == null) {
+                handle = mHandles.size();
+                mHandles.add(target);
+                mHandleIndex.put(target, handle);
+            }
+            return handle;
+        }
+    }
+
+    @Nullable
+    private Object getTarget(int handle) {
+        synchronized (mHandles) {
+            return handle >= 0 && handle < mHandles.size() ? mHandles.get(handle) : null;
+        }
+    }
+
+    private int getHandle(Object target) {
+        synchronized (mHandles) {
+            Integer handle = mHandleIndex.get(target);
+            return handle != null ? handle : NO_HANDLE;
+        }
+    }
+
+    @Override
+    public boolean read(int handle) {
+        BluetoothGatt gatt = mBluetoothGatt;
+        Object target = getTarget(handle);
+        if (gatt == null || target == null)
+            return false;
+        if (target instanceof BluetoothGattDescriptor)
+            return gatt.readDescriptor((BluetoothGattDescriptor) target);
+        return gatt.readCharacteristic((BluetoothGattCharacteristic) target);
+    }
+
+    @Override
+    public boolean write(int handle, byte[] value, int writeType) {
+        BluetoothGatt gatt = mBluetoothGatt;
+        Object target = getTarget(handle);
+        if (gatt == null || target == null)
+            return false;
+        if (target instanceof BluetoothGattDescriptor) {
+            BluetoothGattDescriptor descriptor = (BluetoothGattDescriptor) target;
+            descriptor.setValue(value);
+            return gatt.writeDescriptor(descriptor);
+        }
+        BluetoothGattCharacteristic characteristic = (BluetoothGattCharacteristic) target;
+        // The write type sticks to the characteristic object, so it's set for every write. Unsupported types fall back to the default.
+        if (writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0)
+            writeType = BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+        characteristic.setWriteType(writeType);
+        characteristic.setValue(value);
+        return gatt.writeCharacteristic(characteristic);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public void requestConnectionPriority(int priority) {
+        BluetoothGatt gatt = mBluetoothGatt;
+        if (gatt != null && ApiHelper.hasLolliPop())
+            gatt.requestConnectionPriority(priority);
+    }
+
+    private final BluetoothGattCallback mGattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            mCallback.onConnectionStateChange(status, newState);
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            // Discovery creates new characteristic and descriptor objects.
+            synchronized (mHandles) {
+                mHandles.clear();
+                mHandleIndex.clear();
+            }
+            mCallback.onServicesDiscovered(status);
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            mCallback.onRead(getHandle(characteristic), characteristic.getValue(), status);
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            mCallback.onWrite(getHandle(characteristic), status);
+        }
+
+        @Override
+        public void onDescriptorRead(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            mCallback.onRead(getHandle(descriptor), descriptor.getValue(), status);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            mCallback.onWrite(getHandle(descriptor), status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            mCallback.onCharacteristicChanged(characteristic.getService().getUuid(), characteristic.getUuid(), characteristic.getValue());
+        }
+    };
+}
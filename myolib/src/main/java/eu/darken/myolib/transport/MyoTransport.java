@@ -0,0 +1,114 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.transport;
+
+import android.support.annotation.Nullable;
+
+import java.util.UUID;
+
+/**
+ * The link between {@link eu.darken.myolib.BaseMyo} and a device.
+ * Mirrors the GATT operations the library needs, but only deals in UUIDs, handles and byte arrays,
+ * so it can be backed by Android's bluetooth stack ({@link GattTransport}) or something else ({@link SimulatedMyo}).
+ * <p>
+ * Reads and writes address a characteristic or descriptor by a handle from {@link #resolveHandle(UUID, UUID, UUID)},
+ * so neither side has to look up services or compare UUIDs per operation.
+ * <p>
+ * Like on Android, only one read or write may be outstanding at a time,
+ * each accepted one is answered by exactly one {@link Callback} call unless the connection is lost.
+ * Status and state values are the ones of {@link android.bluetooth.BluetoothGatt} and {@link android.bluetooth.BluetoothProfile}.
+ */
+public interface MyoTransport {
+    /**
+     * See {@link #resolveHandle(UUID, UUID, UUID)}
+     */
+    int NO_HANDLE = -1;
+
+    /**
+     * Called on a thread of the transport, don't block.
+     */
+    interface Callback {
+        /**
+         * @param newState e.g. {@link android.bluetooth.BluetoothProfile#STATE_CONNECTED}
+         */
+        void onConnectionStateChange(int status, int newState);
+
+        void onServicesDiscovered(int status);
+
+        /**
+         * @param handle of the characteristic or descriptor, see {@link #read(int)}
+         */
+        void onRead(int handle, byte[] value, int status);
+
+        /**
+         * @param handle of the characteristic or descriptor, see {@link #write(int, byte[], int)}
+         */
+        void onWrite(int handle, int status);
+
+        /**
+         * A notification or indication.
+         */
+        void onCharacteristicChanged(UUID serviceUUID, UUID characteristicUUID, byte[] value);
+    }
+
+    String getDeviceAddress();
+
+    @Nullable
+    String getDeviceName();
+
+    /**
+     * Starts connecting, keeps reconnecting until {@link #disconnect()}.
+     */
+    void connect(Callback callback);
+
+    /**
+     * Disconnects and releases all resources, no more callbacks follow.
+     */
+    void disconnect();
+
+    boolean discoverServices();
+
+    /**
+     * Only valid after {@link Callback#onServicesDiscovered(int)}.
+     */
+    boolean hasCharacteristic(UUID serviceUUID, UUID characteristicUUID);
+
+    /**
+     * Enables local delivery of notifications, the device also needs the matching descriptor write.
+     */
+    boolean setCharacteristicNotification(UUID serviceUUID, UUID characteristicUUID, boolean enable);
+
+    /**
+     * Only valid after {@link Callback#onServicesDiscovered(int)}, a new discovery invalidates all handles.
+     * Resolving the same target again returns the same handle.
+     *
+     * @param descriptorUUID NULL for the characteristic itself.
+     * @return a small non-negative number, {@link #NO_HANDLE} if the target doesn't exist.
+     */
+    int resolveHandle(UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID);
+
+    /**
+     * @return false if the handle is invalid or the operation couldn't be started, no callback follows then.
+     */
+    boolean read(int handle);
+
+    /**
+     * See {@link #read(int)}
+     * <p>
+     * With {@link android.bluetooth.BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE} the callback comes once the write was buffered
+     * for sending, not when the device handled it. That callback is the flow control, the next write must wait for it.
+     * Its status only tells whether the write was buffered, the device never reports whether the command worked.
+     *
+     * @param writeType {@link android.bluetooth.BluetoothGattCharacteristic#WRITE_TYPE_DEFAULT} or {@link android.bluetooth.BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE},
+     *                  ignored for descriptors.
+     */
+    boolean write(int handle, byte[] value, int writeType);
+
+    /**
+     * @param priority e.g. {@link android.bluetooth.BluetoothGatt#CONNECTION_PRIORITY_HIGH}
+     */
+    void requestConnectionPriority(int priority);
+}
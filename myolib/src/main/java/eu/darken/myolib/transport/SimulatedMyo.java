@@ -0,0 +1,483 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.transport;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothProfile;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.MyoCmds;
+import eu.darken.myolib.MyoInfo;
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.processor.classifier.ArmSyncedClassifierEvent;
+import eu.darken.myolib.processor.classifier.ClassifierEvent;
+import eu.darken.myolib.processor.classifier.PoseClassifierEvent;
+import eu.darken.myolib.services.Battery;
+import eu.darken.myolib.services.Classifier;
+import eu.darken.myolib.services.Control;
+import eu.darken.myolib.services.Device;
+import eu.darken.myolib.services.Emg;
+import eu.darken.myolib.services.Generic;
+import eu.darken.myolib.services.Imu;
+import eu.darken.myolib.services.MyoCharacteristic;
+import eu.darken.myolib.services.MyoDescriptor;
+
+/**
+ * A Myo that only exists in this process, for tests and benchmarks without an armband.
+ * <p>
+ * Once the matching notifications are enabled and {@link MyoCmds#buildSensorModeCmd(MyoCmds.EmgMode, MyoCmds.ImuMode, MyoCmds.ClassifierMode)} was written,
+ * it streams EMG at 200Hz (two samples per packet, round robin over the four {@link Emg} characteristics),
+ * IMU data at 50Hz and a classifier pose indication every second (the first one preceded by an arm synced event).
+ * Reads and writes are answered after {@link #setLatency(long)}, optionally failing or lost, i.e. answered much later.
+ * Like on Android only one can be outstanding, others are refused meanwhile.
+ * Writes without response are confirmed right away, failing or lost ones are silently dropped.
+ * All callbacks come from a single thread of the simulator.
+ */
+public class SimulatedMyo implements MyoTransport {
+    private static final long EMG_INTERVAL_US = 10 * 1000;
+    private static final long IMU_INTERVAL_US = 20 * 1000;
+    private static final long CLASSIFIER_INTERVAL_US = 1000 * 1000;
+    private static final MyoDescriptor[] EMG_DESCRIPTORS = new MyoDescriptor[]{
+            Emg.EMGDATA0_DESCRIPTOR, Emg.EMGDATA1_DESCRIPTOR, Emg.EMGDATA2_DESCRIPTOR, Emg.EMGDATA3_DESCRIPTOR
+    };
+    private static final PoseClassifierEvent.Pose[] POSE_CYCLE = new PoseClassifierEvent.Pose[]{
+            PoseClassifierEvent.Pose.REST, PoseClassifierEvent.Pose.FIST, PoseClassifierEvent.Pose.WAVE_IN,
+            PoseClassifierEvent.Pose.WAVE_OUT, PoseClassifierEvent.Pose.FINGERS_SPREAD, PoseClassifierEvent.Pose.DOUBLE_TAP
+    };
+
+    private final String mDeviceAddress;
+    private final Set<String> mCharacteristics = new HashSet<>();
+    /**
+     * {service, characteristic, descriptor} UUIDs by handle, cleared on each service discovery.
+     */
+    private final List<UUID[]> mHandles = new ArrayList<>();
+    private final Map<String, byte[]> mValues = new HashMap<>();
+    private final Set<UUID> mEnabledNotifications = new HashSet<>();
+    private final Random mRandom = new Random();
+    private volatile long mLatency = 5;
+    private volatile double mErrorRate = 0;
+    private volatile double mLossRate = 0;
+    private volatile long mLossDelay = 1000;
+    /**
+     * Reads and writes that weren't answered yet.
+     */
+    private int mOutstanding;
+    private ScheduledExecutorService mExecutor;
+    private Callback mCallback;
+    private volatile byte mEmgMode = MyoCmds.EmgMode.NONE.getByte();
+    private volatile byte mImuMode = MyoCmds.ImuMode.NONE.getByte();
+    private volatile byte mClassifierMode = MyoCmds.ClassifierMode.DISABLED.getByte();
+    private byte[] mLastCommand;
+    private int mCommandCount;
+    private long mEmgCounter;
+    private long mImuCounter;
+    private int mPoseCounter;
+
+    public SimulatedMyo(String deviceAddress) {
+        mDeviceAddress = deviceAddress;
+        for (MyoCharacteristic characteristic : new MyoCharacteristic[]{
+                Control.MYOINFO, Control.FIRMWARE_VERSION, Control.COMMAND,
+                Emg.EMGDATA0, Emg.EMGDATA1, Emg.EMGDATA2, Emg.EMGDATA3,
+                Imu.IMUDATA, Imu.MOTIONEVENT, Classifier.CLASSIFIEREVENT,
+                Battery.BATTERYLEVEL, Device.MANUFACTURER_NAME, Generic.DEVICE_NAME}) {
+            mCharacteristics.add(MyoMsg.toIdentifier(characteristic.getServiceUUID(), characteristic.getCharacteristicUUID(), null));
+        }
+        setValue(Control.MYOINFO, new byte[]{
+                0x01, 0x02, 0x03, 0x04, 0x05, 0x06, // serial number
+                (byte) PoseClassifierEvent.Pose.DOUBLE_TAP.getValue(), 0, // unlock pose
+                MyoInfo.ActiveClassifierType.BUILTIN.getValue(), 0, 0, 0, // classifier type, index, custom classifier, stream indicating
+                MyoInfo.Sku.BLACK.getValue(),
+                0, 0, 0, 0, 0, 0, 0 // reserved
+        });
+        setValue(Control.FIRMWARE_VERSION, new byte[]{1, 0, 5, 0, (byte) 0xB2, 0x07, 2, 0});
+        setValue(Battery.BATTERYLEVEL, new byte[]{100});
+        setValue(Device.MANUFACTURER_NAME, "Thalmic Labs".getBytes());
+        setValue(Generic.DEVICE_NAME, "Simulated Myo".getBytes());
+    }
+
+    /**
+     * @param latency time in milliseconds until a connection, discovery, read or write is answered, default 5ms.
+     */
+    public void setLatency(long latency) {
+        mLatency = latency;
+    }
+
+    public long getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * @param errorRate 0-1, chance that a read or write is answered with {@link BluetoothGatt#GATT_FAILURE}.
+     */
+    public void setErrorRate(double errorRate) {
+        mErrorRate = errorRate;
+    }
+
+    /**
+     * @param lossRate 0-1, chance that a read or write is only answered after the {@link #setLossDelay(long)}.
+     */
+    public void setLossRate(double lossRate) {
+        mLossRate = lossRate;
+    }
+
+    /**
+     * @param lossDelay time in milliseconds until a lost read or write is answered after all, default 1s.
+     *                  No other read or write can be started meanwhile.
+     */
+    public void setLossDelay(long lossDelay) {
+        mLossDelay = lossDelay;
+    }
+
+    /**
+     * Makes error injection reproducible.
+     */
+    public void setSeed(long seed) {
+        synchronized (mRandom) {
+            mRandom.setSeed(seed);
+        }
+    }
+
+    /**
+     * Changes what a read of this characteristic returns.
+     */
+    public synchronized void setValue(MyoCharacteristic characteristic, byte[] value) {
+        mValues.put(MyoMsg.toIdentifier(characteristic.getServiceUUID(), characteristic.getCharacteristicUUID(), null), value.clone());
+    }
+
+    /**
+     * @return the last value written to {@link Control#COMMAND}, NULL if none.
+     */
+    @Nullable
+    public synchronized byte[] getLastCommand() {
+        return mLastCommand != null ? mLastCommand.clone() : null;
+    }
+
+    public synchronized int getCommandCount() {
+        return mCommandCount;
+    }
+
+    @Override
+    public String getDeviceAddress() {
+        return mDeviceAddress;
+    }
+
+    @Nullable
+    @Override
+    public synchronized String getDeviceName() {
+        return new String(mValues.get(MyoMsg.toIdentifier(Generic.DEVICE_NAME.getServiceUUID(), Generic.DEVICE_NAME.getCharacteristicUUID(), null)));
+    }
+
+    @Override
+    public synchronized void connect(Callback callback) {
+        if (mExecutor != null)
+            return;
+        mCallback = callback;
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SimulatedMyo:" + mDeviceAddress);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onConnectionStateChange(BluetoothGatt.GATT_SUCCESS, BluetoothProfile.STATE_CONNECTED);
+            }
+        }, mLatency, TimeUnit.MILLISECONDS);
+        mExecutor.scheduleAtFixedRate(mEmgStream, EMG_INTERVAL_US, EMG_INTERVAL_US, TimeUnit.MICROSECONDS);
+        mExecutor.scheduleAtFixedRate(mImuStream, IMU_INTERVAL_US, IMU_INTERVAL_US, TimeUnit.MICROSECONDS);
+        mExecutor.scheduleAtFixedRate(mClassifierStream, CLASSIFIER_INTERVAL_US, CLASSIFIER_INTERVAL_US, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        if (mExecutor == null)
+            return;
+        mExecutor.shutdownNow();
+        mExecutor = null;
+        mOutstanding = 0;
+        mEnabledNotifications.clear();
+        mEmgMode = MyoCmds.EmgMode.NONE.getByte();
+        mImuMode = MyoCmds.ImuMode.NONE.getByte();
+        mClassifierMode = MyoCmds.ClassifierMode.DISABLED.getByte();
+    }
+
+    @Override
+    public boolean discoverServices() {
+        return respond(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedMyo.this) {
+                    mHandles.clear();
+                }
+                mCallback.onServicesDiscovered(BluetoothGatt.GATT_SUCCESS);
+            }
+        });
+    }
+
+    @Override
+    public synchronized boolean hasCharacteristic(UUID serviceUUID, UUID characteristicUUID) {
+        return mCharacteristics.contains(MyoMsg.toIdentifier(serviceUUID, characteristicUUID, null));
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(UUID serviceUUID, UUID characteristicUUID, boolean enable) {
+        return hasCharacteristic(serviceUUID, characteristicUUID);
+    }
+
+    @Override
+    public synchronized int resolveHandle(UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID) {
+        if (!hasCharacteristic(serviceUUID, characteristicUUID))
+            return NO_HANDLE;
+        UUID[] target = new UUID[]{serviceUUID, characteristicUUID, descriptorUUID};
+        for (int handle = 0; handle < mHandles.size(); handle++) {
+            if (Arrays.equals(mHandles.get(handle), target))
+                return handle;
+        }
+        mHandles.add(target);
+        return mHandles.size() - 1;
+    }
+
+    /**
+     * @return {service, characteristic, descriptor}, NULL if the handle is invalid.
+     */
+    @Nullable
+    private synchronized UUID[] getTarget(int handle) {
+        return handle >= 0 && handle < mHandles.size() ? mHandles.get(handle) : null;
+    }
+
+    @Override
+    public boolean read(final int handle) {
+        final UUID[] target = getTarget(handle);
+        if (target == null)
+            return false;
+        return startOperation(new Runnable() {
+            @Override
+            public void run() {
+                byte[] value;
+                synchronized (SimulatedMyo.this) {
+                    if (target[2] == null) {
+                        value = mValues.get(MyoMsg.toIdentifier(target[0], target[1], null));
+                        value = value != null ? value.clone() : new byte[0];
+                    } else {
+                        value = new byte[]{(byte) (mEnabledNotifications.contains(target[1]) ? 1 : 0), 0};
+                    }
+                }
+                int status = roll(mErrorRate) ? BluetoothGatt.GATT_FAILURE : BluetoothGatt.GATT_SUCCESS;
+                mCallback.onRead(handle, value, status);
+            }
+        });
+    }
+
+    @Override
+    public boolean write(final int handle, byte[] value, int writeType) {
+        final UUID[] target = getTarget(handle);
+        if (target == null)
+            return false;
+        final byte[] copy = value.clone();
+        if (target[2] == null && writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE)
+            return writeWithoutResponse(handle, target, copy);
+        return startOperation(new Runnable() {
+            @Override
+            public void run() {
+                int status = BluetoothGatt.GATT_FAILURE;
+                if (!roll(mErrorRate)) {
+                    status = BluetoothGatt.GATT_SUCCESS;
+                    applyWrite(target, copy);
+                }
+                mCallback.onWrite(handle, status);
+            }
+        });
+    }
+
+    private synchronized boolean writeWithoutResponse(final int handle, final UUID[] target, final byte[] value) {
+        if (mExecutor == null || mOutstanding > 0)
+            return false;
+        mOutstanding++;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedMyo.this) {
+                    mOutstanding--;
+                }
+                mCallback.onWrite(handle, BluetoothGatt.GATT_SUCCESS);
+            }
+        });
+        if (!roll(mLossRate) && !roll(mErrorRate)) {
+            mExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    applyWrite(target, value);
+                }
+            }, mLatency, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private synchronized void applyWrite(UUID[] target, byte[] value) {
+        if (target[2] != null) {
+            if (value.length > 0 && value[0] != 0)
+                mEnabledNotifications.add(target[1]);
+            else
+                mEnabledNotifications.remove(target[1]);
+        } else if (target[1].equals(Control.COMMAND.getCharacteristicUUID())) {
+            onCommand(value);
+        } else {
+            mValues.put(MyoMsg.toIdentifier(target[0], target[1], null), value);
+        }
+    }
+
+    @Override
+    public void requestConnectionPriority(int priority) {
+
+    }
+
+    /**
+     * Runs the answer to a read or write after the latency, or after the loss delay if the loss rate hits.
+     *
+     * @return false if not connected or another read or write is outstanding.
+     */
+    private synchronized boolean startOperation(final Runnable response) {
+        if (mExecutor == null || mOutstanding > 0)
+            return false;
+        mOutstanding++;
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedMyo.this) {
+                    mOutstanding--;
+                }
+                response.run();
+            }
+        }, roll(mLossRate) ? mLossDelay : mLatency, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Runs the response after the latency, unless the loss rate drops it.
+     *
+     * @return false if not connected.
+     */
+    private synchronized boolean respond(Runnable response) {
+        if (mExecutor == null)
+            return false;
+        if (!roll(mLossRate))
+            mExecutor.schedule(response, mLatency, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private boolean roll(double rate) {
+        if (rate <= 0)
+            return false;
+        synchronized (mRandom) {
+            return mRandom.nextDouble() < rate;
+        }
+    }
+
+    /**
+     * Caller holds the lock.
+     */
+    private void onCommand(byte[] command) {
+        mLastCommand = command;
+        mCommandCount++;
+        // myohw_command_set_mode_t
+        if (command.length >= 5 && command[0] == 0x01) {
+            mEmgMode = command[2];
+            mImuMode = command[3];
+            mClassifierMode = command[4];
+            if (mEmgMode == MyoCmds.EmgMode.RAW.getByte())
+                mClassifierMode = MyoCmds.ClassifierMode.DISABLED.getByte();
+        }
+    }
+
+    private synchronized boolean isStreaming(MyoCharacteristic characteristic, boolean modeEnabled) {
+        return modeEnabled && mEnabledNotifications.contains(characteristic.getCharacteristicUUID());
+    }
+
+    private void sendNotification(MyoCharacteristic characteristic, byte[] value) {
+        mCallback.onCharacteristicChanged(characteristic.getServiceUUID(), characteristic.getCharacteristicUUID(), value);
+    }
+
+    private void sendArmSynced() {
+        sendNotification(Classifier.CLASSIFIEREVENT, new byte[]{
+                ClassifierEvent.Type.ARM_SYNCED.getValue(),
+                ArmSyncedClassifierEvent.Arm.RIGHT.getValue(),
+                ArmSyncedClassifierEvent.Direction.TOWARDS_WRIST.getValue()
+        });
+    }
+
+    private static void putInt16(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >> 8);
+    }
+
+    private final Runnable mEmgStream = new Runnable() {
+        @Override
+        public void run() {
+            long counter = mEmgCounter++;
+            MyoDescriptor characteristic = EMG_DESCRIPTORS[(int) (counter % EMG_DESCRIPTORS.length)];
+            if (!isStreaming(characteristic, mEmgMode != MyoCmds.EmgMode.NONE.getByte()))
+                return;
+            byte[] data = new byte[16];
+            for (int frame = 0; frame < 2; frame++) {
+                double t = (counter * 2 + frame) / 200.0;
+                for (int channel = 0; channel < 8; channel++)
+                    data[frame * 8 + channel] = (byte) (Math.sin(2 * Math.PI * (channel + 1) * t) * 100);
+            }
+            sendNotification(characteristic, data);
+        }
+    };
+
+    private final Runnable mImuStream = new Runnable() {
+        @Override
+        public void run() {
+            long counter = mImuCounter++;
+            byte mode = mImuMode;
+            if (!isStreaming(Imu.IMUDATA, mode == MyoCmds.ImuMode.DATA.getByte() || mode == MyoCmds.ImuMode.ALL.getByte() || mode == MyoCmds.ImuMode.RAW.getByte()))
+                return;
+            // Slow rotation around z, gravity on z, matching gyroscope reading.
+            double angle = counter / 50.0 * 0.5;
+            byte[] data = new byte[20];
+            putInt16(data, 0, (int) (Math.cos(angle / 2) * 16384));
+            putInt16(data, 6, (int) (Math.sin(angle / 2) * 16384));
+            putInt16(data, 12, 2048);
+            putInt16(data, 18, (int) (Math.toDegrees(0.5) * 16));
+            sendNotification(Imu.IMUDATA, data);
+        }
+    };
+
+    private final Runnable mClassifierStream = new Runnable() {
+        @Override
+        public void run() {
+            if (!isStreaming(Classifier.CLASSIFIEREVENT, mClassifierMode != MyoCmds.ClassifierMode.DISABLED.getByte()))
+                return;
+            if (mPoseCounter == 0)
+                sendArmSynced();
+            PoseClassifierEvent.Pose pose = POSE_CYCLE[mPoseCounter++ % POSE_CYCLE.length];
+            byte[] data = new byte[3];
+            data[0] = ClassifierEvent.Type.POSE.getValue();
+            putInt16(data, 1, pose.getValue());
+            sendNotification(Classifier.CLASSIFIEREVENT, data);
+        }
+    };
+}
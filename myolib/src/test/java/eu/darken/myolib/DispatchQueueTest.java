@@ -0,0 +1,107 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.ReadMsg;
+import eu.darken.myolib.services.Battery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DispatchQueueTest {
+
+    private static MyoMsg msg(MyoMsg.Priority priority) {
+        MyoMsg msg = new ReadMsg(Battery.BATTERYLEVEL, null);
+        msg.setPriority(priority);
+        return msg;
+    }
+
+    @Test
+    public void testPriorityOrder() {
+        DispatchQueue queue = new DispatchQueue();
+        MyoMsg background = msg(MyoMsg.Priority.BACKGROUND);
+        MyoMsg normal1 = msg(MyoMsg.Priority.NORMAL);
+        MyoMsg normal2 = msg(MyoMsg.Priority.NORMAL);
+        MyoMsg realtime = msg(MyoMsg.Priority.REALTIME);
+        queue.add(background);
+        queue.add(normal1);
+        queue.add(normal2);
+        queue.add(realtime);
+        assertEquals(4, queue.size());
+        assertSame(realtime, queue.peek());
+        assertSame(realtime, queue.poll());
+        assertSame(normal1, queue.poll());
+        assertSame(normal2, queue.poll());
+        assertSame(background, queue.poll());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testStarvation() {
+        DispatchQueue queue = new DispatchQueue();
+        MyoMsg background = msg(MyoMsg.Priority.BACKGROUND);
+        queue.add(background);
+        for (int i = 0; i < DispatchQueue.STARVATION_LIMIT + 2; i++)
+            queue.add(msg(MyoMsg.Priority.REALTIME));
+        for (int i = 0; i < DispatchQueue.STARVATION_LIMIT; i++)
+            assertEquals(MyoMsg.Priority.REALTIME, queue.poll().getPriority());
+        assertSame(background, queue.poll());
+        assertEquals(MyoMsg.Priority.REALTIME, queue.poll().getPriority());
+    }
+
+    @Test
+    public void testRemove() {
+        DispatchQueue queue = new DispatchQueue();
+        MyoMsg normal = msg(MyoMsg.Priority.NORMAL);
+        MyoMsg retry = msg(MyoMsg.Priority.NORMAL);
+        MyoMsg background = msg(MyoMsg.Priority.BACKGROUND);
+        queue.add(normal);
+        queue.add(background);
+        queue.addFirst(retry);
+        assertSame(retry, queue.peek(MyoMsg.Priority.NORMAL));
+
+        Iterator<MyoMsg> iterator = queue.iterator();
+        assertSame(retry, iterator.next());
+        assertSame(normal, iterator.next());
+        assertSame(background, iterator.next());
+        iterator.remove();
+        assertEquals(2, queue.size());
+
+        assertTrue(queue.remove(retry));
+        assertSame(normal, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testReplace() {
+        DispatchQueue queue = new DispatchQueue();
+        MyoMsg first = msg(MyoMsg.Priority.NORMAL);
+        MyoMsg old = msg(MyoMsg.Priority.NORMAL);
+        MyoMsg last = msg(MyoMsg.Priority.NORMAL);
+        queue.add(first);
+        queue.add(old);
+        queue.add(last);
+
+        // Takes over the place of the old message, even though its own lane differs.
+        MyoMsg replacement = msg(MyoMsg.Priority.REALTIME);
+        assertTrue(queue.replace(old, replacement));
+        assertFalse(queue.replace(old, replacement));
+        assertEquals(3, queue.size());
+        assertSame(first, queue.poll());
+        assertSame(replacement, queue.poll());
+        assertSame(last, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+}
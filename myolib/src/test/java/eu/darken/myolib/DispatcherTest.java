@@ -0,0 +1,250 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.metrics.GattMetrics;
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.ReadMsg;
+import eu.darken.myolib.msgs.WriteMsg;
+import eu.darken.myolib.services.Battery;
+import eu.darken.myolib.services.Control;
+import eu.darken.myolib.transport.GatedTransport;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the dispatcher against a {@link GatedTransport}, the tests decide when the link is busy.
+ */
+public class DispatcherTest {
+    private SimulatedMyo mSimulatedMyo;
+    private GatedTransport mTransport;
+    private Myo mMyo;
+
+    @Before
+    public void setUp() throws Exception {
+        mSimulatedMyo = new SimulatedMyo("00:00:00:00:03:01");
+        mTransport = new GatedTransport(mSimulatedMyo);
+        mMyo = new Myo(mTransport);
+        // The reads below are used to wait for the link, they must not come from the cache.
+        mMyo.getReadCache().setTtl(Battery.BATTERYLEVEL, 0);
+        // The first read waits for the connection, the second one for the notification setup after it.
+        mMyo.readBatteryLevel(null).get(5, TimeUnit.SECONDS);
+        mMyo.readBatteryLevel(null).get(5, TimeUnit.SECONDS);
+        // Held answers don't time out, unless a test asks for it.
+        mMyo.setTimeoutSendQueue(-1);
+    }
+
+    @After
+    public void tearDown() {
+        mTransport.release();
+        mMyo.disconnect();
+    }
+
+    @Test
+    public void testFastCommands() throws Exception {
+        mMyo.setFastCommands(true);
+        int commands = mSimulatedMyo.getCommandCount();
+
+        mTransport.hold();
+        List<MyoFuture<MyoMsg>> vibrates = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            vibrates.add(mMyo.writeVibrate(MyoCmds.VibrateType.SHORT, null));
+        // Not acknowledged, they don't wait for the held link.
+        for (MyoFuture<MyoMsg> vibrate : vibrates) {
+            vibrate.get(5, TimeUnit.SECONDS);
+            assertEquals(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE, ((WriteMsg) vibrate.getMsg()).getWriteType());
+        }
+        assertEquals(0, mTransport.getHeldCount());
+
+        // State changes are acknowledged.
+        MyoFuture<MyoMsg> unlock = mMyo.writeUnlock(MyoCmds.UnlockType.HOLD, null);
+        mTransport.awaitHeld(1);
+        assertFalse(unlock.isDone());
+        assertEquals(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, ((WriteMsg) unlock.getMsg()).getWriteType());
+        mTransport.release();
+        assertTrue(unlock.get(5, TimeUnit.SECONDS) != null);
+
+        MyoFuture<MyoMsg> mode = mMyo.writeMode(MyoCmds.EmgMode.NONE, MyoCmds.ImuMode.NONE, MyoCmds.ClassifierMode.DISABLED, null);
+        mode.get(5, TimeUnit.SECONDS);
+        assertEquals(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, ((WriteMsg) mode.getMsg()).getWriteType());
+        assertEquals(commands + 12, mSimulatedMyo.getCommandCount());
+    }
+
+    @Test
+    public void testRefusedSend() throws Exception {
+        MyoFuture<Integer> setup = mMyo.readBatteryLevel(null);
+        setup.get(5, TimeUnit.SECONDS);
+        GattMetrics.Target battery = mMyo.getGattMetrics().getTarget(setup.getMsg());
+        long retries = battery.getRetryCount();
+
+        // Retried after a backoff instead of failing right away.
+        mTransport.refuse(2);
+        assertEquals(100, (int) mMyo.readBatteryLevel(null).get(5, TimeUnit.SECONDS));
+        assertEquals(2, mTransport.getRefusedCount());
+        assertEquals(retries + 2, battery.getRetryCount());
+
+        // Gives up once the message's retries are used up.
+        mTransport.refuse(3);
+        final CountDownLatch done = new CountDownLatch(1);
+        ReadMsg msg = new ReadMsg(Battery.BATTERYLEVEL, new MyoMsg.Callback() {
+            @Override
+            public void onResult(MyoMsg msg) {
+                done.countDown();
+            }
+        });
+        msg.setRetryCounter(1);
+        mMyo.submit(msg);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(MyoMsg.State.ERROR, msg.getState());
+        assertEquals(4, mTransport.getRefusedCount());
+        assertEquals(retries + 3, battery.getRetryCount());
+    }
+
+    @Test
+    public void testRefusedTransactionSend() throws Exception {
+        final int commands = mSimulatedMyo.getCommandCount();
+        List<MyoMsg> msgs = Arrays.<MyoMsg>asList(
+                new WriteMsg(Control.COMMAND, MyoCmds.buildSleepModeCmd(MyoCmds.SleepMode.NEVER), null),
+                new WriteMsg(Control.COMMAND, MyoCmds.buildSetUnlockModeCmd(MyoCmds.UnlockType.HOLD), null));
+        mTransport.hold();
+        MyoFuture<List<MyoMsg>> future = mMyo.submitTransaction(msgs);
+        mTransport.awaitHeld(1);
+        // The second message is sent straight from the first one's callback.
+        mTransport.refuse(1);
+        mTransport.release();
+        assertEquals(msgs, future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, mTransport.getRefusedCount());
+        assertEquals(commands + 2, mSimulatedMyo.getCommandCount());
+    }
+
+    /**
+     * The answer to a read given up on arrives after all, while its retry is in flight on the same handle.
+     */
+    @Test
+    public void testLostOperation() throws Exception {
+        MyoFuture<Integer> setup = mMyo.readBatteryLevel(null);
+        setup.get(5, TimeUnit.SECONDS);
+        GattMetrics.Target battery = mMyo.getGattMetrics().getTarget(setup.getMsg());
+        final long timeouts = battery.getTimeoutCount();
+        final long retries = battery.getRetryCount();
+        final int operations = mTransport.getOperationCount();
+        final int refused = mTransport.getRefusedCount();
+
+        mMyo.setTimeoutSendQueue(50);
+        mTransport.hold();
+        final CountDownLatch done = new CountDownLatch(1);
+        ReadMsg msg = new ReadMsg(Battery.BATTERYLEVEL, new MyoMsg.Callback() {
+            @Override
+            public void onResult(MyoMsg msg) {
+                done.countDown();
+            }
+        });
+        mMyo.submit(msg);
+        mTransport.awaitHeld(1);
+        // Only the retry reads this.
+        mSimulatedMyo.setValue(Battery.BATTERYLEVEL, new byte[]{60});
+        mTransport.awaitHeld(2);
+        mTransport.release();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(MyoMsg.State.SUCCESS, msg.getState());
+        assertEquals(60, msg.getValue()[0]);
+        // Each read after the first one was a retry after a timeout. The Myo may still be busy with the lost read and
+        // refuse a retry, that one is retried again without a timeout.
+        final int resent = mTransport.getOperationCount() - operations - 1;
+        assertTrue(resent >= 1);
+        assertEquals(timeouts + resent, battery.getTimeoutCount());
+        assertEquals(retries + resent + mTransport.getRefusedCount() - refused, battery.getRetryCount());
+
+        // Nothing waits for the late answers anymore.
+        assertEquals(60, (int) mMyo.readBatteryLevel(null).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        int commands = mSimulatedMyo.getCommandCount();
+
+        // Keeps the link busy, so the modes below stay queued.
+        mTransport.hold();
+        MyoFuture<Integer> busy = mMyo.readBatteryLevel(null);
+        mTransport.awaitHeld(1);
+        MyoFuture<MyoMsg> first = mMyo.writeMode(MyoCmds.EmgMode.FILTERED, MyoCmds.ImuMode.NONE, MyoCmds.ClassifierMode.DISABLED, null);
+        MyoFuture<MyoMsg> second = mMyo.writeMode(MyoCmds.EmgMode.RAW, MyoCmds.ImuMode.DATA, MyoCmds.ClassifierMode.DISABLED, null);
+        MyoFuture<MyoMsg> latest = mMyo.writeMode(MyoCmds.EmgMode.NONE, MyoCmds.ImuMode.ALL, MyoCmds.ClassifierMode.ENABLED, null);
+        assertEquals(1, mMyo.getDispatchQueueSize());
+
+        mTransport.release();
+        busy.get(5, TimeUnit.SECONDS);
+        latest.get(5, TimeUnit.SECONDS);
+        assertTrue(first.isSuccessful());
+        assertTrue(second.isSuccessful());
+        assertEquals(commands + 1, mSimulatedMyo.getCommandCount());
+        assertEquals(MyoCmds.EmgMode.NONE, mMyo.getEmgMode());
+        assertEquals(MyoCmds.ImuMode.ALL, mMyo.getImuMode());
+    }
+
+    @Test
+    public void testCachedRead() throws Exception {
+        final int operations = mTransport.getOperationCount();
+        String name = mMyo.readDeviceName(null).get(5, TimeUnit.SECONDS);
+        assertEquals(operations + 1, mTransport.getOperationCount());
+        // From the cache, the link isn't used.
+        assertEquals(name, mMyo.readDeviceName(null).get(5, TimeUnit.SECONDS));
+        assertEquals(operations + 1, mTransport.getOperationCount());
+
+        // A write invalidates the cached value.
+        mMyo.writeDeviceName("Renamed", null).get(5, TimeUnit.SECONDS);
+        assertEquals("Renamed", mMyo.readDeviceName(null).get(5, TimeUnit.SECONDS));
+        assertEquals(operations + 3, mTransport.getOperationCount());
+    }
+
+    @Test
+    public void testReadAttach() throws Exception {
+        MyoFuture<Integer> setup = mMyo.readBatteryLevel(null);
+        setup.get(5, TimeUnit.SECONDS);
+        GattMetrics.Target battery = mMyo.getGattMetrics().getTarget(setup.getMsg());
+        final long reads = battery.getReadRtt().getCount();
+        final int operations = mTransport.getOperationCount();
+
+        // Attached to the one in flight.
+        mTransport.hold();
+        MyoFuture<Integer> inFlight = mMyo.readBatteryLevel(null);
+        mTransport.awaitHeld(1);
+        MyoFuture<Integer> attached = mMyo.readBatteryLevel(null);
+        assertEquals(0, mMyo.getDispatchQueueSize());
+        mTransport.release();
+        assertEquals(inFlight.get(5, TimeUnit.SECONDS), attached.get(5, TimeUnit.SECONDS));
+        assertEquals(reads + 1, battery.getReadRtt().getCount());
+        assertEquals(operations + 1, mTransport.getOperationCount());
+
+        // Attached to a queued one.
+        mTransport.hold();
+        MyoFuture<MyoMsg> busy = mMyo.writeVibrate(MyoCmds.VibrateType.SHORT, null);
+        mTransport.awaitHeld(2);
+        MyoFuture<Integer> queued = mMyo.readBatteryLevel(null);
+        attached = mMyo.readBatteryLevel(null);
+        assertEquals(1, mMyo.getDispatchQueueSize());
+        mTransport.release();
+        busy.get(5, TimeUnit.SECONDS);
+        assertEquals(queued.get(5, TimeUnit.SECONDS), attached.get(5, TimeUnit.SECONDS));
+        assertEquals(reads + 2, battery.getReadRtt().getCount());
+        assertEquals(operations + 3, mTransport.getOperationCount());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import eu.darken.myolib.metrics.GattMetrics;
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.ReadMsg;
+import eu.darken.myolib.msgs.WriteMsg;
+import eu.darken.myolib.services.Battery;
+import eu.darken.myolib.services.Emg;
+import eu.darken.myolib.transport.MyoTransport;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HandleTableTest {
+
+    @Test
+    public void testResolve() {
+        SimulatedMyo transport = new SimulatedMyo("00:00:00:00:00:01");
+        HandleTable table = new HandleTable(transport, new GattMetrics());
+        MyoMsg battery = new ReadMsg(Battery.BATTERYLEVEL, null);
+        MyoMsg descriptor = new WriteMsg(Emg.EMGDATA0_DESCRIPTOR, new byte[]{0x01, 0x00}, null);
+        final int handle = table.resolve(battery);
+        assertTrue(MyoTransport.NO_HANDLE != handle);
+        assertEquals(handle, battery.getHandle());
+        assertEquals(handle, table.resolve(new ReadMsg(Battery.BATTERYLEVEL, null)));
+        assertTrue(handle != table.resolve(descriptor));
+        assertNotNull(table.getTarget(handle));
+
+        MyoMsg missing = new ReadMsg(UUID.randomUUID(), UUID.randomUUID(), null);
+        assertEquals(MyoTransport.NO_HANDLE, table.resolve(missing));
+        assertNull(table.getSent(MyoTransport.NO_HANDLE));
+    }
+
+    @Test
+    public void testSentMsgs() {
+        HandleTable table = new HandleTable(new SimulatedMyo("00:00:00:00:00:01"), new GattMetrics());
+        MyoMsg msg = new ReadMsg(Battery.BATTERYLEVEL, null);
+        final int handle = table.resolve(msg);
+        table.putSent(handle, msg);
+        assertSame(msg, table.getSent(handle));
+        assertSame(msg, table.takeSent(handle));
+        assertNull(table.takeSent(handle));
+
+        table.putSent(handle, msg);
+        final int generation = msg.getHandleGeneration();
+        table.reset();
+        // Sent messages and handles of an earlier discovery are dropped.
+        assertNull(table.getSent(handle));
+        assertNull(table.getTarget(handle));
+        table.resolve(msg);
+        assertTrue(generation != msg.getHandleGeneration());
+        assertNotNull(table.getTarget(msg.getHandle()));
+    }
+
+    @Test
+    public void testLost() {
+        HandleTable table = new HandleTable(new SimulatedMyo("00:00:00:00:00:01"), new GattMetrics());
+        final int handle = table.resolve(new ReadMsg(Battery.BATTERYLEVEL, null));
+        assertFalse(table.takeLost(handle));
+        table.onLost(handle);
+        table.onLost(handle);
+        assertTrue(table.takeLost(handle));
+        assertTrue(table.takeLost(handle));
+        assertFalse(table.takeLost(handle));
+        assertFalse(table.takeLost(MyoTransport.NO_HANDLE));
+
+        // Callbacks of a lost connection never come.
+        table.onLost(handle);
+        table.reset();
+        assertFalse(table.takeLost(handle));
+    }
+
+    @Test
+    public void testCacheSlotAndTarget() {
+        HandleTable table = new HandleTable(new SimulatedMyo("00:00:00:00:00:01"), new GattMetrics());
+        ReadCache cache = new ReadCache(null);
+        MyoMsg battery = new ReadMsg(Battery.BATTERYLEVEL, null);
+        final int handle = table.resolve(battery);
+        ReadCache.Slot slot = table.getCacheSlot(handle, cache, battery);
+        assertNotNull(slot);
+        assertSame(slot, table.getCacheSlot(handle, cache, new ReadMsg(Battery.BATTERYLEVEL, null)));
+        assertSame(table.getTarget(handle), table.getTarget(battery));
+
+        MyoMsg descriptor = new WriteMsg(Emg.EMGDATA0_DESCRIPTOR, new byte[]{0x01, 0x00}, null);
+        assertNull(table.getCacheSlot(table.resolve(descriptor), cache, descriptor));
+
+        // Slots of a replaced cache aren't used anymore.
+        ReadCache replaced = new ReadCache(null);
+        ReadCache.Slot other = table.getCacheSlot(handle, replaced, battery);
+        assertNotNull(other);
+        assertTrue(slot != other);
+
+        // The handle of an earlier discovery doesn't lead to a target.
+        table.reset();
+        assertNull(table.getTarget(battery));
+    }
+}
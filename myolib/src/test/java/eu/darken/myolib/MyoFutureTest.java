@@ -0,0 +1,80 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.MyoMsgException;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MyoFutureTest {
+
+    @Test
+    public void testSequence() throws Exception {
+        Myo myo = new Myo(new SimulatedMyo("00:00:00:00:01:01"));
+        try {
+            myo.writeSleepMode(MyoCmds.SleepMode.NEVER, null).timeout(2, TimeUnit.SECONDS).get();
+            assertEquals("v1.5.1970 - 2", myo.readFirmware(null).get(2, TimeUnit.SECONDS));
+            assertEquals(100, (int) myo.readBatteryLevel(null).get(2, TimeUnit.SECONDS));
+            assertEquals(MyoCmds.SleepMode.NEVER, myo.getSleepMode());
+        } finally {
+            myo.disconnect();
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        SimulatedMyo simulatedMyo = new SimulatedMyo("00:00:00:00:01:02");
+        simulatedMyo.setLossRate(1);
+        Myo myo = new Myo(simulatedMyo);
+        myo.setTimeoutSendQueue(-1);
+        myo.setCommandTimeout(200);
+        try {
+            MyoFuture<MyoMsg> future = myo.writeVibrate(MyoCmds.VibrateType.SHORT, null);
+            try {
+                future.get(2, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof MyoMsgException);
+            }
+            assertEquals(MyoMsg.State.ERROR, future.getMsg().getState());
+            assertFalse(future.isSuccessful());
+        } finally {
+            myo.disconnect();
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        SimulatedMyo simulatedMyo = new SimulatedMyo("00:00:00:00:01:03");
+        simulatedMyo.setLatency(200);
+        Myo myo = new Myo(simulatedMyo);
+        try {
+            MyoFuture<Integer> future = myo.readBatteryLevel(null);
+            assertTrue(future.cancel(false));
+            assertTrue(future.isCancelled());
+            try {
+                future.get();
+                fail();
+            } catch (CancellationException e) {
+                // Expected
+            }
+            assertEquals(0, myo.getDispatchQueueSize());
+        } finally {
+            myo.disconnect();
+        }
+    }
+}
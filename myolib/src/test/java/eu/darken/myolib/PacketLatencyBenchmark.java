@@ -0,0 +1,95 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.processor.BaseProcessor;
+import eu.darken.myolib.processor.imu.ImuData;
+import eu.darken.myolib.processor.imu.ImuProcessor;
+import eu.darken.myolib.services.Imu;
+import eu.darken.myolib.tools.Logy;
+import eu.darken.myolib.tools.SpscRingBuffer;
+import eu.darken.myolib.tools.WorkerPool;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+/**
+ * Time from {@link BaseMyo#onCharacteristicChanged(java.util.UUID, java.util.UUID, byte[])} until the listener of an {@link ImuProcessor} has the data.
+ * One packet at a time, so this is the latency of an idle pipeline including the wake up of the processor.
+ * <p>
+ * Run with {@code ./gradlew :myolib:jmh -PjmhArgs=PacketLatencyBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketLatencyBenchmark {
+    /**
+     * A {@link SpscRingBuffer.WaitStrategy} name or "POOL" for a {@link WorkerPool}.
+     */
+    @Param({"PARK", "SPIN", "POOL"})
+    public String waitStrategy;
+
+    private final byte[] mData = new byte[20];
+    private BaseMyo mMyo;
+    private ImuProcessor mProcessor;
+    private WorkerPool mWorkerPool;
+    private volatile long mReceived;
+    private long mSent;
+
+    @Setup
+    public void setup() {
+        Logy.sLoglevel = Logy.QUIET;
+        mMyo = new BaseMyo(new SimulatedMyo("00:00:00:00:BE:02"));
+        mProcessor = new ImuProcessor();
+        if ("POOL".equals(waitStrategy)) {
+            mWorkerPool = new WorkerPool("Benchmark", 1, android.os.Process.THREAD_PRIORITY_DEFAULT);
+            mProcessor.setWorkerPool(mWorkerPool, WorkerPool.Priority.NORMAL);
+        } else {
+            mProcessor.setWorkerPool(null, WorkerPool.Priority.NORMAL);
+            mProcessor.setQueueConfig(BaseProcessor.DEFAULT_QUEUE_CAPACITY, SpscRingBuffer.WaitStrategy.valueOf(waitStrategy));
+        }
+        mProcessor.addListener(new ImuProcessor.ImuDataListener() {
+            @Override
+            public void onNewImuData(ImuData imuData) {
+                mReceived++;
+            }
+        });
+        mMyo.addProcessor(mProcessor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mMyo.removeProcessor(mProcessor);
+        if (mWorkerPool != null)
+            mWorkerPool.shutdown();
+    }
+
+    @Benchmark
+    public long packetToListener() {
+        final long target = ++mSent;
+        mMyo.onCharacteristicChanged(Imu.IMUDATA.getServiceUUID(), Imu.IMUDATA.getCharacteristicUUID(), mData);
+        // Parking here would add its own wake up latency, yielding keeps this usable on few cores.
+        while (mReceived < target)
+            Thread.yield();
+        return target;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.processor.BaseProcessor;
+import eu.darken.myolib.processor.emg.EmgData;
+import eu.darken.myolib.processor.emg.EmgProcessor;
+import eu.darken.myolib.services.Emg;
+import eu.darken.myolib.tools.Logy;
+import eu.darken.myolib.tools.WorkerPool;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+/**
+ * Cost on the bluetooth callback thread of routing one EMG packet through {@link BaseMyo#onCharacteristicChanged(java.util.UUID, java.util.UUID, byte[])}
+ * to {@link #processorCount} subscribed processors. Processors run on their own threads, as in the baseline,
+ * and may drop packets if they can't keep up,
+ * which is what happens on a device too.
+ * <p>
+ * Run with {@code ./gradlew :myolib:jmh -PjmhArgs=PacketRoutingBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketRoutingBenchmark {
+    @Param({"1", "4", "16"})
+    public int processorCount;
+
+    private final List<BaseProcessor> mProcessors = new ArrayList<>();
+    private final byte[] mData = new byte[16];
+    private BaseMyo mMyo;
+
+    @Setup
+    public void setup() {
+        Logy.sLoglevel = Logy.QUIET;
+        mMyo = new BaseMyo(new SimulatedMyo("00:00:00:00:BE:01"));
+        for (int i = 0; i < processorCount; i++) {
+            EmgProcessor processor = new EmgProcessor();
+            processor.setReuseEmgData(true);
+            processor.setWorkerPool(null, WorkerPool.Priority.NORMAL);
+            processor.addListener(new EmgProcessor.EmgDataListener() {
+                private long mCount;
+
+                @Override
+                public void onNewEmgData(EmgData emgData) {
+                    mCount++;
+                }
+            });
+            mMyo.addProcessor(processor);
+            mProcessors.add(processor);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (BaseProcessor processor : mProcessors)
+            mMyo.removeProcessor(processor);
+        mProcessors.clear();
+    }
+
+    @Benchmark
+    public void route() {
+        mMyo.onCharacteristicChanged(Emg.EMGDATA0.getServiceUUID(), Emg.EMGDATA0.getCharacteristicUUID(), mData);
+    }
+}
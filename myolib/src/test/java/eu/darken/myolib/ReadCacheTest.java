@@ -0,0 +1,145 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import android.support.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.ReadMsg;
+import eu.darken.myolib.msgs.WriteMsg;
+import eu.darken.myolib.services.Battery;
+import eu.darken.myolib.services.Control;
+import eu.darken.myolib.services.Emg;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReadCacheTest {
+
+    private static class MemoryStore implements ReadCache.Store {
+        final Map<String, String> mEntries = new HashMap<>();
+
+        @Override
+        public Map<String, String> load() {
+            return new HashMap<>(mEntries);
+        }
+
+        @Override
+        public void save(String key, @Nullable String value) {
+            if (value == null)
+                mEntries.remove(key);
+            else
+                mEntries.put(key, value);
+        }
+
+        @Override
+        public void clear() {
+            mEntries.clear();
+        }
+    }
+
+    @Test
+    public void testPersistence() {
+        MemoryStore store = new MemoryStore();
+        ReadCache cache = new ReadCache(store);
+        MyoMsg info = new ReadMsg(Control.MYOINFO, null);
+        cache.put(info, new byte[]{1, 2, (byte) 0xff});
+        // Commands have no time to live.
+        cache.put(new ReadMsg(Control.COMMAND, null), new byte[]{1});
+        assertEquals(1, store.mEntries.size());
+        assertTrue(store.mEntries.containsKey(info.getIdentifier()));
+
+        ReadCache restored = new ReadCache(store);
+        assertArrayEquals(new byte[]{1, 2, (byte) 0xff}, restored.get(info));
+        restored.invalidate(info);
+        assertNull(restored.get(info));
+        assertTrue(store.mEntries.isEmpty());
+    }
+
+    @Test
+    public void testStoredKeys() {
+        MemoryStore store = new MemoryStore();
+        MyoMsg info = new ReadMsg(Control.MYOINFO, null);
+        store.save(info.getIdentifier(), "1:0102");
+        store.save("not-a-uuid:" + Control.MYOINFO.getCharacteristicUUID(), "1:03");
+        store.save(info.getIdentifier() + ":" + Control.MYOINFO.getCharacteristicUUID(), "1:04");
+        ReadCache cache = new ReadCache(store);
+        assertArrayEquals(new byte[]{1, 2}, cache.get(info));
+
+        // Writes to characteristics that aren't cached leave the store alone.
+        cache.invalidate(new WriteMsg(Control.COMMAND, new byte[]{1}, null));
+        assertEquals(3, store.mEntries.size());
+        cache.invalidate(new WriteMsg(Control.MYOINFO, new byte[]{1}, null));
+        assertNull(cache.get(info));
+        assertEquals(2, store.mEntries.size());
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        ReadCache cache = new ReadCache(null);
+        cache.setTtl(Battery.BATTERYLEVEL, 20);
+        MyoMsg battery = new ReadMsg(Battery.BATTERYLEVEL, null);
+        cache.put(battery, new byte[]{50});
+        assertArrayEquals(new byte[]{50}, cache.get(battery));
+        Thread.sleep(30);
+        assertNull(cache.get(battery));
+    }
+
+    @Test
+    public void testFirmwareChange() {
+        ReadCache cache = new ReadCache(null);
+        MyoMsg info = new ReadMsg(Control.MYOINFO, null);
+        MyoMsg firmware = new ReadMsg(Control.FIRMWARE_VERSION, null);
+        cache.put(info, new byte[]{1});
+        cache.put(firmware, new byte[]{1, 0, 5, 0});
+        cache.put(firmware, new byte[]{1, 0, 5, 0});
+        assertArrayEquals(new byte[]{1}, cache.get(info));
+        cache.put(firmware, new byte[]{1, 0, 6, 0});
+        assertNull(cache.get(info));
+        assertArrayEquals(new byte[]{1, 0, 6, 0}, cache.get(firmware));
+    }
+
+    @Test
+    public void testSlot() {
+        ReadCache cache = new ReadCache(null);
+        MyoMsg command = new ReadMsg(Control.COMMAND, null);
+        ReadCache.Slot slot = cache.obtainSlot(command);
+        cache.put(slot, new byte[]{1});
+        assertNull(cache.get(command));
+        // A time to live set later applies to the slot looked up before.
+        cache.setTtl(Control.COMMAND, ReadCache.TTL_FOREVER);
+        cache.put(slot, new byte[]{1});
+        assertArrayEquals(new byte[]{1}, cache.get(command));
+        cache.invalidate(slot);
+        assertNull(cache.get(command));
+
+        assertNull(cache.obtainSlot(new WriteMsg(Emg.EMGDATA0_DESCRIPTOR, new byte[]{0x01, 0x00}, null)));
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        Myo myo = new Myo(new SimulatedMyo("00:00:00:00:03:01"));
+        try {
+            assertEquals("v1.5.1970 - 2", myo.readFirmware(null).get(2, TimeUnit.SECONDS));
+            MyoFuture<String> cached = myo.readFirmware(null);
+            assertTrue(cached.isDone());
+            assertEquals("v1.5.1970 - 2", cached.get());
+            assertEquals(1, myo.getGattMetrics().getTarget(((ReadMsg) cached.getMsg())).getReadRtt().getCount());
+        } finally {
+            myo.disconnect();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import android.bluetooth.BluetoothGatt;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.ReadMsg;
+import eu.darken.myolib.services.Battery;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetrySchedulerTest {
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void testClassification() {
+        assertEquals(RetryScheduler.ErrorClass.PERMANENT, RetryScheduler.classify(BluetoothGatt.GATT_READ_NOT_PERMITTED));
+        assertEquals(RetryScheduler.ErrorClass.PERMANENT, RetryScheduler.classify(BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION));
+        assertEquals(RetryScheduler.ErrorClass.TRANSIENT, RetryScheduler.classify(BluetoothGatt.GATT_FAILURE));
+        assertEquals(RetryScheduler.ErrorClass.TRANSIENT, RetryScheduler.classify(RetryScheduler.STATUS_LOST));
+
+        RetryScheduler scheduler = new RetryScheduler();
+        assertEquals(-1, scheduler.schedule(new ReadMsg(Battery.BATTERYLEVEL, null), BluetoothGatt.GATT_READ_NOT_PERMITTED));
+        assertEquals(1, scheduler.getPermanentFailureCount());
+        MyoMsg exhausted = new ReadMsg(Battery.BATTERYLEVEL, null);
+        exhausted.setRetryCounter(0);
+        assertEquals(-1, scheduler.schedule(exhausted, BluetoothGatt.GATT_FAILURE));
+        assertEquals(1, scheduler.getExhaustedFailureCount());
+        assertEquals(0, scheduler.getRetryCount());
+    }
+
+    @Test
+    public void testBackoff() {
+        RetryScheduler scheduler = new RetryScheduler();
+        scheduler.setBackoff(100, 400);
+        MyoMsg msg = new ReadMsg(Battery.BATTERYLEVEL, null);
+        long[] maxDelays = {100, 200, 400, 400};
+        for (long max : maxDelays) {
+            long delay = scheduler.schedule(msg, BluetoothGatt.GATT_FAILURE);
+            assertTrue(delay >= ms(max) / 2 && delay <= ms(max));
+        }
+        scheduler.forget(msg);
+        assertTrue(scheduler.schedule(msg, BluetoothGatt.GATT_FAILURE) <= ms(100));
+    }
+
+    @Test
+    public void testBudget() {
+        RetryScheduler scheduler = new RetryScheduler();
+        scheduler.setBudget(2, TimeUnit.HOURS.toMillis(1));
+        assertTrue(scheduler.schedule(new ReadMsg(Battery.BATTERYLEVEL, null), BluetoothGatt.GATT_FAILURE) >= 0);
+        assertTrue(scheduler.schedule(new ReadMsg(Battery.BATTERYLEVEL, null), BluetoothGatt.GATT_FAILURE) >= 0);
+        assertEquals(-1, scheduler.schedule(new ReadMsg(Battery.BATTERYLEVEL, null), BluetoothGatt.GATT_FAILURE));
+        assertEquals(2, scheduler.getRetryCount());
+        assertEquals(1, scheduler.getBudgetFailureCount());
+        assertEquals(0, scheduler.getBudget());
+
+        scheduler.setBudget(2, 0);
+        assertEquals(2, scheduler.getBudget());
+    }
+
+    @Test
+    public void testFlappingLink() throws Exception {
+        SimulatedMyo simulatedMyo = new SimulatedMyo("00:00:00:00:04:01");
+        Myo myo = new Myo(simulatedMyo);
+        myo.getReadCache().setTtl(Battery.BATTERYLEVEL, 0);
+        myo.getRetryScheduler().setBudget(3, TimeUnit.HOURS.toMillis(1));
+        try {
+            // Waits for the connection and the notification setup.
+            myo.readBatteryLevel(null).get(5, TimeUnit.SECONDS);
+            myo.readBatteryLevel(null).get(5, TimeUnit.SECONDS);
+
+            simulatedMyo.setErrorRate(1);
+            final CountDownLatch done = new CountDownLatch(1);
+            // Retries forever by default.
+            ReadMsg msg = new ReadMsg(Battery.BATTERYLEVEL, new MyoMsg.Callback() {
+                @Override
+                public void onResult(MyoMsg msg) {
+                    done.countDown();
+                }
+            });
+            final long start = System.nanoTime();
+            myo.submit(msg);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            // At least half of 50ms + 100ms + 200ms backoff.
+            assertTrue(System.nanoTime() - start >= ms(175));
+            assertEquals(MyoMsg.State.ERROR, msg.getState());
+            assertEquals(BluetoothGatt.GATT_FAILURE, (int) msg.getGattStatus());
+            assertEquals(3, myo.getRetryScheduler().getRetryCount());
+            assertEquals(1, myo.getRetryScheduler().getBudgetFailureCount());
+        } finally {
+            myo.disconnect();
+        }
+    }
+}
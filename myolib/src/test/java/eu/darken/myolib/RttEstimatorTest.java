@@ -0,0 +1,50 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RttEstimatorTest {
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void testConvergence() {
+        RttEstimator estimator = new RttEstimator(ms(250), ms(100));
+        assertEquals(ms(250), estimator.getTimeout());
+        estimator.onSample(ms(100));
+        // 100ms + 4 * 50ms variance
+        assertEquals(ms(300), estimator.getTimeout());
+        for (int i = 0; i < 100; i++)
+            estimator.onSample(ms(40));
+        assertEquals(ms(40), estimator.getSmoothedRtt(), ms(1));
+        // The variance is gone, the margin remains.
+        assertEquals(ms(140), estimator.getTimeout(), ms(1));
+
+        for (int i = 0; i < 50; i++)
+            estimator.onSample(ms(i % 2 == 0 ? 100 : 300));
+        assertTrue(estimator.getTimeout() > ms(500));
+    }
+
+    @Test
+    public void testBackoff() {
+        RttEstimator estimator = new RttEstimator(ms(250), ms(100));
+        estimator.onTimeout();
+        assertEquals(ms(500), estimator.getTimeout());
+        for (int i = 0; i < 10; i++)
+            estimator.onTimeout();
+        assertEquals(RttEstimator.MAX_TIMEOUT, estimator.getTimeout());
+        estimator.onSample(ms(40));
+        assertEquals(ms(140), estimator.getTimeout());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.MyoMsgException;
+import eu.darken.myolib.msgs.WriteMsg;
+import eu.darken.myolib.services.Control;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransactionTest {
+
+    private static MyoMsg command(byte[] cmd, final List<MyoMsg> results) {
+        return new WriteMsg(Control.COMMAND, cmd, new MyoMsg.Callback() {
+            @Override
+            public void onResult(MyoMsg msg) {
+                results.add(msg);
+            }
+        });
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+        SimulatedMyo simulatedMyo = new SimulatedMyo("00:00:00:00:02:01");
+        simulatedMyo.setLatency(5);
+        Myo myo = new Myo(simulatedMyo);
+        try {
+            List<MyoMsg> results = Collections.synchronizedList(new ArrayList<MyoMsg>());
+            List<MyoMsg> msgs = Arrays.asList(
+                    command(MyoCmds.buildSleepModeCmd(MyoCmds.SleepMode.NEVER), results),
+                    command(MyoCmds.buildSensorModeCmd(MyoCmds.EmgMode.FILTERED, MyoCmds.ImuMode.DATA, MyoCmds.ClassifierMode.DISABLED), results),
+                    command(MyoCmds.buildSetUnlockModeCmd(MyoCmds.UnlockType.HOLD), results));
+            MyoFuture<List<MyoMsg>> future = myo.submitTransaction(msgs);
+            assertEquals(msgs, future.get(2, TimeUnit.SECONDS));
+            assertTrue(future.isSuccessful());
+            assertEquals(msgs, results);
+            for (MyoMsg msg : msgs)
+                assertEquals(MyoMsg.State.SUCCESS, msg.getState());
+            assertEquals(3, simulatedMyo.getCommandCount());
+        } finally {
+            myo.disconnect();
+        }
+    }
+
+    @Test
+    public void testShortCircuit() throws Exception {
+        SimulatedMyo simulatedMyo = new SimulatedMyo("00:00:00:00:02:02");
+        Myo myo = new Myo(simulatedMyo);
+        try {
+            List<MyoMsg> results = Collections.synchronizedList(new ArrayList<MyoMsg>());
+            MyoMsg unavailable = new WriteMsg(Control.getServiceUUID(), UUID.randomUUID(), null, new byte[]{1}, null);
+            List<MyoMsg> msgs = Arrays.asList(
+                    command(MyoCmds.buildSleepModeCmd(MyoCmds.SleepMode.NEVER), results),
+                    unavailable,
+                    command(MyoCmds.buildVibrateCmd(MyoCmds.VibrateType.SHORT), results));
+            MyoFuture<List<MyoMsg>> future = myo.submitTransaction(msgs);
+            try {
+                future.get(2, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(unavailable, ((MyoMsgException) e.getCause()).getMsg());
+            }
+            assertFalse(future.isSuccessful());
+            assertEquals(MyoMsg.State.SUCCESS, msgs.get(0).getState());
+            // The last message is never sent, but its callback is called.
+            assertEquals(MyoMsg.State.ERROR, msgs.get(2).getState());
+            assertEquals(2, results.size());
+            assertEquals(1, simulatedMyo.getCommandCount());
+        } finally {
+            myo.disconnect();
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        SimulatedMyo simulatedMyo = new SimulatedMyo("00:00:00:00:02:03");
+        simulatedMyo.setLatency(200);
+        Myo myo = new Myo(simulatedMyo);
+        try {
+            List<MyoMsg> results = Collections.synchronizedList(new ArrayList<MyoMsg>());
+            MyoFuture<List<MyoMsg>> future = myo.submitTransaction(Arrays.asList(
+                    command(MyoCmds.buildSleepModeCmd(MyoCmds.SleepMode.NEVER), results),
+                    command(MyoCmds.buildVibrateCmd(MyoCmds.VibrateType.SHORT), results)));
+            assertTrue(future.cancel(false));
+            try {
+                future.get();
+                fail();
+            } catch (CancellationException e) {
+                // Expected
+            }
+            assertEquals(0, myo.getDispatchQueueSize());
+            assertTrue(results.isEmpty());
+        } finally {
+            myo.disconnect();
+        }
+    }
+}
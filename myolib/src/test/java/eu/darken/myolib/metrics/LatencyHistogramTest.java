@@ -0,0 +1,46 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+            long lower = LatencyHistogram.getBucketLowerBound(bucket);
+            long upper = LatencyHistogram.getBucketUpperBound(bucket);
+            assertEquals(bucket, LatencyHistogram.toBucket(lower));
+            assertEquals(bucket, LatencyHistogram.toBucket(upper));
+            if (bucket > 0)
+                assertEquals(LatencyHistogram.getBucketUpperBound(bucket - 1) + 1, lower);
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.toBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 1000000L);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(50500000L, snapshot.getMean());
+        assertEquals(100000000L, snapshot.getMax());
+        long p50 = snapshot.getPercentile(50);
+        assertTrue(p50 >= 50000000L && p50 <= 50000000L * 5 / 4);
+        long p99 = snapshot.getPercentile(99);
+        assertTrue(p99 >= 99000000L && p99 <= 100000000L);
+        assertEquals(snapshot.getMax(), snapshot.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getPercentile(50));
+    }
+}
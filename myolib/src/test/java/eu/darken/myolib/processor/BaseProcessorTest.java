@@ -0,0 +1,275 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.darken.myolib.BaseMyo;
+import eu.darken.myolib.services.Emg;
+import eu.darken.myolib.services.Imu;
+import eu.darken.myolib.tools.SpscRingBuffer;
+import eu.darken.myolib.tools.WorkerPool;
+import eu.darken.myolib.transport.SimulatedMyo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BaseProcessorTest {
+
+    private static class NoopProcessor extends BaseProcessor {
+        @Override
+        protected void doProcess(BaseDataPacket packet) {
+
+        }
+    }
+
+    /**
+     * Records the timestamps of processed packets and whether two threads were ever processing at once.
+     */
+    private static class OrderingProcessor extends BaseProcessor {
+        final List<Long> mProcessed = new ArrayList<>();
+        final AtomicInteger mActive = new AtomicInteger();
+        final Set<Thread> mThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        final CountDownLatch mDone;
+        volatile boolean mOverlapped = false;
+
+        OrderingProcessor(int expected) {
+            mDone = new CountDownLatch(expected);
+        }
+
+        @Override
+        protected void doProcess(BaseDataPacket packet) {
+            if (mActive.incrementAndGet() != 1)
+                mOverlapped = true;
+            mThreads.add(Thread.currentThread());
+            // Not synchronized on purpose, the drain task has to provide the happens-before.
+            mProcessed.add(packet.getTimeStampNanos());
+            Thread.yield();
+            mActive.decrementAndGet();
+            mDone.countDown();
+        }
+    }
+
+    /**
+     * Wants {@link #onTimeout()} a fixed time after each packet.
+     */
+    private static class TimeoutProcessor extends BaseProcessor {
+        final long mTimeoutNanos;
+        final CountDownLatch mProcessed = new CountDownLatch(1);
+        final CountDownLatch mTimedOut = new CountDownLatch(1);
+        volatile boolean mPending = false;
+        volatile String mTimeoutThread;
+
+        TimeoutProcessor(long timeoutNanos) {
+            mTimeoutNanos = timeoutNanos;
+        }
+
+        @Override
+        protected void doProcess(BaseDataPacket packet) {
+            mPending = true;
+            mProcessed.countDown();
+        }
+
+        @Override
+        protected long getTimeoutNanos() {
+            return mPending ? mTimeoutNanos : -1;
+        }
+
+        @Override
+        protected void onTimeout() {
+            mPending = false;
+            mTimeoutThread = Thread.currentThread().getName();
+            mTimedOut.countDown();
+        }
+    }
+
+    private static BaseDataPacket sequenced(long sequence) {
+        return new BaseDataPacket(
+                PacketRegistry.internDevice(TestPackets.DEVICE_ADDRESS),
+                PacketRegistry.internCharacteristic(Emg.EMGDATA0.getServiceUUID(), Emg.EMGDATA0.getCharacteristicUUID()),
+                sequence, new byte[16], 0, 16);
+    }
+
+    /**
+     * Waits until all tasks queued before have run, only works for single thread pools.
+     */
+    private static void sync(WorkerPool pool) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, WorkerPool.Priority.LOW);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Fills a queue of 4 with EMGDATA0 packets, then offers two EMGDATA1 and one IMU packet while nothing consumes.
+     */
+    private static NoopProcessor overflow(SpscRingBuffer.OverflowPolicy policy) {
+        NoopProcessor processor = new NoopProcessor();
+        processor.setQueueConfig(4, SpscRingBuffer.WaitStrategy.PARK, policy);
+        for (int i = 0; i < 4; i++)
+            processor.submit(TestPackets.emg(0));
+        processor.submit(TestPackets.emg(1));
+        processor.submit(TestPackets.emg(1));
+        processor.submit(TestPackets.imu(0));
+        return processor;
+    }
+
+    @Test
+    public void testDropCountersNewest() {
+        NoopProcessor processor = overflow(SpscRingBuffer.OverflowPolicy.DROP_NEWEST);
+        assertEquals(3, processor.getDroppedPacketCount());
+        assertEquals(0, processor.getDroppedPacketCount(Emg.EMGDATA0.getCharacteristicUUID()));
+        assertEquals(2, processor.getDroppedPacketCount(Emg.EMGDATA1.getCharacteristicUUID()));
+        assertEquals(1, processor.getDroppedPacketCount(Imu.IMUDATA.getCharacteristicUUID()));
+        Map<UUID, Long> counts = processor.getDroppedPacketCounts();
+        assertEquals(2, counts.size());
+        assertFalse(counts.containsKey(Emg.EMGDATA0.getCharacteristicUUID()));
+    }
+
+    @Test
+    public void testDropCountersOldest() {
+        NoopProcessor processor = overflow(SpscRingBuffer.OverflowPolicy.DROP_OLDEST);
+        assertEquals(3, processor.getDroppedPacketCount());
+        assertEquals(3, processor.getDroppedPacketCount(Emg.EMGDATA0.getCharacteristicUUID()));
+        assertEquals(0, processor.getDroppedPacketCount(Emg.EMGDATA1.getCharacteristicUUID()));
+        assertEquals(0, processor.getDroppedPacketCount(Imu.IMUDATA.getCharacteristicUUID()));
+    }
+
+    @Test
+    public void testDropCountersConflate() {
+        NoopProcessor processor = overflow(SpscRingBuffer.OverflowPolicy.CONFLATE);
+        // The first EMGDATA1 packet conflates the four EMGDATA0 ones, the rest fits.
+        assertEquals(4, processor.getDroppedPacketCount());
+        assertEquals(4, processor.getDroppedPacketCount(Emg.EMGDATA0.getCharacteristicUUID()));
+        assertEquals(0, processor.getDroppedPacketCount(Imu.IMUDATA.getCharacteristicUUID()));
+    }
+
+    /**
+     * Several pool threads, but only one drain task at a time, so packets are processed in order and never concurrently.
+     */
+    @Test
+    public void testPoolOrdering() throws Exception {
+        final int count = 20000;
+        WorkerPool pool = new WorkerPool("test-ordering", 4, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        try {
+            OrderingProcessor processor = new OrderingProcessor(count);
+            processor.setQueueConfig(count, SpscRingBuffer.WaitStrategy.PARK);
+            processor.setWorkerPool(pool, WorkerPool.Priority.NORMAL);
+            processor.onAdded();
+            for (int i = 0; i < count; i++)
+                processor.submit(sequenced(i));
+            assertTrue(processor.mDone.await(30, TimeUnit.SECONDS));
+            processor.onRemoved();
+            assertEquals(0, processor.getDroppedPacketCount());
+            assertFalse("Processed concurrently", processor.mOverlapped);
+            assertEquals(count, processor.mProcessed.size());
+            for (int i = 0; i < count; i++)
+                assertEquals((long) i, (long) processor.mProcessed.get(i));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPoolTimeout() throws Exception {
+        final String name = "test-timeout";
+        WorkerPool pool = new WorkerPool(name, 2, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        try {
+            TimeoutProcessor processor = new TimeoutProcessor(TimeUnit.MILLISECONDS.toNanos(20));
+            processor.setWorkerPool(pool, WorkerPool.Priority.LOW);
+            processor.onAdded();
+            final long start = System.nanoTime();
+            processor.submit(sequenced(0));
+            assertTrue(processor.mTimedOut.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+            assertTrue(processor.mTimeoutThread, processor.mTimeoutThread.startsWith(name));
+            processor.onRemoved();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPoolRemovedCancelsTimeout() throws Exception {
+        WorkerPool pool = new WorkerPool("test-removed", 1, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        try {
+            TimeoutProcessor processor = new TimeoutProcessor(TimeUnit.MILLISECONDS.toNanos(50));
+            processor.setWorkerPool(pool, WorkerPool.Priority.NORMAL);
+            processor.onAdded();
+            processor.submit(sequenced(0));
+            assertTrue(processor.mProcessed.await(5, TimeUnit.SECONDS));
+            // The drain task has finished and armed the timer.
+            sync(pool);
+            processor.onRemoved();
+            assertFalse(processor.mTimedOut.await(150, TimeUnit.MILLISECONDS));
+            assertTrue(processor.mPending);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDefaultPool() {
+        NoopProcessor processor = new NoopProcessor();
+        assertSame(WorkerPool.getShared(), processor.getWorkerPool());
+        assertSame(WorkerPool.getShared(), new BaseMyo(new SimulatedMyo(TestPackets.DEVICE_ADDRESS)).getWorkerPool());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddedTwice() {
+        NoopProcessor processor = new NoopProcessor();
+        processor.onAdded();
+        try {
+            processor.onAdded();
+        } finally {
+            processor.onRemoved();
+        }
+    }
+
+    /**
+     * The worker thread of the first run must not come back to life and consume alongside the new one.
+     */
+    @Test
+    public void testReAdded() throws Exception {
+        final int count = 1000;
+        OrderingProcessor processor = new OrderingProcessor(count);
+        processor.setQueueConfig(count, SpscRingBuffer.WaitStrategy.PARK);
+        processor.setWorkerPool(null, WorkerPool.Priority.NORMAL);
+        processor.onAdded();
+        processor.onRemoved();
+        // Removing twice is harmless.
+        processor.onRemoved();
+        processor.onAdded();
+        try {
+            for (int i = 0; i < count; i++)
+                processor.submit(sequenced(i));
+            assertTrue(processor.mDone.await(10, TimeUnit.SECONDS));
+            assertFalse("Processed concurrently", processor.mOverlapped);
+            assertEquals(1, processor.mThreads.size());
+            for (int i = 0; i < count; i++)
+                assertEquals((long) i, (long) processor.mProcessed.get(i));
+        } finally {
+            processor.onRemoved();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.processor.classifier.ClassifierEvent;
+import eu.darken.myolib.processor.classifier.ClassifierProcessor;
+import eu.darken.myolib.processor.classifier.PoseClassifierEvent;
+import eu.darken.myolib.processor.emg.EmgData;
+import eu.darken.myolib.processor.emg.EmgProcessor;
+import eu.darken.myolib.processor.imu.ImuData;
+import eu.darken.myolib.processor.imu.ImuProcessor;
+import eu.darken.myolib.processor.imu.MotionEvent;
+import eu.darken.myolib.processor.imu.MotionProcessor;
+import eu.darken.myolib.tools.Logy;
+
+/**
+ * Decoding cost of each packet type, i.e. {@link BaseProcessor#doProcess(BaseDataPacket)} up to and including the listener,
+ * without the queue hand-off. Listeners read every decoded value.
+ * <p>
+ * Run with {@code ./gradlew :myolib:jmh -PjmhArgs=PacketDecodeBenchmark}, see {@code gc.alloc.rate.norm} for bytes per packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketDecodeBenchmark {
+    private Blackhole mBlackhole;
+    private BaseProcessor mEmgProcessor;
+    private BaseProcessor mEmgReuseProcessor;
+    private BaseProcessor mEmgBatchProcessor;
+    private BaseProcessor mImuProcessor;
+    private BaseProcessor mClassifierProcessor;
+    private BaseProcessor mMotionProcessor;
+    private BaseDataPacket mEmgPacket;
+    private BaseDataPacket mImuPacket;
+    private BaseDataPacket mPosePacket;
+    private BaseDataPacket mTapPacket;
+
+    @Setup
+    public void setup() {
+        Logy.sLoglevel = Logy.QUIET;
+        mEmgPacket = TestPackets.emg(0);
+        mImuPacket = TestPackets.imu(0);
+        mPosePacket = TestPackets.pose(PoseClassifierEvent.Pose.FIST);
+        mTapPacket = TestPackets.tap(2);
+
+        EmgProcessor.EmgDataListener emgListener = new EmgProcessor.EmgDataListener() {
+            @Override
+            public void onNewEmgData(EmgData emgData) {
+                mBlackhole.consume(emgData.getTimestamp());
+                mBlackhole.consume(emgData.getData());
+            }
+        };
+        EmgProcessor emgProcessor = new EmgProcessor();
+        emgProcessor.addListener(emgListener);
+        mEmgProcessor = emgProcessor;
+
+        EmgProcessor emgReuseProcessor = new EmgProcessor();
+        emgReuseProcessor.setReuseEmgData(true);
+        emgReuseProcessor.addListener(emgListener);
+        mEmgReuseProcessor = emgReuseProcessor;
+
+        EmgProcessor emgBatchProcessor = new EmgProcessor();
+        emgBatchProcessor.addBatchListener(new EmgProcessor.EmgBatchListener() {
+            @Override
+            public void onNewEmgBatch(String deviceAddress, long[] timestamps, byte[] samples, int offset, int count) {
+                mBlackhole.consume(timestamps[offset + count - 1]);
+                mBlackhole.consume(samples[(offset + count) * 8 - 1]);
+            }
+        });
+        mEmgBatchProcessor = emgBatchProcessor;
+
+        ImuProcessor imuProcessor = new ImuProcessor();
+        imuProcessor.addListener(new ImuProcessor.ImuDataListener() {
+            @Override
+            public void onNewImuData(ImuData imuData) {
+                for (int axis = 0; axis < 4; axis++)
+                    mBlackhole.consume(imuData.getOrientation(axis));
+                for (int axis = 0; axis < 3; axis++) {
+                    mBlackhole.consume(imuData.getAccelerometer(axis));
+                    mBlackhole.consume(imuData.getGyro(axis));
+                }
+            }
+        });
+        mImuProcessor = imuProcessor;
+
+        ClassifierProcessor classifierProcessor = new ClassifierProcessor();
+        classifierProcessor.addListener(new ClassifierProcessor.ClassifierEventListener() {
+            @Override
+            public void onClassifierEvent(ClassifierEvent classifierEvent) {
+                mBlackhole.consume(((PoseClassifierEvent) classifierEvent).getPose());
+            }
+        });
+        mClassifierProcessor = classifierProcessor;
+
+        MotionProcessor motionProcessor = new MotionProcessor();
+        motionProcessor.addListener(new MotionProcessor.MotionEventListener() {
+            @Override
+            public void onMotionEvent(MotionEvent motionEvent) {
+                mBlackhole.consume(motionEvent.getType());
+            }
+        });
+        mMotionProcessor = motionProcessor;
+    }
+
+    @Benchmark
+    public void emg(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mEmgProcessor.doProcess(mEmgPacket);
+    }
+
+    @Benchmark
+    public void emgReuse(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mEmgReuseProcessor.doProcess(mEmgPacket);
+    }
+
+    @Benchmark
+    public void emgBatch(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mEmgBatchProcessor.doProcess(mEmgPacket);
+    }
+
+    @Benchmark
+    public void imu(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mImuProcessor.doProcess(mImuPacket);
+    }
+
+    @Benchmark
+    public void classifier(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mClassifierProcessor.doProcess(mPosePacket);
+    }
+
+    @Benchmark
+    public void motion(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mMotionProcessor.doProcess(mTapPacket);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import eu.darken.myolib.services.Emg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PacketRegistryTest {
+
+    /**
+     * The registry is global, random bits keep the tests from seeing each other's characteristics.
+     */
+    private static UUID withId(int id) {
+        UUID random = UUID.randomUUID();
+        long msb = (random.getMostSignificantBits() & ~(0xFFFFL << 32)) | ((long) id << 32);
+        return new UUID(msb, random.getLeastSignificantBits());
+    }
+
+    @Test
+    public void testDevices() {
+        final String address = "00:00:00:00:01:01";
+        final int id = PacketRegistry.internDevice(address);
+        assertEquals(id, PacketRegistry.internDevice(address));
+        assertEquals(id, PacketRegistry.internDevice(new String(address)));
+        assertEquals(address, PacketRegistry.getDeviceAddress(id));
+        assertTrue(id != PacketRegistry.internDevice("00:00:00:00:01:02"));
+
+        final int nullId = PacketRegistry.internDevice(null);
+        assertEquals(nullId, PacketRegistry.internDevice(null));
+        assertNull(PacketRegistry.getDeviceAddress(nullId));
+    }
+
+    @Test
+    public void testEmbeddedId() {
+        UUID service = Emg.EMGDATA0.getServiceUUID();
+        UUID characteristic = Emg.EMGDATA0.getCharacteristicUUID();
+        assertEquals(0x0105, PacketRegistry.internCharacteristic(service, characteristic));
+        assertEquals(0x0105, PacketRegistry.internCharacteristic(service, characteristic));
+        assertEquals(service, PacketRegistry.getServiceUUID(0x0105));
+        assertEquals(characteristic, PacketRegistry.getCharacteristicUUID(0x0105));
+    }
+
+    @Test
+    public void testRelocatedId() {
+        final int embedded = 0xBEEF;
+        UUID service = UUID.randomUUID();
+        UUID first = withId(embedded);
+        UUID second = withId(embedded);
+        final int firstId = PacketRegistry.internCharacteristic(service, first);
+        final int secondId = PacketRegistry.internCharacteristic(service, second);
+        assertTrue(firstId != secondId);
+        // Repeated lookups of the displaced characteristic keep their id.
+        for (int i = 0; i < 3; i++) {
+            assertEquals(firstId, PacketRegistry.internCharacteristic(service, first));
+            assertEquals(secondId, PacketRegistry.internCharacteristic(service, second));
+        }
+        assertEquals(first, PacketRegistry.getCharacteristicUUID(firstId));
+        assertEquals(second, PacketRegistry.getCharacteristicUUID(secondId));
+        assertEquals(service, PacketRegistry.getServiceUUID(secondId));
+
+        // Same characteristic under a different service is a different combination.
+        UUID otherService = UUID.randomUUID();
+        final int otherId = PacketRegistry.internCharacteristic(otherService, second);
+        assertTrue(otherId != firstId && otherId != secondId);
+        assertEquals(otherId, PacketRegistry.internCharacteristic(otherService, second));
+        assertEquals(secondId, PacketRegistry.internCharacteristic(service, second));
+        assertEquals(otherService, PacketRegistry.getServiceUUID(otherId));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCharacteristic() {
+        PacketRegistry.getCharacteristicUUID(0xFFFE);
+    }
+
+    @Test
+    public void testPacketAccessors() {
+        final String address = "00:00:00:00:01:03";
+        UUID service = UUID.randomUUID();
+        UUID characteristic = withId(0xBEEF);
+        BaseDataPacket packet = new BaseDataPacket(address, service, characteristic, new byte[]{1, 2});
+        assertEquals(address, packet.getDeviceAddress());
+        assertEquals(service, packet.getServiceUUID());
+        assertEquals(characteristic, packet.getCharacteristicUUID());
+        assertEquals(PacketRegistry.internDevice(address), packet.getDeviceId());
+        assertEquals(PacketRegistry.internCharacteristic(service, characteristic), packet.getCharacteristicId());
+    }
+}
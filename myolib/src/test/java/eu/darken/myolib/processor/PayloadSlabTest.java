@@ -0,0 +1,75 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import org.junit.Test;
+
+import eu.darken.myolib.services.Emg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadSlabTest {
+    private static final int DEVICE_ID = PacketRegistry.internDevice(TestPackets.DEVICE_ADDRESS);
+    private static final int CHARACTERISTIC_ID = PacketRegistry.internCharacteristic(Emg.EMGDATA0.getServiceUUID(), Emg.EMGDATA0.getCharacteristicUUID());
+
+    @Test
+    public void testSharedChunk() {
+        PayloadSlab slab = new PayloadSlab(10);
+        assertEquals(10, slab.getChunkSize());
+        byte[] first = {1, 2, 3, 4};
+        byte[] second = {5, 6, 7, 8};
+        BaseDataPacket a = slab.pack(DEVICE_ID, CHARACTERISTIC_ID, 1, first);
+        BaseDataPacket b = slab.pack(DEVICE_ID, CHARACTERISTIC_ID, 2, second);
+        assertSame(a.getDataArray(), b.getDataArray());
+        assertEquals(0, a.getDataOffset());
+        assertEquals(4, b.getDataOffset());
+        assertEquals(4, b.getDataLength());
+        assertArrayEquals(first, a.getData());
+        assertArrayEquals(second, b.getData());
+        // Payloads are copied.
+        first[0] = 9;
+        assertEquals(1, a.getData()[0]);
+
+        // Doesn't fit into the remaining 2 bytes, starts a new chunk.
+        BaseDataPacket c = slab.pack(DEVICE_ID, CHARACTERISTIC_ID, 3, new byte[]{10, 11, 12});
+        assertTrue(c.getDataArray() != a.getDataArray());
+        assertEquals(0, c.getDataOffset());
+        assertArrayEquals(new byte[]{10, 11, 12}, c.getData());
+        // Earlier packets are unaffected.
+        assertArrayEquals(second, b.getData());
+    }
+
+    @Test
+    public void testOwnArray() {
+        PayloadSlab slab = new PayloadSlab(4);
+        byte[] large = {1, 2, 3, 4, 5};
+        BaseDataPacket packet = slab.pack(DEVICE_ID, CHARACTERISTIC_ID, 1, large);
+        assertSame(large, packet.getDataArray());
+        assertSame(large, packet.getData());
+
+        BaseDataPacket empty = slab.pack(DEVICE_ID, CHARACTERISTIC_ID, 1, null);
+        assertNull(empty.getData());
+        assertEquals(0, empty.getDataLength());
+    }
+
+    @Test
+    public void testAccessors() {
+        BaseDataPacket packet = new PayloadSlab().pack(DEVICE_ID, CHARACTERISTIC_ID, 42, new byte[]{1});
+        assertEquals(TestPackets.DEVICE_ADDRESS, packet.getDeviceAddress());
+        assertEquals(Emg.EMGDATA0.getCharacteristicUUID(), packet.getCharacteristicUUID());
+        assertEquals(Emg.EMGDATA0.getServiceUUID(), packet.getServiceUUID());
+        assertEquals(42, packet.getTimeStampNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChunkSize() {
+        new PayloadSlab(0);
+    }
+}
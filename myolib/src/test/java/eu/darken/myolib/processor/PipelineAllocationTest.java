@@ -0,0 +1,224 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.processor.classifier.ClassifierEvent;
+import eu.darken.myolib.processor.classifier.ClassifierProcessor;
+import eu.darken.myolib.processor.classifier.PoseClassifierEvent;
+import eu.darken.myolib.processor.emg.EmgData;
+import eu.darken.myolib.processor.emg.EmgProcessor;
+import eu.darken.myolib.processor.imu.ImuData;
+import eu.darken.myolib.processor.imu.ImuProcessor;
+import eu.darken.myolib.processor.imu.MotionEvent;
+import eu.darken.myolib.processor.imu.MotionProcessor;
+import eu.darken.myolib.tools.Logy;
+import eu.darken.myolib.tools.WorkerPool;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Guards the steady state allocation of the streaming path, measured per thread after a warm up.
+ * Budgets are bytes per packet. Zero where nothing needs to be allocated,
+ * otherwise enough for the one event object the listener receives.
+ */
+public class PipelineAllocationTest {
+    private static final int WARM_UP = 20000;
+    private static final int PACKETS = 5000;
+    /**
+     * One small event object, e.g. {@link ImuData}, with room for object layout differences between JVMs.
+     */
+    private static final long EVENT_BUDGET = 64;
+    private int mLoglevel;
+
+    @Before
+    public void setUp() {
+        // Log strings would count against the budgets.
+        mLoglevel = Logy.sLoglevel;
+        Logy.sLoglevel = Logy.QUIET;
+    }
+
+    @After
+    public void tearDown() {
+        Logy.sLoglevel = mLoglevel;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(sunBean.isThreadAllocatedMemorySupported());
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        return sunBean;
+    }
+
+    /**
+     * @return bytes allocated per packet by {@link BaseProcessor#doProcess(BaseDataPacket)} on the calling thread.
+     */
+    private static long measureDoProcess(BaseProcessor processor, BaseDataPacket[] packets) {
+        com.sun.management.ThreadMXBean bean = threadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARM_UP; i++)
+            processor.doProcess(packets[i % packets.length]);
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < PACKETS; i++)
+            processor.doProcess(packets[i % packets.length]);
+        return (bean.getThreadAllocatedBytes(threadId) - before) / PACKETS;
+    }
+
+    private static void assertBudget(String name, long budget, long perPacket) {
+        assertTrue(name + " allocates " + perPacket + " bytes per packet, budget is " + budget, perPacket <= budget);
+    }
+
+    @Test
+    public void testEmg() {
+        EmgProcessor processor = new EmgProcessor();
+        processor.setReuseEmgData(true);
+        final long[] sink = new long[1];
+        processor.addListener(new EmgProcessor.EmgDataListener() {
+            @Override
+            public void onNewEmgData(EmgData emgData) {
+                sink[0] += emgData.getTimestamp() + emgData.getData()[7];
+            }
+        });
+        processor.addBatchListener(new EmgProcessor.EmgBatchListener() {
+            @Override
+            public void onNewEmgBatch(String deviceAddress, long[] timestamps, byte[] samples, int offset, int count) {
+                sink[0] += count;
+            }
+        });
+        BaseDataPacket[] packets = {TestPackets.emg(0), TestPackets.emg(1), TestPackets.emg(2), TestPackets.emg(3)};
+        assertBudget("EmgProcessor", 0, measureDoProcess(processor, packets));
+    }
+
+    @Test
+    public void testImu() {
+        ImuProcessor processor = new ImuProcessor();
+        final double[] sink = new double[1];
+        processor.addListener(new ImuProcessor.ImuDataListener() {
+            @Override
+            public void onNewImuData(ImuData imuData) {
+                sink[0] += imuData.getOrientation(0) + imuData.getAccelerometer(2) + imuData.getGyro(1);
+            }
+        });
+        BaseDataPacket[] packets = {TestPackets.imu(0), TestPackets.imu(1)};
+        assertBudget("ImuProcessor", EVENT_BUDGET, measureDoProcess(processor, packets));
+    }
+
+    @Test
+    public void testMotion() {
+        MotionProcessor processor = new MotionProcessor();
+        final int[] sink = new int[1];
+        processor.addListener(new MotionProcessor.MotionEventListener() {
+            @Override
+            public void onMotionEvent(MotionEvent motionEvent) {
+                sink[0] += motionEvent.getType().ordinal();
+            }
+        });
+        BaseDataPacket[] packets = {TestPackets.tap(1), TestPackets.tap(2)};
+        assertBudget("MotionProcessor", EVENT_BUDGET, measureDoProcess(processor, packets));
+    }
+
+    @Test
+    public void testClassifier() {
+        ClassifierProcessor processor = new ClassifierProcessor();
+        final int[] sink = new int[1];
+        processor.addListener(new ClassifierProcessor.ClassifierEventListener() {
+            @Override
+            public void onClassifierEvent(ClassifierEvent classifierEvent) {
+                sink[0] += ((PoseClassifierEvent) classifierEvent).getPose().ordinal();
+            }
+        });
+        BaseDataPacket[] packets = {TestPackets.pose(PoseClassifierEvent.Pose.FIST), TestPackets.pose(PoseClassifierEvent.Pose.REST)};
+        assertBudget("ClassifierProcessor", EVENT_BUDGET, measureDoProcess(processor, packets));
+    }
+
+    /**
+     * {@link BaseProcessor#submit(BaseDataPacket)} on the producer side and a dedicated worker thread taking packets off the queue.
+     */
+    @Test
+    public void testHandOffThread() throws Exception {
+        EmgProcessor processor = new EmgProcessor();
+        processor.setWorkerPool(null, WorkerPool.Priority.NORMAL);
+        handOff(processor, "BaseProcessor worker");
+    }
+
+    /**
+     * Like {@link #testHandOffThread()}, but with drain tasks on a pool, the default.
+     * A single worker, so all packets are consumed on the measured thread.
+     */
+    @Test
+    public void testHandOffPool() throws Exception {
+        WorkerPool pool = new WorkerPool("test-handoff", 1, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        try {
+            EmgProcessor processor = new EmgProcessor();
+            processor.setWorkerPool(pool, WorkerPool.Priority.NORMAL);
+            handOff(processor, "BaseProcessor drain task");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void handOff(EmgProcessor processor, String consumer) throws Exception {
+        final com.sun.management.ThreadMXBean bean = threadMXBean();
+        final long producerId = Thread.currentThread().getId();
+        final long[] consumerId = new long[1];
+        final long[] received = new long[1];
+        processor.setReuseEmgData(true);
+        processor.addListener(new EmgProcessor.EmgDataListener() {
+            @Override
+            public void onNewEmgData(EmgData emgData) {
+                synchronized (received) {
+                    consumerId[0] = Thread.currentThread().getId();
+                    received[0]++;
+                    received.notifyAll();
+                }
+            }
+        });
+        BaseDataPacket packet = TestPackets.emg(0);
+        processor.onAdded();
+        try {
+            long sent = 0;
+            for (int i = 0; i < WARM_UP; i++)
+                sent = submitAndWait(processor, packet, sent, received);
+            long producerBefore = bean.getThreadAllocatedBytes(producerId);
+            long consumerBefore = bean.getThreadAllocatedBytes(consumerId[0]);
+            for (int i = 0; i < PACKETS; i++)
+                sent = submitAndWait(processor, packet, sent, received);
+            long consumerPerPacket = (bean.getThreadAllocatedBytes(consumerId[0]) - consumerBefore) / PACKETS;
+            long producerPerPacket = (bean.getThreadAllocatedBytes(producerId) - producerBefore) / PACKETS;
+            assertBudget("BaseProcessor.submit", 0, producerPerPacket);
+            assertBudget(consumer, 0, consumerPerPacket);
+        } finally {
+            processor.onRemoved();
+        }
+    }
+
+    /**
+     * Waits for each packet, a full queue would drop packets and park instead of measuring the steady state.
+     */
+    private static long submitAndWait(BaseProcessor processor, BaseDataPacket packet, long sent, long[] received) throws InterruptedException {
+        processor.submit(packet);
+        // Two EmgData per packet.
+        final long target = (sent + 1) * 2;
+        synchronized (received) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received[0] < target) {
+                long remaining = deadline - System.nanoTime();
+                assertTrue("Packet wasn't processed.", remaining > 0);
+                TimeUnit.NANOSECONDS.timedWait(received, remaining);
+            }
+        }
+        return sent + 1;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import eu.darken.myolib.services.Battery;
+import eu.darken.myolib.services.Emg;
+import eu.darken.myolib.services.Imu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RoutingTableTest {
+    private static final UUID EMG0 = Emg.EMGDATA0.getCharacteristicUUID();
+    private static final UUID EMG1 = Emg.EMGDATA1.getCharacteristicUUID();
+    private static final UUID IMU = Imu.IMUDATA.getCharacteristicUUID();
+    /**
+     * Id 0x0115 shares the slot of EMG data 0 (0x0105).
+     */
+    private static final UUID SLOT_COLLISION = UUID.fromString("d5060115-a904-deb9-4748-2c7f4a124842");
+    /**
+     * Same 16-bit id as EMG data 0, but not a Myo UUID.
+     */
+    private static final UUID ID_COLLISION = UUID.fromString("00000105-0000-1000-8000-00805f9b34fb");
+
+    private static class TestProcessor implements Processor {
+        private final List<UUID> mSubscriptions;
+
+        TestProcessor(UUID... subscriptions) {
+            mSubscriptions = new ArrayList<>(Arrays.asList(subscriptions));
+        }
+
+        @Override
+        public List<UUID> getSubscriptions() {
+            return mSubscriptions;
+        }
+
+        @Override
+        public void submit(BaseDataPacket packet) {
+
+        }
+
+        @Override
+        public void onAdded() {
+
+        }
+
+        @Override
+        public void onRemoved() {
+
+        }
+    }
+
+    @Test
+    public void testCharacteristicId() {
+        assertEquals(0x0105, RoutingTable.toCharacteristicId(EMG0));
+        assertEquals(0x0402, RoutingTable.toCharacteristicId(IMU));
+        assertEquals(0x2A19, RoutingTable.toCharacteristicId(Battery.BATTERYLEVEL.getCharacteristicUUID()));
+        assertEquals(0x0115, RoutingTable.toCharacteristicId(SLOT_COLLISION));
+    }
+
+    @Test
+    public void testWithWithout() {
+        Processor emg = new TestProcessor(EMG0, EMG1);
+        Processor imu = new TestProcessor(IMU);
+        Processor all = new TestProcessor(EMG0, IMU);
+
+        RoutingTable table = RoutingTable.EMPTY.with(emg).with(imu).with(all);
+        assertArrayEquals(new Processor[]{emg, all}, table.getSubscribers(EMG0));
+        assertArrayEquals(new Processor[]{emg}, table.getSubscribers(EMG1));
+        assertArrayEquals(new Processor[]{imu, all}, table.getSubscribers(IMU));
+        assertEquals(0, table.getSubscribers(Battery.BATTERYLEVEL.getCharacteristicUUID()).length);
+        // Adding twice doesn't deliver twice.
+        assertArrayEquals(new Processor[]{emg, all}, table.with(emg).getSubscribers(EMG0));
+
+        RoutingTable removed = table.without(emg);
+        assertArrayEquals(new Processor[]{all}, removed.getSubscribers(EMG0));
+        assertEquals(0, removed.getSubscribers(EMG1).length);
+        assertArrayEquals(new Processor[]{imu, all}, removed.getSubscribers(IMU));
+        // Tables are immutable.
+        assertArrayEquals(new Processor[]{emg, all}, table.getSubscribers(EMG0));
+        assertEquals(0, RoutingTable.EMPTY.getSubscribers(EMG0).length);
+
+        RoutingTable empty = removed.without(imu).without(all);
+        assertEquals(0, empty.getSubscribers(EMG0).length);
+        assertEquals(0, empty.getSubscribers(IMU).length);
+    }
+
+    @Test
+    public void testCollisions() {
+        Processor emg = new TestProcessor(EMG0);
+        Processor slot = new TestProcessor(SLOT_COLLISION);
+        Processor id = new TestProcessor(ID_COLLISION);
+        RoutingTable table = RoutingTable.EMPTY.with(emg).with(slot).with(id);
+        assertArrayEquals(new Processor[]{emg}, table.getSubscribers(EMG0));
+        assertArrayEquals(new Processor[]{slot}, table.getSubscribers(SLOT_COLLISION));
+        assertArrayEquals(new Processor[]{id}, table.getSubscribers(ID_COLLISION));
+
+        // The overflow routes move into the slot once it is free.
+        RoutingTable moved = table.without(emg);
+        assertEquals(0, moved.getSubscribers(EMG0).length);
+        assertArrayEquals(new Processor[]{slot}, moved.getSubscribers(SLOT_COLLISION));
+        assertArrayEquals(new Processor[]{id}, moved.getSubscribers(ID_COLLISION));
+
+        // Only the colliding UUID is registered, EMG data must not end up there.
+        RoutingTable overflowOnly = RoutingTable.EMPTY.with(slot);
+        assertEquals(0, overflowOnly.getSubscribers(EMG0).length);
+        assertSame(overflowOnly.getSubscribers(EMG0), RoutingTable.EMPTY.getSubscribers(EMG1));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor;
+
+import android.os.SystemClock;
+
+import eu.darken.myolib.processor.classifier.ClassifierEvent;
+import eu.darken.myolib.processor.classifier.PoseClassifierEvent;
+import eu.darken.myolib.processor.imu.MotionEvent;
+import eu.darken.myolib.services.Classifier;
+import eu.darken.myolib.services.Emg;
+import eu.darken.myolib.services.Imu;
+import eu.darken.myolib.services.MyoCharacteristic;
+
+/**
+ * Synthetic packets as a Myo would send them, for tests and benchmarks.
+ */
+public class TestPackets {
+    public static final String DEVICE_ADDRESS = "00:00:00:00:00:FF";
+    private static final MyoCharacteristic[] EMG_CHARACTERISTICS = {Emg.EMGDATA0, Emg.EMGDATA1, Emg.EMGDATA2, Emg.EMGDATA3};
+
+    public static BaseDataPacket emg(int index) {
+        byte[] data = new byte[16];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (index + i * 7);
+        return packet(EMG_CHARACTERISTICS[index % EMG_CHARACTERISTICS.length], data);
+    }
+
+    public static BaseDataPacket imu(int index) {
+        byte[] data = new byte[20];
+        for (int i = 0; i < data.length; i += 2) {
+            data[i] = (byte) (index + i);
+            data[i + 1] = (byte) (i * 3);
+        }
+        return packet(Imu.IMUDATA, data);
+    }
+
+    public static BaseDataPacket pose(PoseClassifierEvent.Pose pose) {
+        return packet(Classifier.CLASSIFIEREVENT, new byte[]{ClassifierEvent.Type.POSE.getValue(), (byte) pose.getValue(), (byte) (pose.getValue() >> 8)});
+    }
+
+    public static BaseDataPacket tap(int count) {
+        return packet(Imu.MOTIONEVENT, new byte[]{MotionEvent.Type.TAP.getValue(), 0x00, (byte) count});
+    }
+
+    public static BaseDataPacket packet(MyoCharacteristic characteristic, byte[] data) {
+        return new BaseDataPacket(
+                PacketRegistry.internDevice(DEVICE_ADDRESS),
+                PacketRegistry.internCharacteristic(characteristic.getServiceUUID(), characteristic.getCharacteristicUUID()),
+                SystemClock.elapsedRealtimeNanos(),
+                data, 0, data.length);
+    }
+}
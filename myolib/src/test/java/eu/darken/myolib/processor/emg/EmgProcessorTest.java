@@ -0,0 +1,131 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor.emg;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import eu.darken.myolib.processor.BaseDataPacket;
+import eu.darken.myolib.processor.TestPackets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EmgProcessorTest {
+
+    /**
+     * Copies each batch, the arrays are only valid during the callback.
+     */
+    private static class RecordingBatchListener implements EmgProcessor.EmgBatchListener {
+        final List<long[]> mTimestamps = new ArrayList<>();
+        final List<byte[]> mSamples = new ArrayList<>();
+        final List<String> mDeviceAddresses = new ArrayList<>();
+        final CountDownLatch mFirstBatch = new CountDownLatch(1);
+
+        @Override
+        public void onNewEmgBatch(String deviceAddress, long[] timestamps, byte[] samples, int offset, int count) {
+            synchronized (this) {
+                mDeviceAddresses.add(deviceAddress);
+                mTimestamps.add(Arrays.copyOfRange(timestamps, offset, offset + count));
+                mSamples.add(Arrays.copyOfRange(samples, offset * 8, (offset + count) * 8));
+            }
+            mFirstBatch.countDown();
+        }
+    }
+
+    @Test
+    public void testBatchLayout() {
+        EmgProcessor processor = new EmgProcessor();
+        RecordingBatchListener listener = new RecordingBatchListener();
+        processor.addBatchListener(listener);
+        BaseDataPacket[] packets = new BaseDataPacket[EmgProcessor.DEFAULT_BATCH_SIZE / 2];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = TestPackets.emg(i);
+            processor.doProcess(packets[i]);
+        }
+        // Two frames per packet, so the last packet fills the batch.
+        assertEquals(1, listener.mTimestamps.size());
+        assertEquals(TestPackets.DEVICE_ADDRESS, listener.mDeviceAddresses.get(0));
+        long[] timestamps = listener.mTimestamps.get(0);
+        byte[] samples = listener.mSamples.get(0);
+        assertEquals(EmgProcessor.DEFAULT_BATCH_SIZE, timestamps.length);
+        for (int i = 0; i < packets.length; i++) {
+            byte[] data = packets[i].getData();
+            for (int frame = 0; frame < 2; frame++) {
+                final int index = i * 2 + frame;
+                assertEquals(packets[i].getTimeStamp() + frame * 5, timestamps[index]);
+                assertArrayEquals(Arrays.copyOfRange(data, frame * 8, frame * 8 + 8), Arrays.copyOfRange(samples, index * 8, index * 8 + 8));
+            }
+        }
+        assertEquals(-1, processor.getTimeoutNanos());
+    }
+
+    @Test
+    public void testBatchSize() {
+        EmgProcessor processor = new EmgProcessor();
+        processor.setBatchConfig(3, TimeUnit.HOURS.toMillis(1));
+        RecordingBatchListener listener = new RecordingBatchListener();
+        processor.addBatchListener(listener);
+        processor.doProcess(TestPackets.emg(0));
+        assertEquals(0, listener.mTimestamps.size());
+        // The batch is flushed mid-packet, the second frame starts the next one.
+        processor.doProcess(TestPackets.emg(1));
+        assertEquals(1, listener.mTimestamps.size());
+        assertEquals(3, listener.mTimestamps.get(0).length);
+        processor.doProcess(TestPackets.emg(2));
+        assertEquals(2, listener.mTimestamps.size());
+        assertEquals(3, listener.mTimestamps.get(1).length);
+    }
+
+    @Test
+    public void testBatchLatency() {
+        EmgProcessor processor = new EmgProcessor();
+        RecordingBatchListener listener = new RecordingBatchListener();
+        processor.addBatchListener(listener);
+        processor.doProcess(TestPackets.emg(0));
+        long timeout = processor.getTimeoutNanos();
+        assertTrue(timeout > 0 && timeout <= TimeUnit.MILLISECONDS.toNanos(EmgProcessor.DEFAULT_BATCH_LATENCY));
+        assertEquals(0, listener.mTimestamps.size());
+        processor.onTimeout();
+        assertEquals(1, listener.mTimestamps.size());
+        assertEquals(2, listener.mTimestamps.get(0).length);
+        assertEquals(-1, processor.getTimeoutNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBatchLatency() {
+        new EmgProcessor().setBatchConfig(EmgProcessor.DEFAULT_BATCH_SIZE, -1);
+    }
+
+    /**
+     * The latency flush has no packet to trigger it, the worker has to wake up on its own.
+     */
+    @Test
+    public void testBatchLatencyOnWorker() throws Exception {
+        EmgProcessor processor = new EmgProcessor();
+        RecordingBatchListener listener = new RecordingBatchListener();
+        processor.addBatchListener(listener);
+        processor.onAdded();
+        try {
+            final long start = System.nanoTime();
+            processor.submit(TestPackets.emg(0));
+            assertTrue(listener.mFirstBatch.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(EmgProcessor.DEFAULT_BATCH_LATENCY));
+            synchronized (listener) {
+                assertEquals(1, listener.mTimestamps.size());
+                assertEquals(2, listener.mTimestamps.get(0).length);
+            }
+        } finally {
+            processor.onRemoved();
+        }
+    }
+}
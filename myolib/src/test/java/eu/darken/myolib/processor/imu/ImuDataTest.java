@@ -0,0 +1,96 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.processor.imu;
+
+import org.junit.Test;
+
+import eu.darken.myolib.processor.BaseDataPacket;
+import eu.darken.myolib.processor.PacketRegistry;
+import eu.darken.myolib.processor.TestPackets;
+import eu.darken.myolib.services.Imu;
+import eu.darken.myolib.tools.ByteHelper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Byte vectors are laid out as myohw_imu_data_t in myohw.h, little endian int16 values.
+ */
+public class ImuDataTest {
+    private static final byte[] VECTOR = {
+            0x00, 0x40, 0x00, (byte) 0xC0, 0x00, 0x20, (byte) 0xFF, (byte) 0xFF, // orientation 16384, -16384, 8192, -1
+            0x00, 0x08, 0x00, (byte) 0xF0, (byte) 0xFF, 0x7F, // accelerometer 2048, -4096, 32767
+            0x00, (byte) 0x80, 0x10, 0x00, (byte) 0xF8, (byte) 0xFF // gyroscope -32768, 16, -8
+    };
+    private static final double[] ORIENTATION = {1.0, -1.0, 0.5, -1 / 16384.0};
+    private static final double[] ACCELEROMETER = {1.0, -2.0, 32767 / 2048.0};
+    private static final double[] GYROSCOPE = {-2048.0, 1.0, -0.5};
+
+    /**
+     * The payload in the middle of a larger array, like packets from a {@link eu.darken.myolib.processor.PayloadSlab}.
+     */
+    private static BaseDataPacket packet(byte[] payload, int offset) {
+        byte[] data = new byte[offset + payload.length + 3];
+        System.arraycopy(payload, 0, data, offset, payload.length);
+        return new BaseDataPacket(
+                PacketRegistry.internDevice(TestPackets.DEVICE_ADDRESS),
+                PacketRegistry.internCharacteristic(Imu.IMUDATA.getServiceUUID(), Imu.IMUDATA.getCharacteristicUUID()),
+                0, data, offset, payload.length);
+    }
+
+    @Test
+    public void testVector() {
+        ImuData imuData = new ImuData(packet(VECTOR, 5));
+        assertArrayEquals(ORIENTATION, imuData.getOrientationData(), 0);
+        assertArrayEquals(ACCELEROMETER, imuData.getAccelerometerData(), 0);
+        assertArrayEquals(GYROSCOPE, imuData.getGyroData(), 0);
+        for (int i = 0; i < 4; i++)
+            assertEquals(ORIENTATION[i], imuData.getOrientation(i), 0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ACCELEROMETER[i], imuData.getAccelerometer(i), 0);
+            assertEquals(GYROSCOPE[i], imuData.getGyro(i), 0);
+        }
+        assertArrayEquals(ORIENTATION, imuData.getOrientationData(new double[4]), 0);
+        assertArrayEquals(ACCELEROMETER, imuData.getAccelerometerData(new double[3]), 0);
+        assertArrayEquals(GYROSCOPE, imuData.getGyroData(new double[3]), 0);
+        // Decoded once, later calls return the same array.
+        assertSame(imuData.getOrientationData(), imuData.getOrientationData());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testAxisRange() {
+        new ImuData(packet(VECTOR, 0)).getGyro(3);
+    }
+
+    /**
+     * Compares with the eager decoding ImuData used before, which read every value through a {@link ByteHelper}.
+     */
+    @Test
+    public void testMatchesEagerDecoding() {
+        for (int index = 0; index < 64; index++) {
+            // Covers both signs and the extremes of the high byte.
+            byte[] payload = new byte[20];
+            for (int i = 0; i < payload.length; i++)
+                payload[i] = (byte) (index * 31 + i * 17);
+            ByteHelper byteHelper = new ByteHelper(payload);
+            double[] orientation = new double[4];
+            for (int i = 0; i < 4; i++)
+                orientation[i] = byteHelper.getUInt16() / 16384.0f;
+            double[] accelerometer = new double[3];
+            for (int i = 0; i < 3; i++)
+                accelerometer[i] = byteHelper.getUInt16() / 2048.0f;
+            double[] gyroscope = new double[3];
+            for (int i = 0; i < 3; i++)
+                gyroscope[i] = byteHelper.getUInt16() / 16.0f;
+
+            ImuData imuData = new ImuData(packet(payload, index % 7));
+            assertArrayEquals(orientation, imuData.getOrientationData(new double[4]), 0);
+            assertArrayEquals(accelerometer, imuData.getAccelerometerData(new double[3]), 0);
+            assertArrayEquals(gyroscope, imuData.getGyroData(new double[3]), 0);
+        }
+    }
+}
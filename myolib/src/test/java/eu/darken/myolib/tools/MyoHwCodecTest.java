@@ -0,0 +1,148 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.tools;
+
+import org.junit.Test;
+
+import eu.darken.myolib.MyoInfo;
+import eu.darken.myolib.processor.classifier.ArmSyncedClassifierEvent;
+import eu.darken.myolib.processor.classifier.ClassifierEvent;
+import eu.darken.myolib.processor.classifier.PoseClassifierEvent;
+import eu.darken.myolib.processor.classifier.SyncFailedClassifierEvent;
+import eu.darken.myolib.processor.classifier.WarmUpResultClassifierEvent;
+import eu.darken.myolib.processor.imu.MotionEvent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Byte vectors are laid out as described in myohw.h.
+ */
+public class MyoHwCodecTest {
+
+    @Test
+    public void testPrimitives() {
+        byte[] data = {(byte) 0xFE, (byte) 0xFF, 0x34, 0x12};
+        assertEquals(0xFE, MyoHwCodec.uint8(data, 0));
+        assertEquals(-2, MyoHwCodec.int16(data, 0));
+        assertEquals(0xFFFE, MyoHwCodec.uint16(data, 0));
+        assertEquals(0x1234, MyoHwCodec.int16(data, 2));
+    }
+
+    @Test
+    public void testPoseEvent() {
+        byte[] fist = {0x03, 0x01, 0x00, 0x00, 0x00, 0x00};
+        assertEquals(ClassifierEvent.Type.POSE, MyoHwCodec.decodeClassifierEventType(fist, 0));
+        assertEquals(PoseClassifierEvent.Pose.FIST, MyoHwCodec.decodePose(fist, 0));
+
+        byte[] doubleTap = {0x03, 0x05, 0x00, 0x00, 0x00, 0x00};
+        assertEquals(PoseClassifierEvent.Pose.DOUBLE_TAP, MyoHwCodec.decodePose(doubleTap, 0));
+
+        byte[] unknown = {0x03, (byte) 0xFF, (byte) 0xFF, 0x00, 0x00, 0x00};
+        assertEquals(PoseClassifierEvent.Pose.UNKNOWN, MyoHwCodec.decodePose(unknown, 0));
+
+        byte[] outOfRange = {0x03, 0x10, 0x01, 0x00, 0x00, 0x00};
+        assertEquals(PoseClassifierEvent.Pose.UNKNOWN, MyoHwCodec.decodePose(outOfRange, 0));
+    }
+
+    @Test
+    public void testArmSyncedEvent() {
+        byte[] data = {0x01, 0x02, 0x01, 0x02, 0x00, 0x40};
+        assertEquals(ClassifierEvent.Type.ARM_SYNCED, MyoHwCodec.decodeClassifierEventType(data, 0));
+        assertEquals(ArmSyncedClassifierEvent.Arm.LEFT, MyoHwCodec.decodeArm(data, 0));
+        assertEquals(ArmSyncedClassifierEvent.Direction.TOWARDS_WRIST, MyoHwCodec.decodeDirection(data, 0));
+        assertEquals(ArmSyncedClassifierEvent.WarmUpState.WARM, MyoHwCodec.decodeWarmUpState(data, 0));
+        assertEquals(1.0f, MyoHwCodec.decodeRotation(data, 0), 0.0001f);
+
+        byte[] unknown = {0x01, (byte) 0xFF, (byte) 0xFF, 0x05, 0x00, 0x00};
+        assertEquals(ArmSyncedClassifierEvent.Arm.UNKNOWN, MyoHwCodec.decodeArm(unknown, 0));
+        assertEquals(ArmSyncedClassifierEvent.Direction.UNKNOWN, MyoHwCodec.decodeDirection(unknown, 0));
+        assertEquals(ArmSyncedClassifierEvent.WarmUpState.UNKNOWN, MyoHwCodec.decodeWarmUpState(unknown, 0));
+    }
+
+    @Test
+    public void testOtherClassifierEvents() {
+        byte[] warmUp = {0x07, 0x01, 0x00, 0x00, 0x00, 0x00};
+        assertEquals(ClassifierEvent.Type.WARM_UP_RESULT, MyoHwCodec.decodeClassifierEventType(warmUp, 0));
+        assertEquals(WarmUpResultClassifierEvent.WarmUpResult.SUCCESS, MyoHwCodec.decodeWarmUpResult(warmUp, 0));
+
+        byte[] syncFailed = {0x06, 0x01, 0x00, 0x00, 0x00, 0x00};
+        assertEquals(ClassifierEvent.Type.SYNC_FAILED, MyoHwCodec.decodeClassifierEventType(syncFailed, 0));
+        assertEquals(SyncFailedClassifierEvent.SyncResult.FAILED_TOO_HARD, MyoHwCodec.decodeSyncResult(syncFailed, 0));
+
+        byte[] locked = {0x05, 0x00, 0x00, 0x00, 0x00, 0x00};
+        assertEquals(ClassifierEvent.Type.LOCKED, MyoHwCodec.decodeClassifierEventType(locked, 0));
+
+        byte[] unknown = {0x09, 0x00, 0x00, 0x00, 0x00, 0x00};
+        assertNull(MyoHwCodec.decodeClassifierEventType(unknown, 0));
+    }
+
+    @Test
+    public void testMotionEvent() {
+        byte[] tap = {0x00, 0x03, 0x02};
+        assertEquals(MotionEvent.Type.TAP, MyoHwCodec.decodeMotionEventType(tap, 0));
+        assertEquals(3, MyoHwCodec.decodeTapDirection(tap, 0));
+        assertEquals(2, MyoHwCodec.decodeTapCount(tap, 0));
+
+        byte[] unknown = {0x01, 0x00, 0x00};
+        assertNull(MyoHwCodec.decodeMotionEventType(unknown, 0));
+    }
+
+    @Test
+    public void testImuData() {
+        byte[] data = {
+                0x00, 0x40, 0x00, (byte) 0xC0, 0x00, 0x20, 0x00, 0x00, // orientation w,x,y,z
+                0x00, 0x08, 0x00, (byte) 0xFC, 0x00, 0x00, // accelerometer
+                0x10, 0x00, (byte) 0xF0, (byte) 0xFF, 0x08, 0x00 // gyroscope
+        };
+        assertEquals(1.0, MyoHwCodec.decodeOrientation(data, 0, 0), 0.0001);
+        assertEquals(-1.0, MyoHwCodec.decodeOrientation(data, 0, 1), 0.0001);
+        assertEquals(0.5, MyoHwCodec.decodeOrientation(data, 0, 2), 0.0001);
+        assertEquals(0.0, MyoHwCodec.decodeOrientation(data, 0, 3), 0.0001);
+        assertEquals(1.0, MyoHwCodec.decodeAccelerometer(data, 0, 0), 0.0001);
+        assertEquals(-0.5, MyoHwCodec.decodeAccelerometer(data, 0, 1), 0.0001);
+        assertEquals(0.0, MyoHwCodec.decodeAccelerometer(data, 0, 2), 0.0001);
+        assertEquals(1.0, MyoHwCodec.decodeGyroscope(data, 0, 0), 0.0001);
+        assertEquals(-1.0, MyoHwCodec.decodeGyroscope(data, 0, 1), 0.0001);
+        assertEquals(0.5, MyoHwCodec.decodeGyroscope(data, 0, 2), 0.0001);
+    }
+
+    @Test
+    public void testEmgData() {
+        byte[] data = new byte[16];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i * 17 - 128);
+        assertEquals(data[0], MyoHwCodec.decodeEmgSample(data, 0, 0, 0));
+        assertEquals(data[7], MyoHwCodec.decodeEmgSample(data, 0, 0, 7));
+        assertEquals(data[8], MyoHwCodec.decodeEmgSample(data, 0, 1, 0));
+        assertEquals(data[15], MyoHwCodec.decodeEmgSample(data, 0, 1, 7));
+    }
+
+    @Test
+    public void testMyoInfo() {
+        byte[] data = {
+                0x21, 0x43, 0x65, (byte) 0x87, (byte) 0xA9, (byte) 0xCB, // serial number
+                0x05, 0x00, // unlock pose
+                0x00, // active classifier type
+                0x00, // active classifier index
+                0x00, // has custom classifier
+                0x00, // stream indicating
+                0x01, // sku
+                0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07 // reserved
+        };
+        MyoInfo myoInfo = new MyoInfo(data);
+        assertArrayEquals(new int[]{0x21, 0x43, 0x65, 0x87, 0xA9, 0xCB}, myoInfo.getSerialNumber());
+        assertEquals(PoseClassifierEvent.Pose.DOUBLE_TAP, myoInfo.getUnlockPose());
+        assertEquals(MyoInfo.ActiveClassifierType.BUILTIN, myoInfo.getActiveClassifierType());
+        assertEquals(0, myoInfo.getActiveClassifierIndex());
+        assertFalse(myoInfo.isHasCustomClassifier());
+        assertEquals(0, myoInfo.getStreamIndicating());
+        assertEquals(MyoInfo.Sku.BLACK, myoInfo.getSKU());
+        assertArrayEquals(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07}, myoInfo.getReservedData());
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpscRingBufferTest {
+    private static final int STRESS_COUNT = 200000;
+
+    private static class RecordingListener implements SpscRingBuffer.DropListener<Integer> {
+        final List<Integer> mDropped = new ArrayList<>();
+
+        @Override
+        public void onDropped(Integer element) {
+            mDropped.add(element);
+        }
+    }
+
+    private static SpscRingBuffer<Integer> fill(SpscRingBuffer.OverflowPolicy policy, RecordingListener listener) {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, SpscRingBuffer.WaitStrategy.PARK, policy, listener);
+        for (int i = 0; i < 4; i++)
+            assertTrue(buffer.offer(i));
+        return buffer;
+    }
+
+    private static List<Integer> drain(SpscRingBuffer<Integer> buffer) {
+        List<Integer> elements = new ArrayList<>();
+        Integer element;
+        while ((element = buffer.poll()) != null)
+            elements.add(element);
+        return elements;
+    }
+
+    @Test
+    public void testFullAndEmpty() {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(3, SpscRingBuffer.WaitStrategy.PARK);
+        assertEquals(4, buffer.getCapacity());
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+        for (int i = 0; i < 4; i++)
+            assertTrue(buffer.offer(i));
+        assertEquals(4, buffer.size());
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+        for (int i = 0; i < 4; i++)
+            assertEquals(i, (int) buffer.poll());
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testWrapAround() {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, SpscRingBuffer.WaitStrategy.PARK);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++)
+                assertTrue(buffer.offer(next++));
+            for (int i = 0; i < 3; i++)
+                assertEquals(expected++, (int) buffer.poll());
+            assertNull(buffer.poll());
+        }
+        // Fill completely while head and tail are in the middle of the array.
+        for (int i = 0; i < 4; i++)
+            assertTrue(buffer.offer(next++));
+        assertFalse(buffer.offer(next));
+        for (int i = 0; i < 4; i++)
+            assertEquals(expected++, (int) buffer.poll());
+    }
+
+    @Test
+    public void testTakeTimeout() throws Exception {
+        final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, SpscRingBuffer.WaitStrategy.PARK);
+        long start = System.nanoTime();
+        assertNull(buffer.take(TimeUnit.MILLISECONDS.toNanos(20)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ignored) {
+                }
+                buffer.offer(1);
+            }
+        });
+        producer.start();
+        assertEquals(1, (int) buffer.take(TimeUnit.SECONDS.toNanos(5)));
+        producer.join();
+    }
+
+    @Test
+    public void testCloseWakesConsumer() throws Exception {
+        final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, SpscRingBuffer.WaitStrategy.PARK);
+        final AtomicReference<Object> result = new AtomicReference<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(buffer.take());
+                } catch (InterruptedException e) {
+                    result.set(e);
+                }
+            }
+        });
+        consumer.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (consumer.getState() != Thread.State.WAITING && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertEquals(Thread.State.WAITING, consumer.getState());
+        buffer.close();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertNull(result.get());
+
+        // Queued elements are still handed out while closed.
+        buffer.offer(1);
+        assertEquals(1, (int) buffer.take());
+        assertNull(buffer.take());
+        buffer.open();
+        assertNull(buffer.take(TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    /**
+     * Offers an element and closes right after the consumer's first empty poll, i.e. before it checks whether it is closed.
+     */
+    private static SpscRingBuffer<Integer> closingAfterPoll() {
+        return new SpscRingBuffer<Integer>(4, SpscRingBuffer.WaitStrategy.PARK) {
+            private boolean mRaced = false;
+
+            @Override
+            public Integer poll() {
+                Integer element = super.poll();
+                if (element == null && !mRaced) {
+                    mRaced = true;
+                    offer(1);
+                    close();
+                }
+                return element;
+            }
+        };
+    }
+
+    @Test
+    public void testCloseAfterPoll() throws Exception {
+        SpscRingBuffer<Integer> buffer = closingAfterPoll();
+        assertEquals(1, (int) buffer.take());
+        assertNull(buffer.take());
+
+        buffer = closingAfterPoll();
+        assertEquals(1, (int) buffer.take(TimeUnit.SECONDS.toNanos(5)));
+        assertNull(buffer.take(TimeUnit.SECONDS.toNanos(5)));
+    }
+
+    @Test
+    public void testStress() throws Exception {
+        for (SpscRingBuffer.WaitStrategy strategy : SpscRingBuffer.WaitStrategy.values()) {
+            // Lossless, so every element has to arrive exactly once and in order.
+            final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(64, strategy, SpscRingBuffer.OverflowPolicy.BLOCK, null);
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < STRESS_COUNT; i++)
+                        buffer.offer(i);
+                }
+            });
+            producer.start();
+            for (int i = 0; i < STRESS_COUNT; i++)
+                assertEquals(strategy.name(), i, (int) buffer.take());
+            producer.join();
+            assertTrue(buffer.isEmpty());
+        }
+    }
+
+    @Test
+    public void testDropNewest() {
+        RecordingListener listener = new RecordingListener();
+        SpscRingBuffer<Integer> buffer = fill(SpscRingBuffer.OverflowPolicy.DROP_NEWEST, listener);
+        assertFalse(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+        assertEquals(Arrays.asList(4, 5), listener.mDropped);
+        assertEquals(Arrays.asList(0, 1, 2, 3), drain(buffer));
+    }
+
+    @Test
+    public void testDropOldest() {
+        RecordingListener listener = new RecordingListener();
+        SpscRingBuffer<Integer> buffer = fill(SpscRingBuffer.OverflowPolicy.DROP_OLDEST, listener);
+        assertTrue(buffer.offer(4));
+        assertTrue(buffer.offer(5));
+        assertEquals(Arrays.asList(0, 1), listener.mDropped);
+        assertEquals(Arrays.asList(2, 3, 4, 5), drain(buffer));
+    }
+
+    @Test
+    public void testConflate() {
+        RecordingListener listener = new RecordingListener();
+        SpscRingBuffer<Integer> buffer = fill(SpscRingBuffer.OverflowPolicy.CONFLATE, listener);
+        assertTrue(buffer.offer(4));
+        assertEquals(Arrays.asList(0, 1, 2, 3), listener.mDropped);
+        assertTrue(buffer.offer(5));
+        assertEquals(Arrays.asList(4, 5), drain(buffer));
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        final SpscRingBuffer<Integer> buffer = fill(SpscRingBuffer.OverflowPolicy.BLOCK, listener);
+        final AtomicReference<Boolean> offered = new AtomicReference<>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offered.set(buffer.offer(4));
+            }
+        });
+        producer.start();
+        producer.join(50);
+        assertTrue(producer.isAlive());
+        assertEquals(0, (int) buffer.poll());
+        producer.join(5000);
+        assertEquals(Boolean.TRUE, offered.get());
+        assertTrue(listener.mDropped.isEmpty());
+        assertEquals(Arrays.asList(1, 2, 3, 4), drain(buffer));
+
+        // A closed buffer doesn't wait for a consumer that is gone.
+        SpscRingBuffer<Integer> closed = fill(SpscRingBuffer.OverflowPolicy.BLOCK, listener);
+        closed.close();
+        assertFalse(closed.offer(4));
+        assertEquals(Arrays.asList(4), listener.mDropped);
+    }
+
+    /**
+     * The producer discards the head while the consumer takes it, each element has to end up either consumed or dropped, never both.
+     */
+    @Test
+    public void testDropRace() throws Exception {
+        for (SpscRingBuffer.OverflowPolicy policy : new SpscRingBuffer.OverflowPolicy[]{
+                SpscRingBuffer.OverflowPolicy.DROP_OLDEST, SpscRingBuffer.OverflowPolicy.CONFLATE}) {
+            final RecordingListener listener = new RecordingListener();
+            final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(8, SpscRingBuffer.WaitStrategy.YIELD, policy, listener);
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < STRESS_COUNT; i++)
+                        buffer.offer(i);
+                    buffer.close();
+                }
+            });
+            producer.start();
+            List<Integer> consumed = new ArrayList<>();
+            Integer element;
+            while ((element = buffer.take()) != null)
+                consumed.add(element);
+            producer.join();
+
+            int[] seen = new int[STRESS_COUNT];
+            int last = -1;
+            for (int value : consumed) {
+                assertTrue(policy + ": out of order", value > last);
+                last = value;
+                seen[value]++;
+            }
+            for (int value : listener.mDropped)
+                seen[value]++;
+            for (int i = 0; i < STRESS_COUNT; i++)
+                assertEquals(policy + ": element " + i, 1, seen[i]);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WorkerPoolTest {
+
+    private static class RecordingTask implements Runnable {
+        private final String mName;
+        private final List<String> mLog;
+
+        RecordingTask(String name, List<String> log) {
+            mName = name;
+            mLog = log;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mLog) {
+                mLog.add(mName);
+            }
+        }
+    }
+
+    private static class CountingTask implements Runnable {
+        final AtomicInteger mRuns = new AtomicInteger();
+        volatile CountDownLatch mLatch = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            mRuns.incrementAndGet();
+            mLatch.countDown();
+        }
+    }
+
+    /**
+     * Occupies the worker of a single thread pool until released.
+     */
+    private static CountDownLatch block(WorkerPool pool) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, WorkerPool.Priority.HIGH);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    /**
+     * Waits until all tasks queued before have run, only works for single thread pools.
+     */
+    private static void sync(WorkerPool pool) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, WorkerPool.Priority.LOW);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShared() {
+        WorkerPool pool = WorkerPool.getShared();
+        assertSame(pool, WorkerPool.getShared());
+        assertTrue(pool.getThreadCount() >= 2);
+        assertFalse(pool.isShutdown());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThreadCount() {
+        new WorkerPool("test", 0, android.os.Process.THREAD_PRIORITY_DEFAULT);
+    }
+
+    @Test
+    public void testLanes() throws Exception {
+        WorkerPool pool = new WorkerPool("test-lanes", 1, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        try {
+            List<String> log = new ArrayList<>();
+            CountDownLatch release = block(pool);
+            pool.execute(new RecordingTask("low", log), WorkerPool.Priority.LOW);
+            pool.execute(new RecordingTask("normal1", log));
+            pool.execute(new RecordingTask("high1", log), WorkerPool.Priority.HIGH);
+            pool.execute(new RecordingTask("normal2", log), WorkerPool.Priority.NORMAL);
+            pool.execute(new RecordingTask("high2", log), WorkerPool.Priority.HIGH);
+            release.countDown();
+            sync(pool);
+            synchronized (log) {
+                assertEquals(Arrays.asList("high1", "high2", "normal1", "normal2", "low"), log);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailingTask() throws Exception {
+        WorkerPool pool = new WorkerPool("test-failing", 1, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    throw new RuntimeException("Expected");
+                }
+            });
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    throw new AssertionError("Expected");
+                }
+            });
+            // The worker survives.
+            sync(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimer() throws Exception {
+        WorkerPool pool = new WorkerPool("test-timer", 1, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        try {
+            CountingTask task = new CountingTask();
+            WorkerPool.Timer timer = pool.newTimer(task, WorkerPool.Priority.NORMAL);
+            final long start = System.nanoTime();
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(20));
+            assertTrue(task.mLatch.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+            assertEquals(1, task.mRuns.get());
+
+            // Re-arming replaces the deadline, a sooner deadline wakes the waiting worker.
+            task.mLatch = new CountDownLatch(1);
+            timer.schedule(TimeUnit.HOURS.toNanos(1));
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(10));
+            assertTrue(task.mLatch.await(5, TimeUnit.SECONDS));
+            assertEquals(2, task.mRuns.get());
+
+            // A later deadline postpones it.
+            task.mLatch = new CountDownLatch(1);
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(10));
+            timer.schedule(TimeUnit.HOURS.toNanos(1));
+            assertFalse(task.mLatch.await(100, TimeUnit.MILLISECONDS));
+            assertEquals(2, task.mRuns.get());
+
+            timer.cancel();
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(10));
+            timer.cancel();
+            assertFalse(task.mLatch.await(100, TimeUnit.MILLISECONDS));
+            assertEquals(2, task.mRuns.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A due timer queues its task behind tasks of higher lanes.
+     */
+    @Test
+    public void testTimerLane() throws Exception {
+        WorkerPool pool = new WorkerPool("test-timer-lane", 1, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        try {
+            List<String> log = new ArrayList<>();
+            WorkerPool.Timer timer = pool.newTimer(new RecordingTask("timer", log), WorkerPool.Priority.NORMAL);
+            CountDownLatch release = block(pool);
+            timer.schedule(0);
+            pool.execute(new RecordingTask("high", log), WorkerPool.Priority.HIGH);
+            release.countDown();
+            sync(pool);
+            synchronized (log) {
+                assertEquals(Arrays.asList("high", "timer"), log);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final String name = "test-shutdown";
+        WorkerPool pool = new WorkerPool(name, 2, android.os.Process.THREAD_PRIORITY_DEFAULT);
+        CountingTask timerTask = new CountingTask();
+        WorkerPool.Timer timer = pool.newTimer(timerTask, WorkerPool.Priority.NORMAL);
+        timer.schedule(TimeUnit.MILLISECONDS.toNanos(50));
+        CountingTask queued = new CountingTask();
+        CountDownLatch release = block(pool);
+        CountDownLatch release2 = block(pool);
+        pool.execute(queued);
+
+        pool.shutdown();
+        assertTrue(pool.isShutdown());
+        release.countDown();
+        release2.countDown();
+        // Queued tasks and timers are discarded, the workers stop.
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(name))
+                thread.join(5000);
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            assertFalse(thread.getName(), thread.getName().startsWith(name) && thread.isAlive());
+        assertFalse(timerTask.mLatch.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, queued.mRuns.get());
+        assertEquals(0, timerTask.mRuns.get());
+
+        try {
+            pool.execute(queued);
+            throw new AssertionError("Expected an IllegalStateException.");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.transport;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Wraps a {@link SimulatedMyo} and holds back the answers to reads and acknowledged writes while {@link #hold()} is in effect,
+ * so a test decides how long an operation stays in flight instead of relying on latencies.
+ * Writes without response are confirmed as usual.
+ */
+public class GatedTransport implements MyoTransport {
+    private static final long AWAIT_TIMEOUT = 5000;
+    private final SimulatedMyo mSimulatedMyo;
+    /**
+     * Per handle, whether the pending answers are gated, in the order the operations were started.
+     */
+    private final Map<Integer, ArrayDeque<Boolean>> mPending = new HashMap<>();
+    private final List<Runnable> mHeld = new ArrayList<>();
+    private boolean mHolding;
+    private int mRefusals;
+    private int mRefusedCount;
+    private int mOperationCount;
+    private int mHeldCount;
+
+    public GatedTransport(SimulatedMyo simulatedMyo) {
+        mSimulatedMyo = simulatedMyo;
+    }
+
+    public SimulatedMyo getSimulatedMyo() {
+        return mSimulatedMyo;
+    }
+
+    /**
+     * From now on answers to reads and acknowledged writes are held until {@link #release()}.
+     */
+    public synchronized void hold() {
+        mHolding = true;
+    }
+
+    /**
+     * Delivers the held answers in order and stops holding.
+     */
+    public void release() {
+        List<Runnable> held;
+        synchronized (this) {
+            mHolding = false;
+            held = new ArrayList<>(mHeld);
+            mHeld.clear();
+        }
+        for (Runnable answer : held)
+            answer.run();
+    }
+
+    /**
+     * The next reads and writes fail to start, like on Android while the stack is busy.
+     *
+     * @param count number of operations to refuse.
+     */
+    public synchronized void refuse(int count) {
+        mRefusals = count;
+    }
+
+    /**
+     * @return reads and writes refused so far, by {@link #refuse(int)} or by the {@link SimulatedMyo} while busy.
+     */
+    public synchronized int getRefusedCount() {
+        return mRefusedCount;
+    }
+
+    /**
+     * @return reads and writes started so far.
+     */
+    public synchronized int getOperationCount() {
+        return mOperationCount;
+    }
+
+    /**
+     * @return answers held back so far, including released ones.
+     */
+    public synchronized int getHeldCount() {
+        return mHeldCount;
+    }
+
+    /**
+     * Waits until the given number of answers was held back.
+     *
+     * @throws AssertionError if that takes longer than 5 seconds.
+     */
+    public synchronized void awaitHeld(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + AWAIT_TIMEOUT;
+        while (mHeldCount < count) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0)
+                throw new AssertionError("Held " + mHeldCount + " answers, expected " + count);
+            wait(left);
+        }
+    }
+
+    /**
+     * Waits until the given number of reads and writes was started.
+     *
+     * @throws AssertionError if that takes longer than 5 seconds.
+     */
+    public synchronized void awaitOperations(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + AWAIT_TIMEOUT;
+        while (mOperationCount < count) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0)
+                throw new AssertionError("Started " + mOperationCount + " operations, expected " + count);
+            wait(left);
+        }
+    }
+
+    @Override
+    public String getDeviceAddress() {
+        return mSimulatedMyo.getDeviceAddress();
+    }
+
+    @Nullable
+    @Override
+    public String getDeviceName() {
+        return mSimulatedMyo.getDeviceName();
+    }
+
+    @Override
+    public void connect(final Callback callback) {
+        mSimulatedMyo.connect(new Callback() {
+            @Override
+            public void onConnectionStateChange(int status, int newState) {
+                callback.onConnectionStateChange(status, newState);
+            }
+
+            @Override
+            public void onServicesDiscovered(int status) {
+                callback.onServicesDiscovered(status);
+            }
+
+            @Override
+            public void onRead(final int handle, final byte[] value, final int status) {
+                answer(handle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onRead(handle, value, status);
+                    }
+                });
+            }
+
+            @Override
+            public void onWrite(final int handle, final int status) {
+                answer(handle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onWrite(handle, status);
+                    }
+                });
+            }
+
+            @Override
+            public void onCharacteristicChanged(UUID serviceUUID, UUID characteristicUUID, byte[] value) {
+                callback.onCharacteristicChanged(serviceUUID, characteristicUUID, value);
+            }
+        });
+    }
+
+    private void answer(int handle, Runnable answer) {
+        synchronized (this) {
+            ArrayDeque<Boolean> pending = mPending.get(handle);
+            Boolean gated = pending != null ? pending.poll() : null;
+            if (gated != null && gated && mHolding) {
+                mHeld.add(answer);
+                mHeldCount++;
+                notifyAll();
+                return;
+            }
+        }
+        answer.run();
+    }
+
+    @Override
+    public void disconnect() {
+        mSimulatedMyo.disconnect();
+        synchronized (this) {
+            mPending.clear();
+            mHeld.clear();
+        }
+    }
+
+    @Override
+    public boolean discoverServices() {
+        return mSimulatedMyo.discoverServices();
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID serviceUUID, UUID characteristicUUID) {
+        return mSimulatedMyo.hasCharacteristic(serviceUUID, characteristicUUID);
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(UUID serviceUUID, UUID characteristicUUID, boolean enable) {
+        return mSimulatedMyo.setCharacteristicNotification(serviceUUID, characteristicUUID, enable);
+    }
+
+    @Override
+    public int resolveHandle(UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID) {
+        return mSimulatedMyo.resolveHandle(serviceUUID, characteristicUUID, descriptorUUID);
+    }
+
+    @Override
+    public synchronized boolean read(int handle) {
+        if (isRefused())
+            return false;
+        if (!mSimulatedMyo.read(handle)) {
+            mRefusedCount++;
+            return false;
+        }
+        onStarted(handle, true);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean write(int handle, byte[] value, int writeType) {
+        if (isRefused())
+            return false;
+        if (!mSimulatedMyo.write(handle, value, writeType)) {
+            mRefusedCount++;
+            return false;
+        }
+        onStarted(handle, writeType != BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        return true;
+    }
+
+    /**
+     * Caller holds the lock.
+     */
+    private boolean isRefused() {
+        if (mRefusals == 0)
+            return false;
+        mRefusals--;
+        mRefusedCount++;
+        return true;
+    }
+
+    /**
+     * Caller holds the lock, which keeps the answer from overtaking this.
+     */
+    private void onStarted(int handle, boolean gated) {
+        ArrayDeque<Boolean> pending = mPending.get(handle);
+        if (pending == null) {
+            pending = new ArrayDeque<>();
+            mPending.put(handle, pending);
+        }
+        pending.add(gated);
+        mOperationCount++;
+        notifyAll();
+    }
+
+    @Override
+    public void requestConnectionPriority(int priority) {
+        mSimulatedMyo.requestConnectionPriority(priority);
+    }
+}
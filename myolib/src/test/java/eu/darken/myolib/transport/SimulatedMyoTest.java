@@ -0,0 +1,86 @@
+/*
+ * Android Myo library by darken
+ * Matthias Urhahn (matthias.urhahn@rwth-aachen.de)
+ * mHealth - Uniklinik RWTH-Aachen.
+ */
+package eu.darken.myolib.transport;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import eu.darken.myolib.Myo;
+import eu.darken.myolib.MyoCmds;
+import eu.darken.myolib.metrics.GattMetrics;
+import eu.darken.myolib.metrics.ProcessorMetrics;
+import eu.darken.myolib.services.Control;
+import eu.darken.myolib.msgs.MyoMsg;
+import eu.darken.myolib.msgs.WriteMsg;
+import eu.darken.myolib.processor.emg.EmgData;
+import eu.darken.myolib.processor.emg.EmgProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the full dispatch and processor path against {@link SimulatedMyo}.
+ */
+public class SimulatedMyoTest {
+
+    @Test
+    public void testEmgStream() throws Exception {
+        SimulatedMyo simulatedMyo = new SimulatedMyo("00:00:00:00:00:01");
+        Myo myo = new Myo(simulatedMyo);
+        EmgProcessor emgProcessor = new EmgProcessor();
+        final CountDownLatch samples = new CountDownLatch(100);
+        emgProcessor.addListener(new EmgProcessor.EmgDataListener() {
+            @Override
+            public void onNewEmgData(EmgData emgData) {
+                samples.countDown();
+            }
+        });
+        myo.addProcessor(emgProcessor);
+        myo.writeMode(MyoCmds.EmgMode.FILTERED, MyoCmds.ImuMode.NONE, MyoCmds.ClassifierMode.DISABLED, null);
+        try {
+            assertTrue(samples.await(5, TimeUnit.SECONDS));
+            assertEquals(1, simulatedMyo.getCommandCount());
+            ProcessorMetrics.Snapshot metrics = emgProcessor.getMetrics().snapshot();
+            // The last packet may still be in the listener.
+            assertTrue(metrics.getSubmittedCount() >= 49);
+            assertTrue(metrics.getServiceTime().getCount() >= 49);
+        } finally {
+            myo.removeProcessor(emgProcessor);
+            myo.disconnect();
+        }
+    }
+
+    @Test
+    public void testErrorInjection() throws Exception {
+        SimulatedMyo simulatedMyo = new SimulatedMyo("00:00:00:00:00:02");
+        simulatedMyo.setErrorRate(1);
+        Myo myo = new Myo(simulatedMyo);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<MyoMsg> result = new AtomicReference<>();
+        WriteMsg writeMsg = new WriteMsg(Control.COMMAND, MyoCmds.buildVibrateCmd(MyoCmds.VibrateType.SHORT), new MyoMsg.Callback() {
+            @Override
+            public void onResult(MyoMsg msg) {
+                result.set(msg);
+                done.countDown();
+            }
+        });
+        writeMsg.setRetryCounter(0);
+        myo.submit(writeMsg);
+        try {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(MyoMsg.State.ERROR, result.get().getState());
+            assertEquals(0, simulatedMyo.getCommandCount());
+            GattMetrics.Target target = myo.getGattMetrics().getTarget(writeMsg);
+            assertEquals(1, target.getErrorCount());
+            assertEquals(1, target.getWriteRtt().getCount());
+        } finally {
+            myo.disconnect();
+        }
+    }
+}